@@ -0,0 +1,76 @@
+package de.aitools.aq.text;
+
+/**
+ * Sample texts for the benchmarks.
+ *
+ * @version $Date$
+ *
+ */
+final class BenchmarkTexts {
+
+  /**
+   * English paragraphs in the style of extracted web page content, including
+   * hyphenated words, numbers, abbreviations, and punctuation.
+   */
+  static final String[] ENGLISH_PARAGRAPHS = {
+    "The museum is open from Tuesday to Sunday, 10 a.m. to 6 p.m., and "
+    + "admission is free for children under twelve. Guided tours start at "
+    + "the main entrance every hour. Please note that the east wing will be "
+    + "closed for renovation until the end of March.",
+
+    "Our well-known recipe for apple pie takes about an hour to prepare. You "
+    + "will need six medium-sized apples, a cup of sugar, and a pinch of "
+    + "cinnamon. Preheat the oven to 190 degrees before you roll out the "
+    + "dough! Then bake the pie for 45 minutes, or until the crust is golden "
+    + "brown.",
+
+    "In the second half of the season, the team struggled with injuries and "
+    + "lost four of its last six games. The coach said that he was proud of "
+    + "the players anyway. \"We never gave up, and that is what counts,\" he "
+    + "told reporters after the match on Saturday evening.",
+
+    "If you have forgotten your password, click on the link below and enter "
+    + "the e-mail address that is associated with your account. We will "
+    + "send you a message with further instructions within a few minutes. "
+    + "Do not share your password with anyone, not even with our support "
+    + "staff.",
+
+    "The report, which was published by the city council last week, shows "
+    + "that the number of people who use public transport has increased by "
+    + "more than 15 percent since 2010. At the same time, traffic in the "
+    + "inner city has decreased slightly. Critics argue that the new bus "
+    + "lines are still too expensive for low-income families.",
+
+    "Shipping is free for all orders over $50. Items that are in stock are "
+    + "usually delivered within two to three business days. You can return "
+    + "any item within 30 days of purchase, provided that it is unused and "
+    + "in its original packaging.",
+
+    "Home | About us | Contact | Privacy policy | Terms of use",
+
+    "Copyright 2016 by the author. All rights reserved."
+  };
+
+  /**
+   * English stop words.
+   */
+  static final String[] ENGLISH_STOP_WORDS = {
+    "a", "about", "above", "after", "again", "against", "all", "am", "an",
+    "and", "any", "are", "as", "at", "be", "because", "been", "before",
+    "being", "below", "between", "both", "but", "by", "can", "could", "did",
+    "do", "does", "doing", "down", "during", "each", "few", "for", "from",
+    "further", "had", "has", "have", "having", "he", "her", "here", "hers",
+    "herself", "him", "himself", "his", "how", "i", "if", "in", "into", "is",
+    "it", "its", "itself", "just", "me", "more", "most", "my", "myself", "no",
+    "nor", "not", "now", "of", "off", "on", "once", "only", "or", "other",
+    "our", "ours", "ourselves", "out", "over", "own", "same", "she", "should",
+    "so", "some", "such", "than", "that", "the", "their", "theirs", "them",
+    "themselves", "then", "there", "these", "they", "this", "those",
+    "through", "to", "too", "under", "until", "up", "very", "was", "we",
+    "were", "what", "when", "where", "which", "while", "who", "whom", "why",
+    "will", "with", "would", "you", "your", "yours", "yourself", "yourselves"
+  };
+
+  private BenchmarkTexts() { }
+
+}
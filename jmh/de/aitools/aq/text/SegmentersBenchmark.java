@@ -0,0 +1,77 @@
+package de.aitools.aq.text;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.icu.text.BreakIterator;
+
+/**
+ * Compares segmenting sample paragraphs into sentences and words with new
+ * ICU segmenters for each paragraph and sentence with the segmenters cached by
+ * {@link Segmenters}.
+ * <p>
+ * The setup checks that both produce the same number of words.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SegmentersBenchmark {
+
+  private static final Locale LANGUAGE = Locale.ENGLISH;
+
+  @Setup
+  public void setup() {
+    if (this.newSegmenters() != this.cachedSegmenters()) {
+      throw new IllegalStateException("The segmentations differ");
+    }
+  }
+
+  @Benchmark
+  public int newSegmenters() {
+    int numWords = 0;
+    for (final String paragraph : BenchmarkTexts.ENGLISH_PARAGRAPHS) {
+      final TextSpans sentences = TextSpans.segment(
+          paragraph, BreakIterator.getSentenceInstance(LANGUAGE));
+      for (int s = 0; s < sentences.size(); ++s) {
+        numWords += TextSpans.segment(paragraph,
+            sentences.getBegin(s), sentences.getEnd(s),
+            BreakIterator.getWordInstance(LANGUAGE)).size();
+      }
+    }
+    return numWords;
+  }
+
+  @Benchmark
+  public int cachedSegmenters() {
+    int numWords = 0;
+    for (final String paragraph : BenchmarkTexts.ENGLISH_PARAGRAPHS) {
+      final TextSpans sentences = TextSpans.segment(
+          paragraph, Segmenters.getSentenceInstance(LANGUAGE));
+      for (int s = 0; s < sentences.size(); ++s) {
+        numWords += TextSpans.segment(paragraph,
+            sentences.getBegin(s), sentences.getEnd(s),
+            Segmenters.getWordInstance(LANGUAGE)).size();
+      }
+    }
+    return numWords;
+  }
+
+}
@@ -0,0 +1,131 @@
+package de.aitools.aq.text;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares looking up the words of sample paragraphs in a {@link StopWordSet}
+ * with lower-casing them and looking them up in a {@link HashSet}.
+ * <p>
+ * The words are given as regions of the paragraphs, as when testing the
+ * sentences of an extractor, or as strings. The setup checks that both sets
+ * contain the same words of the paragraphs. The equivalence for other words is
+ * tested in <tt>StopWordSetTest</tt>, as checking it here would also train the
+ * compiler on code paths the benchmark does not take.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopWordSetBenchmark {
+
+  private static final Locale LANGUAGE = Locale.ENGLISH;
+
+  private TextSpans[] paragraphWords;
+
+  private String[][] words;
+
+  private Set<String> hashSet;
+
+  private StopWordSet stopWordSet;
+
+  @Setup
+  public void setup() {
+    final int numParagraphs = BenchmarkTexts.ENGLISH_PARAGRAPHS.length;
+    this.paragraphWords = new TextSpans[numParagraphs];
+    this.words = new String[numParagraphs][];
+    for (int p = 0; p < numParagraphs; ++p) {
+      this.paragraphWords[p] = WordFilter.toWordSpans(
+          BenchmarkTexts.ENGLISH_PARAGRAPHS[p], LANGUAGE);
+      this.words[p] = this.paragraphWords[p].toList().toArray(new String[0]);
+    }
+
+    this.hashSet = new HashSet<>();
+    for (final String word : BenchmarkTexts.ENGLISH_STOP_WORDS) {
+      this.hashSet.add(word.toLowerCase(LANGUAGE));
+    }
+    this.stopWordSet = new StopWordSet(
+        Arrays.asList(BenchmarkTexts.ENGLISH_STOP_WORDS), LANGUAGE, true);
+
+    if (this.hashSetRegions() != this.stopWordSetRegions()
+        || this.hashSetStrings() != this.stopWordSetStrings()) {
+      throw new IllegalStateException("The sets differ");
+    }
+  }
+
+  @Benchmark
+  public int hashSetRegions() {
+    int numStopWords = 0;
+    for (final TextSpans words : this.paragraphWords) {
+      final CharSequence text = words.getText();
+      for (int w = 0; w < words.size(); ++w) {
+        final String word =
+            text.subSequence(words.getBegin(w), words.getEnd(w)).toString();
+        if (this.hashSet.contains(word.toLowerCase(LANGUAGE))) {
+          ++numStopWords;
+        }
+      }
+    }
+    return numStopWords;
+  }
+
+  @Benchmark
+  public int stopWordSetRegions() {
+    int numStopWords = 0;
+    for (final TextSpans words : this.paragraphWords) {
+      final CharSequence text = words.getText();
+      for (int w = 0; w < words.size(); ++w) {
+        if (this.stopWordSet.contains(
+            text, words.getBegin(w), words.getEnd(w))) {
+          ++numStopWords;
+        }
+      }
+    }
+    return numStopWords;
+  }
+
+  @Benchmark
+  public int hashSetStrings() {
+    int numStopWords = 0;
+    for (final String[] words : this.words) {
+      for (final String word : words) {
+        if (this.hashSet.contains(word.toLowerCase(LANGUAGE))) {
+          ++numStopWords;
+        }
+      }
+    }
+    return numStopWords;
+  }
+
+  @Benchmark
+  public int stopWordSetStrings() {
+    int numStopWords = 0;
+    for (final String[] words : this.words) {
+      for (final String word : words) {
+        if (this.stopWordSet.contains(word)) { ++numStopWords; }
+      }
+    }
+    return numStopWords;
+  }
+
+}
@@ -0,0 +1,194 @@
+package de.aitools.aq.text;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.aitools.aq.web.extractor.PotthastJerichoExtractor;
+
+/**
+ * Compares testing the words of sample paragraphs against the default word
+ * pattern of the {@link PotthastJerichoExtractor} with a regular expression
+ * matcher and with the predicate of a {@link WordMatchFilter}.
+ * <p>
+ * The setup checks that the filter recognizes the pattern, and that its
+ * predicate gives the same result as the matcher for the sample words and for
+ * random strings of letters, hyphens, digits, marks, and (also unpaired)
+ * surrogates, both as strings and as regions of a text.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WordMatchFilterBenchmark {
+
+  private static final Locale LANGUAGE = Locale.ENGLISH;
+
+  private static final String PATTERN =
+      PotthastJerichoExtractor.DEFAULT_MATCHING_WORD_PATTERN;
+
+  /**
+   * Other patterns the filter recognizes, which the setup checks as well.
+   */
+  private static final String[] OTHER_PATTERNS = {
+    "\\p{IsAlphabetic}+",
+    "^\\p{IsAlphabetic}[-\\p{IsAlphabetic}]*$",
+    "\\p{L}+",
+    "^\\p{L}\\p{L}*$",
+    "\\p{L}[-\\p{L}]*\\p{L}*"
+  };
+
+  private static final String RANDOM_CHARACTERS =
+      // letters: a, Z, a umlaut, sharp s, alpha, CJK, mathematical bold A
+      "aZ\u00e4\u00df\u03b1\u4e2d\ud835\udc00"
+      // others: combining acute, superscript two, roman numeral one,
+      // modifier h, emoji, and unpaired surrogates
+      + "-09 _.'\u0301\u00b2\u2160\u02b0\ud83d\ude00\ud835\udc00";
+
+  private static final int NUM_RANDOM_STRINGS = 100000;
+
+  private static final int MAX_RANDOM_LENGTH = 8;
+
+  private TextSpans[] paragraphWords;
+
+  private Pattern pattern;
+
+  private WordPredicate predicate;
+
+  @Setup
+  public void setup() {
+    final int numParagraphs = BenchmarkTexts.ENGLISH_PARAGRAPHS.length;
+    this.paragraphWords = new TextSpans[numParagraphs];
+    for (int p = 0; p < numParagraphs; ++p) {
+      this.paragraphWords[p] = WordFilter.toWordSpans(
+          BenchmarkTexts.ENGLISH_PARAGRAPHS[p], LANGUAGE);
+    }
+    this.pattern = Pattern.compile(PATTERN);
+    this.predicate = WordMatchFilterBenchmark.getPredicate(PATTERN);
+
+    if (this.matcher() != this.wordMatchFilter()) {
+      throw new IllegalStateException("The results differ");
+    }
+    this.checkEquivalence(PATTERN);
+    for (final String pattern : OTHER_PATTERNS) {
+      this.checkEquivalence(pattern);
+    }
+  }
+
+  @Benchmark
+  public int matcher() {
+    int numMatches = 0;
+    for (final TextSpans words : this.paragraphWords) {
+      final Matcher matcher = this.pattern.matcher(words.getText());
+      for (int w = 0; w < words.size(); ++w) {
+        if (matcher.region(words.getBegin(w), words.getEnd(w)).matches()) {
+          ++numMatches;
+        }
+      }
+    }
+    return numMatches;
+  }
+
+  @Benchmark
+  public int newMatchers() {
+    int numMatches = 0;
+    for (final TextSpans words : this.paragraphWords) {
+      final CharSequence text = words.getText();
+      for (int w = 0; w < words.size(); ++w) {
+        if (this.pattern.matcher(text).region(
+            words.getBegin(w), words.getEnd(w)).matches()) {
+          ++numMatches;
+        }
+      }
+    }
+    return numMatches;
+  }
+
+  @Benchmark
+  public int wordMatchFilter() {
+    int numMatches = 0;
+    for (final TextSpans words : this.paragraphWords) {
+      final CharSequence text = words.getText();
+      for (int w = 0; w < words.size(); ++w) {
+        if (this.predicate.test(text, words.getBegin(w), words.getEnd(w))) {
+          ++numMatches;
+        }
+      }
+    }
+    return numMatches;
+  }
+
+  private void checkEquivalence(final String pattern) {
+    final Pattern regex = Pattern.compile(pattern);
+    final WordPredicate predicate =
+        WordMatchFilterBenchmark.getPredicate(pattern);
+    for (final TextSpans words : this.paragraphWords) {
+      for (int w = 0; w < words.size(); ++w) {
+        WordMatchFilterBenchmark.checkEquivalence(
+            regex, predicate, words.get(w));
+      }
+    }
+
+    final Random random = new Random(pattern.hashCode());
+    final StringBuilder text = new StringBuilder();
+    for (int s = 0; s < NUM_RANDOM_STRINGS; ++s) {
+      text.setLength(0);
+      final int length = random.nextInt(MAX_RANDOM_LENGTH + 1);
+      for (int c = 0; c < length; ++c) {
+        text.append(RANDOM_CHARACTERS.charAt(
+            random.nextInt(RANDOM_CHARACTERS.length())));
+      }
+      final String word = text.toString();
+      WordMatchFilterBenchmark.checkEquivalence(regex, predicate, word);
+
+      // regions may split surrogate pairs
+      final int begin = random.nextInt(length + 1);
+      final int end = begin + random.nextInt(length - begin + 1);
+      final boolean expected = regex.matcher(word).region(begin, end).matches();
+      if (predicate.test(word, begin, end) != expected) {
+        throw new IllegalStateException("The results for region " + begin
+            + "-" + end + " of '" + word + "' and " + pattern + " differ");
+      }
+    }
+  }
+
+  private static void checkEquivalence(
+      final Pattern regex, final WordPredicate predicate, final String word) {
+    final boolean expected = regex.matcher(word).matches();
+    if (predicate.test(word) != expected
+        || predicate.test(" " + word + " ", 1, word.length() + 1) != expected) {
+      throw new IllegalStateException("The results for '" + word + "' and "
+          + regex.pattern() + " differ");
+    }
+  }
+
+  private static WordPredicate getPredicate(final String pattern) {
+    final WordMatchFilter filter = new WordMatchFilter(pattern);
+    final WordPredicate predicate =
+        (WordPredicate) filter.getPredicate(LANGUAGE);
+    if (!(predicate instanceof WordMatchFilter.CodePointPatternPredicate)) {
+      throw new IllegalStateException("Not recognized: " + pattern);
+    }
+    return predicate;
+  }
+
+}
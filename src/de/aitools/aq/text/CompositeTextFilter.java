@@ -0,0 +1,139 @@
+package de.aitools.aq.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A filter that accepts a text if all of several {@link TextFilter}s accept
+ * it, testing the words of the text in a single pass.
+ *
+ * <p>
+ * The words are tested by the word filters of all text filters that are not
+ * yet decided, and the matches are counted. A text filter is decided as soon
+ * as its minimum absolute count and ratio are met (further words can only
+ * add matches) or can no longer be met even if all remaining words match. The
+ * pass stops as soon as one filter rejects the text or all filters accept it.
+ * </p><p>
+ * The composite filter uses the text filters it was created with, so changes
+ * to their thresholds or word filters apply to it as well.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class CompositeTextFilter implements BiPredicate<String, Locale> {
+
+  private final List<TextFilter> textFilters;
+
+  /**
+   * Creates a new filter that accepts texts that all given filters accept.
+   */
+  public CompositeTextFilter(final TextFilter... textFilters) {
+    this(Arrays.asList(textFilters));
+  }
+
+  /**
+   * Creates a new filter that accepts texts that all given filters accept.
+   */
+  public CompositeTextFilter(final List<TextFilter> textFilters) {
+    this.textFilters = new ArrayList<>(textFilters.size());
+    for (final TextFilter textFilter : textFilters) {
+      if (textFilter == null) { throw new NullPointerException(); }
+      this.textFilters.add(textFilter);
+    }
+  }
+
+  /**
+   * Gets the filters that all have to accept a text.
+   */
+  public List<TextFilter> getTextFilters() {
+    return Collections.unmodifiableList(this.textFilters);
+  }
+
+  /**
+   * Tests whether all filters accept the text of given language.
+   */
+  @Override
+  public boolean test(final String text, final Locale language) {
+    final TextSpans words = WordFilter.toWordSpans(text, language);
+    return this.test(words, language);
+  }
+
+  /**
+   * Tests whether all filters accept the text (specified by the spans of its
+   * words) of given language.
+   */
+  public boolean test(final TextSpans words, final Locale language) {
+    if (language == null) { throw new NullPointerException(); }
+    final int numFilters = this.textFilters.size();
+    final int numWords = words.size();
+    final Predicate<?>[] predicates = new Predicate<?>[numFilters];
+    final int[] numMatches = new int[numFilters];
+    final boolean[] accepted = new boolean[numFilters];
+    int numUndecided = 0;
+    for (int f = 0; f < numFilters; ++f) {
+      final TextFilter textFilter = this.textFilters.get(f);
+      final int decision =
+          CompositeTextFilter.decide(textFilter, 0, numWords, numWords);
+      if (decision < 0) { return false; }
+      if (decision > 0) {
+        accepted[f] = true;
+      } else {
+        predicates[f] = textFilter.getWordFilter().getPredicate(language);
+        ++numUndecided;
+      }
+    }
+
+    final CharSequence text = words.getText();
+    for (int w = 0; w < numWords && numUndecided > 0; ++w) {
+      final int begin = words.getBegin(w);
+      final int end = words.getEnd(w);
+      String word = null;
+      for (int f = 0; f < numFilters; ++f) {
+        if (accepted[f]) { continue; }
+        final boolean matches;
+        if (predicates[f] instanceof WordPredicate) {
+          matches = ((WordPredicate) predicates[f]).test(text, begin, end);
+        } else {
+          if (word == null) { word = words.get(w); }
+          @SuppressWarnings("unchecked")
+          final Predicate<String> predicate =
+              (Predicate<String>) predicates[f];
+          matches = predicate.test(word);
+        }
+        if (matches) { ++numMatches[f]; }
+
+        final int numRemainingWords = numWords - w - 1;
+        final int decision = CompositeTextFilter.decide(
+            this.textFilters.get(f), numMatches[f], numRemainingWords,
+            numWords);
+        if (decision < 0) { return false; }
+        if (decision > 0) {
+          accepted[f] = true;
+          --numUndecided;
+        }
+      }
+    }
+    return numUndecided == 0;
+  }
+
+  /**
+   * Decides whether a filter accepts the text (1), rejects it (-1), or
+   * depends on the remaining words (0).
+   */
+  private static int decide(final TextFilter textFilter,
+      final int numMatches, final int numRemainingWords, final int numWords) {
+    if (textFilter.test(numMatches, numWords)) { return 1; }
+    if (numRemainingWords == 0
+        || !textFilter.test(numMatches + numRemainingWords, numWords)) {
+      return -1;
+    }
+    return 0;
+  }
+
+}
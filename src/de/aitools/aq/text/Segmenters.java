@@ -0,0 +1,86 @@
+package de.aitools.aq.text;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.ibm.icu.text.BreakIterator;
+
+/**
+ * Provides ICU segmenters that are cached per thread and language.
+ *
+ * <p>
+ * Creating a rule-based {@link BreakIterator} is expensive, but the iterators
+ * are not thread-safe. Therefore, each thread gets its own iterators, of which
+ * it keeps those for the {@value #MAX_CACHED_LANGUAGES} most recently used
+ * languages per kind.
+ * </p><p>
+ * A thread gets the same iterator for repeated calls with the same language,
+ * so it has to be done using the iterator (and must not pass it to other
+ * code that could get the same iterator) before it requests it again.
+ * </p><p>
+ * The cache only pays off for threads that segment many texts. A thread that
+ * segments only a single page (like a virtual thread per page) creates the
+ * iterators anyway, but still reuses them for the sentences of that page.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public final class Segmenters {
+
+  /**
+   * The maximum number of languages for which a thread keeps the iterators of
+   * one kind.
+   */
+  public static final int MAX_CACHED_LANGUAGES = 16;
+
+  private static final ThreadLocal<Map<Locale, BreakIterator>>
+  SENTENCE_INSTANCES = ThreadLocal.withInitial(Segmenters::createCache);
+
+  private static final ThreadLocal<Map<Locale, BreakIterator>>
+  WORD_INSTANCES = ThreadLocal.withInitial(Segmenters::createCache);
+
+  private Segmenters() { }
+
+  /**
+   * Gets the sentence segmenter of the current thread for given language.
+   * @see BreakIterator#getSentenceInstance(Locale)
+   */
+  public static BreakIterator getSentenceInstance(final Locale language) {
+    return Segmenters.get(SENTENCE_INSTANCES, language,
+        BreakIterator::getSentenceInstance);
+  }
+
+  /**
+   * Gets the word segmenter of the current thread for given language.
+   * @see BreakIterator#getWordInstance(Locale)
+   */
+  public static BreakIterator getWordInstance(final Locale language) {
+    return Segmenters.get(WORD_INSTANCES, language,
+        BreakIterator::getWordInstance);
+  }
+
+  private static BreakIterator get(
+      final ThreadLocal<Map<Locale, BreakIterator>> instances,
+      final Locale language,
+      final Function<Locale, BreakIterator> factory) {
+    if (language == null) { throw new NullPointerException(); }
+    return instances.get().computeIfAbsent(language, factory);
+  }
+
+  private static Map<Locale, BreakIterator> createCache() {
+    return new LinkedHashMap<Locale, BreakIterator>(
+        MAX_CACHED_LANGUAGES * 2, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          final Map.Entry<Locale, BreakIterator> eldest) {
+        return this.size() > MAX_CACHED_LANGUAGES;
+      }
+    };
+  }
+
+}
@@ -1,11 +1,15 @@
 package de.aitools.aq.text;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Predicate;
 
 import de.aitools.ie.stopwords.StopWordList;
@@ -13,6 +17,13 @@ import de.aitools.ie.stopwords.StopWordList;
 /**
  * Filters words that are not stop words.
  *
+ * <p>
+ * The stop word list of a language is loaded from {@link StopWordList} when
+ * the predicate for the language is first requested, once per filter even if
+ * several threads request it at the same time. Afterwards, requesting the
+ * predicate does not lock, so a filter can be shared between threads.
+ * </p>
+ *
  * @author johannes.kiesel@uni-weimar.de
  * @version $Date$
  *
@@ -21,10 +32,14 @@ public class StopWordFilter extends WordFilter {
   
   protected static final Set<String> NO_LIST_AVAILABLE = null;
 
-  private final Map<Locale, StopWordPredicate> stopWordLists;
+  private final ConcurrentMap<Locale, StopWordPredicate> stopWordLists;
   
   private final boolean ignoreCase;
 
+  // Marks languages for which no list is available, as the map can not
+  // contain null
+  private final StopWordPredicate unsupported;
+
   /**
    * Create a new filter that discards all words that do not match a stop word
    * in the stop word list (ignoring case) of the respective language.
@@ -39,8 +54,9 @@ public class StopWordFilter extends WordFilter {
    * @param ignoreCase Whether stop words should be checked ignoring case
    */
   public StopWordFilter(final boolean ignoreCase) {
-    this.stopWordLists = new HashMap<>();
+    this.stopWordLists = new ConcurrentHashMap<>();
     this.ignoreCase = ignoreCase;
+    this.unsupported = new StopWordPredicate(Locale.ROOT);
   }
   
   /**
@@ -58,12 +74,14 @@ public class StopWordFilter extends WordFilter {
       final Locale language, final Iterable<String> words) {
     if (language == null) { throw new NullPointerException(); }
     if (words == null) { throw new NullPointerException(); }
-    StopWordPredicate predicate = this.stopWordLists.get(language);
-    if (predicate == null) {
-      predicate = new StopWordPredicate(language);
-      this.stopWordLists.put(language, predicate);
-    }
-    predicate.addStopWords(words);
+    this.stopWordLists.compute(language, (key, predicate) -> {
+      final StopWordPredicate target =
+          predicate == null || predicate == this.unsupported
+          ? new StopWordPredicate(language)
+          : predicate;
+      target.addStopWords(words);
+      return target;
+    });
   }
 
   /**
@@ -71,14 +89,8 @@ public class StopWordFilter extends WordFilter {
    */
   public void addStopWords(
       final Locale language, final String[] words) {
-    if (language == null) { throw new NullPointerException(); }
     if (words == null) { throw new NullPointerException(); }
-    StopWordPredicate predicate = this.stopWordLists.get(language);
-    if (predicate == null) {
-      predicate = new StopWordPredicate(language);
-      this.stopWordLists.put(language, predicate);
-    }
-    predicate.addStopWords(words);
+    this.addStopWords(language, Arrays.asList(words));
   }
 
   /**
@@ -105,62 +117,88 @@ public class StopWordFilter extends WordFilter {
 
   @Override
   public Predicate<String> getPredicate(final Locale language) {
-    final Predicate<String> predicate = this.stopWordLists.get(language);
-    if (predicate != null) {
-      return predicate;
-    } else if (this.stopWordLists.containsKey(language)) {
+    if (language == null) { throw new NullPointerException(); }
+    final StopWordPredicate predicate =
+        this.stopWordLists.computeIfAbsent(language, this::loadStopWords);
+    if (predicate == this.unsupported) {
       throw new IllegalArgumentException("Language not supported: " + language);
-    } else {
-      synchronized (this.stopWordLists) {
-        if (!this.stopWordLists.containsKey(language)) {
-          try {
-            final String[] stopWords =
-                new StopWordList(language).getStopWordList();
-            this.addStopWords(language, stopWords);
-          } catch (final Error e) {
-            this.stopWordLists.put(language, null);
-          }
-        }
+    }
+    return predicate;
+  }
+
+  /**
+   * Loads the stop word list of given language, or returns
+   * {@link #unsupported} if no list is available.
+   */
+  private StopWordPredicate loadStopWords(final Locale language) {
+    try {
+      final String[] stopWords = new StopWordList(language).getStopWordList();
+      final StopWordPredicate predicate = new StopWordPredicate(language);
+      predicate.addStopWords(stopWords);
+      return predicate;
+    } catch (final Error e) {
+      return this.unsupported;
+    }
+  }
+
+  /**
+   * Estimates the number of bytes that the stop word lists occupy in memory,
+   * per language.
+   * @see StopWordSet#getMemoryUsage()
+   */
+  public Map<Locale, Long> getMemoryUsage() {
+    final Map<Locale, Long> memoryUsage = new HashMap<>();
+    for (final StopWordPredicate predicate : this.stopWordLists.values()) {
+      if (predicate != this.unsupported) {
+        memoryUsage.put(predicate.language,
+            predicate.stopWords.getMemoryUsage());
       }
-      return this.getPredicate(language);
     }
+    return memoryUsage;
   }
 
-  protected class StopWordPredicate implements Predicate<String> {
+  /**
+   * Tests whether a word is in the stop word list of a language.
+   * <p>
+   * The list is held as an immutable {@link StopWordSet} that is replaced when
+   * stop words are added, so that tests do not need to synchronize.
+   * </p>
+   */
+  protected class StopWordPredicate implements WordPredicate {
     
-    private final Set<String> stopWords;
+    private volatile StopWordSet stopWords;
     
     private final Locale language;
     
     public StopWordPredicate(final Locale language) {
       if (language == null) { throw new NullPointerException(); }
-      this.stopWords = new HashSet<>();
+      this.stopWords = new StopWordSet(
+          Collections.emptyList(), language, StopWordFilter.this.ignoreCase);
       this.language = language;
     }
 
     @Override
     public boolean test(final String word) {
-      return this.stopWords.contains(this.normalize(word));
+      return this.stopWords.contains(word);
+    }
+
+    @Override
+    public boolean test(
+        final CharSequence text, final int begin, final int end) {
+      return this.stopWords.contains(text, begin, end);
     }
     
     protected void addStopWords(final String[] words) {
-      for (final String word : words) {
-        this.stopWords.add(this.normalize(word));
-      }
+      this.addStopWords(Arrays.asList(words));
     }
     
-    protected void addStopWords(final Iterable<String> words) {
+    protected synchronized void addStopWords(final Iterable<String> words) {
+      final List<String> allWords = this.stopWords.toList();
       for (final String word : words) {
-        this.stopWords.add(this.normalize(word));
-      }
-    }
-    
-    protected String normalize(final String word) {
-      if (StopWordFilter.this.ignoreCase) {
-        return word.toLowerCase(this.language);
-      } else {
-        return word;
+        allWords.add(word);
       }
+      this.stopWords = new StopWordSet(
+          allWords, this.language, StopWordFilter.this.ignoreCase);
     }
     
   }
@@ -0,0 +1,335 @@
+package de.aitools.aq.text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An immutable set of words that can be probed with a region of a text,
+ * optionally ignoring case.
+ *
+ * <p>
+ * The words are stored lower-cased (using the rules of the language) in an
+ * open-addressing hash table of char arrays. A lookup lower-cases the
+ * characters of the region one code point at a time while hashing and
+ * comparing, so that neither a substring nor a lower-cased copy of it is
+ * created. Regions of ASCII characters only, which most words of most web
+ * pages are, take a shorter path that lower-cases a character by arithmetic.
+ * </p><p>
+ * Lower-casing single code points is the same as
+ * {@link String#toLowerCase(Locale)} unless the language is Turkish,
+ * Azerbaijani, or Lithuanian, or the text contains a capital dotted I
+ * (U+0130) or a capital sigma (U+03A3), as their lower case depends on the
+ * context. In these cases, the lookup lower-cases the region as a String.
+ * </p><p>
+ * Instances can be shared between threads.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public final class StopWordSet {
+
+  private static final char CAPITAL_I_WITH_DOT = '\u0130';
+
+  private static final char CAPITAL_SIGMA = '\u03A3';
+
+  private static final double MAX_LOAD_FACTOR = 0.5;
+
+  // Rough sizes on a 64 bit JVM with compressed references
+  private static final int OBJECT_HEADER_BYTES = 16;
+
+  private static final int REFERENCE_BYTES = 4;
+
+  private final char[][] table;
+
+  private final int mask;
+
+  private final int size;
+
+  private final Locale language;
+
+  private final boolean ignoreCase;
+
+  private final boolean contextSensitiveCase;
+
+  /**
+   * Creates a new set of given words.
+   * @param words The words
+   * @param language The language of the words, used for lower-casing
+   * @param ignoreCase Whether the set ignores case
+   */
+  public StopWordSet(final Iterable<String> words, final Locale language,
+      final boolean ignoreCase) {
+    if (words == null) { throw new NullPointerException(); }
+    if (language == null) { throw new NullPointerException(); }
+    this.language = language;
+    this.ignoreCase = ignoreCase;
+    final String languageCode = language.getLanguage();
+    this.contextSensitiveCase = ignoreCase
+        && (languageCode.equals("tr") || languageCode.equals("az")
+            || languageCode.equals("lt"));
+
+    int numWords = 0;
+    for (final String word : words) {
+      if (word == null) { throw new NullPointerException(); }
+      ++numWords;
+    }
+    int capacity = 2;
+    while (capacity * MAX_LOAD_FACTOR < numWords) { capacity *= 2; }
+    this.table = new char[capacity][];
+    this.mask = capacity - 1;
+
+    int size = 0;
+    for (final String word : words) {
+      final String normalized = this.normalize(word);
+      final char[] key = normalized.toCharArray();
+      int slot = StopWordSet.hash(normalized, 0, key.length) & this.mask;
+      while (this.table[slot] != null
+          && !Arrays.equals(this.table[slot], key)) {
+        slot = (slot + 1) & this.mask;
+      }
+      if (this.table[slot] == null) {
+        this.table[slot] = key;
+        ++size;
+      }
+    }
+    this.size = size;
+  }
+
+  /**
+   * Gets the language of the words in this set.
+   */
+  public Locale getLanguage() {
+    return this.language;
+  }
+
+  /**
+   * Checks whether this set ignores case.
+   */
+  public boolean getIgnoresCase() {
+    return this.ignoreCase;
+  }
+
+  /**
+   * Gets the number of distinct words in this set.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Estimates the number of bytes this set occupies in memory.
+   */
+  public long getMemoryUsage() {
+    long bytes = OBJECT_HEADER_BYTES + 4 * REFERENCE_BYTES + 12;
+    bytes += OBJECT_HEADER_BYTES + (long) this.table.length * REFERENCE_BYTES;
+    for (final char[] key : this.table) {
+      if (key != null) {
+        bytes += StopWordSet.align(OBJECT_HEADER_BYTES + 2L * key.length);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Checks whether the set contains given word.
+   */
+  public boolean contains(final CharSequence word) {
+    return this.contains(word, 0, word.length());
+  }
+
+  /**
+   * Checks whether the set contains the word that spans from <tt>begin</tt>
+   * (inclusive) to <tt>end</tt> (exclusive) in given text.
+   */
+  public boolean contains(
+      final CharSequence text, final int begin, final int end) {
+    if (!this.ignoreCase) {
+      return this.containsNormalized(text, begin, end);
+    }
+    if (!this.contextSensitiveCase) {
+      final int asciiResult = this.containsAscii(text, begin, end);
+      if (asciiResult >= 0) { return asciiResult == 1; }
+    }
+    if (this.contextSensitiveCase
+        || StopWordSet.hasContextSensitiveCase(text, begin, end)) {
+      final String word = text.subSequence(begin, end).toString();
+      final String normalized = this.normalize(word);
+      return this.containsNormalized(normalized, 0, normalized.length());
+    }
+
+    int hash = 0;
+    for (int i = begin; i < end; ) {
+      final int codePoint = StopWordSet.codePointAt(text, i, end);
+      hash = StopWordSet.hash(hash, Character.toLowerCase(codePoint));
+      i += Character.charCount(codePoint);
+    }
+    for (int slot = StopWordSet.finish(hash) & this.mask;
+        this.table[slot] != null;
+        slot = (slot + 1) & this.mask) {
+      if (StopWordSet.equalsLowerCase(this.table[slot], text, begin, end)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Looks up a region that consists of ASCII characters only.
+   * @return 1 if contained, 0 if not, and -1 if the region contains non-ASCII
+   * characters
+   */
+  private int containsAscii(
+      final CharSequence text, final int begin, final int end) {
+    int hash = 0;
+    for (int i = begin; i < end; ++i) {
+      final char c = text.charAt(i);
+      if (c >= 0x80) { return -1; }
+      hash = StopWordSet.hash(hash, StopWordSet.toLowerCaseAscii(c));
+    }
+    final int length = end - begin;
+    for (int slot = StopWordSet.finish(hash) & this.mask;
+        this.table[slot] != null;
+        slot = (slot + 1) & this.mask) {
+      final char[] key = this.table[slot];
+      if (key.length == length) {
+        int k = 0;
+        while (k < length && key[k]
+            == StopWordSet.toLowerCaseAscii(text.charAt(begin + k))) {
+          ++k;
+        }
+        if (k == length) { return 1; }
+      }
+    }
+    return 0;
+  }
+
+  private static char toLowerCaseAscii(final char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+  }
+
+  /**
+   * Gets the words of this set (lower-cased if this set ignores case) as a new
+   * list.
+   */
+  public List<String> toList() {
+    final List<String> words = new ArrayList<>(this.size);
+    for (final char[] key : this.table) {
+      if (key != null) { words.add(new String(key)); }
+    }
+    return words;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder();
+    builder.append('[');
+    for (final char[] key : this.table) {
+      if (key != null) {
+        if (builder.length() > 1) { builder.append(", "); }
+        builder.append(key);
+      }
+    }
+    return builder.append(']').toString();
+  }
+
+  private String normalize(final String word) {
+    if (this.ignoreCase) {
+      return word.toLowerCase(this.language);
+    } else {
+      return word;
+    }
+  }
+
+  private boolean containsNormalized(
+      final CharSequence text, final int begin, final int end) {
+    for (int slot = StopWordSet.hash(text, begin, end) & this.mask;
+        this.table[slot] != null;
+        slot = (slot + 1) & this.mask) {
+      if (StopWordSet.equals(this.table[slot], text, begin, end)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean hasContextSensitiveCase(
+      final CharSequence text, final int begin, final int end) {
+    for (int i = begin; i < end; ++i) {
+      final char c = text.charAt(i);
+      if (c == CAPITAL_I_WITH_DOT || c == CAPITAL_SIGMA) { return true; }
+    }
+    return false;
+  }
+
+  private static boolean equals(final char[] key,
+      final CharSequence text, final int begin, final int end) {
+    if (key.length != end - begin) { return false; }
+    for (int k = 0; k < key.length; ++k) {
+      if (key[k] != text.charAt(begin + k)) { return false; }
+    }
+    return true;
+  }
+
+  private static boolean equalsLowerCase(final char[] key,
+      final CharSequence text, final int begin, final int end) {
+    int k = 0;
+    for (int i = begin; i < end; ) {
+      final int codePoint = StopWordSet.codePointAt(text, i, end);
+      final int lowerCase = Character.toLowerCase(codePoint);
+      if (Character.isBmpCodePoint(lowerCase)) {
+        if (k >= key.length || key[k] != lowerCase) { return false; }
+        ++k;
+      } else {
+        if (k + 1 >= key.length
+            || key[k] != Character.highSurrogate(lowerCase)
+            || key[k + 1] != Character.lowSurrogate(lowerCase)) {
+          return false;
+        }
+        k += 2;
+      }
+      i += Character.charCount(codePoint);
+    }
+    return k == key.length;
+  }
+
+  private static int hash(
+      final CharSequence text, final int begin, final int end) {
+    int hash = 0;
+    for (int i = begin; i < end; ) {
+      final int codePoint = StopWordSet.codePointAt(text, i, end);
+      hash = StopWordSet.hash(hash, codePoint);
+      i += Character.charCount(codePoint);
+    }
+    return StopWordSet.finish(hash);
+  }
+
+  private static int hash(final int hash, final int codePoint) {
+    return 31 * hash + codePoint;
+  }
+
+  private static int finish(final int hash) {
+    // Spread the bits, as the table index only uses the lowest ones
+    final int spread = hash * 0x9E3779B9;
+    return spread ^ (spread >>> 16);
+  }
+
+  private static int codePointAt(
+      final CharSequence text, final int index, final int end) {
+    final char high = text.charAt(index);
+    if (Character.isHighSurrogate(high) && index + 1 < end) {
+      final char low = text.charAt(index + 1);
+      if (Character.isLowSurrogate(low)) {
+        return Character.toCodePoint(high, low);
+      }
+    }
+    return high;
+  }
+
+  private static long align(final long bytes) {
+    return (bytes + 7) & ~7L;
+  }
+
+}
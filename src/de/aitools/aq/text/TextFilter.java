@@ -3,6 +3,7 @@ package de.aitools.aq.text;
 import java.util.List;
 import java.util.Locale;
 import java.util.function.BiPredicate;
+import java.util.function.Predicate;
 
 /**
  * A class that checks text based on absolute or relative counts done by a
@@ -93,7 +94,7 @@ public class TextFilter implements BiPredicate<String, Locale> {
    */
   @Override
   public boolean test(final String text, final Locale language) {
-    final List<String> words = WordFilter.toWords(text, language);
+    final TextSpans words = WordFilter.toWordSpans(text, language);
     return this.test(words, language);
   }
 
@@ -105,9 +106,34 @@ public class TextFilter implements BiPredicate<String, Locale> {
    * @see #getMinRatio()
    */
   public boolean test(final List<String> words, final Locale language) {
-    final int numWords = words.size();
-    final int numRemaining = this.wordFilter.filterWords(words, language).size();
-    
+    if (language == null) { throw new NullPointerException(); }
+    final Predicate<String> predicate =
+        this.wordFilter.getPredicate(language);
+    int numRemaining = 0;
+    for (final String word : words) {
+      if (predicate.test(word)) { ++numRemaining; }
+    }
+    return this.test(numRemaining, words.size());
+  }
+
+  /**
+   * Tests whether the text (specified by the spans of its words) of given
+   * language fulfills the minimum ratio and minimum absolute count
+   * requirements of this filter.
+   * @see #getWordFilter()
+   * @see #getMinAbsolute()
+   * @see #getMinRatio()
+   */
+  public boolean test(final TextSpans words, final Locale language) {
+    final int numRemaining = this.wordFilter.countWords(words, language);
+    return this.test(numRemaining, words.size());
+  }
+
+  /**
+   * Tests whether the given number of matching words out of all words of a
+   * text fulfill the requirements of this filter.
+   */
+  boolean test(final int numRemaining, final int numWords) {
     final double ratio = ((double) numRemaining) / ((double) numWords);
     return numRemaining >= this.minAbsolute && ratio >= this.minRatio;
   }
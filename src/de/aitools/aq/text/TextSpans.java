@@ -0,0 +1,180 @@
+package de.aitools.aq.text;
+
+import java.text.StringCharacterIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ibm.icu.text.BreakIterator;
+
+/**
+ * Segments of a text, stored as offsets into the text.
+ *
+ * <p>
+ * Unlike a list of substrings, this does not create a String for each segment,
+ * so segments can be tested (e.g., using {@link WordPredicate}) and counted
+ * without allocating, and only those segments that are needed as Strings are
+ * materialized using {@link #get(int)}.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class TextSpans {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final CharSequence text;
+
+  private int[] offsets;
+
+  private int size;
+
+  /**
+   * Creates an empty list of spans of given text.
+   */
+  public TextSpans(final CharSequence text) {
+    if (text == null) { throw new NullPointerException(); }
+    this.text = text;
+    this.offsets = new int[2 * INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  /**
+   * Segments the text using the segmenter, and returns the spans of the
+   * non-empty segments with leading and trailing whitespace removed (like
+   * {@link String#trim()}).
+   */
+  public static TextSpans segment(
+      final String text, final BreakIterator segmenter) {
+    return TextSpans.segment(text, 0, text.length(), segmenter);
+  }
+
+  /**
+   * Segments a region of the text using the segmenter, and returns the spans
+   * of the non-empty segments with leading and trailing whitespace removed
+   * (like {@link String#trim()}). The offsets of the spans are relative to the
+   * start of the entire text.
+   */
+  public static TextSpans segment(final String text,
+      final int begin, final int end, final BreakIterator segmenter) {
+    if (begin == 0 && end == text.length()) {
+      segmenter.setText(text);
+    } else {
+      segmenter.setText(new StringCharacterIterator(text, begin, end, begin));
+    }
+
+    final TextSpans spans = new TextSpans(text);
+    int segmentBegin = segmenter.first();
+    int segmentEnd = segmenter.next();
+    while (segmentEnd != BreakIterator.DONE) {
+      spans.addTrimmed(segmentBegin, segmentEnd);
+      segmentBegin = segmentEnd;
+      segmentEnd = segmenter.next();
+    }
+    return spans;
+  }
+
+  /**
+   * Gets the text the spans refer to.
+   */
+  public CharSequence getText() {
+    return this.text;
+  }
+
+  /**
+   * Gets the number of spans.
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Checks whether there are no spans.
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Gets the offset of the first character of the span at given index.
+   */
+  public int getBegin(final int index) {
+    this.checkIndex(index);
+    return this.offsets[2 * index];
+  }
+
+  /**
+   * Gets the offset after the last character of the span at given index.
+   */
+  public int getEnd(final int index) {
+    this.checkIndex(index);
+    return this.offsets[2 * index + 1];
+  }
+
+  /**
+   * Gets the text of the span at given index as a new String.
+   */
+  public String get(final int index) {
+    return this.text.subSequence(
+        this.getBegin(index), this.getEnd(index)).toString();
+  }
+
+  /**
+   * Gets the texts of all spans as a new list.
+   */
+  public List<String> toList() {
+    final List<String> list = new ArrayList<>(this.size);
+    for (int i = 0; i < this.size; ++i) {
+      list.add(this.get(i));
+    }
+    return list;
+  }
+
+  /**
+   * Adds a span.
+   */
+  public void add(final int begin, final int end) {
+    if (begin < 0 || end < begin || end > this.text.length()) {
+      throw new IndexOutOfBoundsException(
+          "Invalid span [" + begin + "," + end + ")");
+    }
+    if (2 * this.size == this.offsets.length) {
+      this.offsets = Arrays.copyOf(this.offsets, 2 * this.offsets.length);
+    }
+    this.offsets[2 * this.size] = begin;
+    this.offsets[2 * this.size + 1] = end;
+    ++this.size;
+  }
+
+  /**
+   * Adds a span with leading and trailing whitespace removed (like
+   * {@link String#trim()}), if it is not empty then.
+   */
+  public void addTrimmed(final int begin, final int end) {
+    int trimmedBegin = begin;
+    int trimmedEnd = end;
+    while (trimmedBegin < trimmedEnd
+        && this.text.charAt(trimmedBegin) <= ' ') {
+      ++trimmedBegin;
+    }
+    while (trimmedBegin < trimmedEnd
+        && this.text.charAt(trimmedEnd - 1) <= ' ') {
+      --trimmedEnd;
+    }
+    if (trimmedBegin < trimmedEnd) { this.add(trimmedBegin, trimmedEnd); }
+  }
+
+  @Override
+  public String toString() {
+    return this.toList().toString();
+  }
+
+  private void checkIndex(final int index) {
+    if (index < 0 || index >= this.size) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", Size: " + this.size);
+    }
+  }
+
+}
@@ -6,8 +6,6 @@ import java.util.Locale;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 
-import com.ibm.icu.text.BreakIterator;
-
 /**
  * Filters words based on their language.
  *
@@ -56,23 +54,59 @@ public abstract class WordFilter implements BiPredicate<String, Locale> {
   }
 
   /**
-   * Segments the text into words, using a segmenter for the given language.
+   * Counts the words that pass the {@link #test(String, Locale)}.
+   * <p>
+   * If the predicate for the language is a {@link WordPredicate}, no String is
+   * created for the words.
+   * </p>
+   */
+  public int countWords(final TextSpans words, final Locale language) {
+    if (language == null) { throw new NullPointerException(); }
+    final Predicate<String> predicate = this.getPredicate(language);
+    final int numWords = words.size();
+    int numMatches = 0;
+    if (predicate instanceof WordPredicate) {
+      final WordPredicate wordPredicate = (WordPredicate) predicate;
+      final CharSequence text = words.getText();
+      for (int w = 0; w < numWords; ++w) {
+        if (wordPredicate.test(text, words.getBegin(w), words.getEnd(w))) {
+          ++numMatches;
+        }
+      }
+    } else {
+      for (int w = 0; w < numWords; ++w) {
+        if (predicate.test(words.get(w))) { ++numMatches; }
+      }
+    }
+    return numMatches;
+  }
+
+  /**
+   * Segments the text into words, using the segmenter for the given language
+   * from {@link Segmenters}.
    */
   public static List<String> toWords(final String text, final Locale language) {
-    final BreakIterator segmenter = BreakIterator.getWordInstance(language);
-    segmenter.setText(text);
+    return WordFilter.toWordSpans(text, language).toList();
+  }
 
-    final List<String> segments = new ArrayList<>();
-    int begin = segmenter.first();
-    int end = segmenter.next();
-    while (end != BreakIterator.DONE) {
-      final String segment = text.substring(begin, end).trim();
-      if (!segment.isEmpty()) { segments.add(segment); }
-      begin = end;
-      end = segmenter.next();
-    }
-    
-    return segments;
+  /**
+   * Segments the text into words like {@link #toWords(String, Locale)}, but
+   * returns the spans of the words.
+   */
+  public static TextSpans toWordSpans(
+      final String text, final Locale language) {
+    return WordFilter.toWordSpans(text, 0, text.length(), language);
+  }
+
+  /**
+   * Segments a region of the text into words like
+   * {@link #toWords(String, Locale)}, but returns the spans of the words
+   * relative to the start of the entire text.
+   */
+  public static TextSpans toWordSpans(final String text,
+      final int begin, final int end, final Locale language) {
+    return TextSpans.segment(
+        text, begin, end, Segmenters.getWordInstance(language));
   }
 
 }
@@ -1,17 +1,30 @@
 package de.aitools.aq.text;
 
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntPredicate;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 /**
  * Filters words that do not match a specific pattern.
  *
+ * <p>
+ * Common patterns (like words of letters with hyphens) are recognized and
+ * tested by scanning the code points of a word instead of using a regular
+ * expression matcher, which gives the same result but avoids creating a
+ * matcher for each word. All other patterns use a matcher.
+ * </p>
+ *
  * @author johannes.kiesel@uni-weimar.de
  * @version $Date$
  *
  */
 public class WordMatchFilter extends WordFilter {
+
+  private static final Map<String, IntPredicate[]> CODE_POINT_PATTERNS =
+      WordMatchFilter.createCodePointPatterns();
   
   private PatternPredicate predicate;
   
@@ -55,15 +68,63 @@ public class WordMatchFilter extends WordFilter {
    * </p>
    */
   public void setPattern(final Pattern pattern) {
-    this.predicate = new PatternPredicate(pattern);
+    final IntPredicate[] codePointPattern = pattern.flags() == 0
+        ? CODE_POINT_PATTERNS.get(pattern.pattern())
+        : null;
+    if (codePointPattern != null) {
+      this.predicate = new CodePointPatternPredicate(
+          pattern, codePointPattern[0], codePointPattern[1]);
+    } else {
+      this.predicate = new PatternPredicate(pattern);
+    }
   }
 
   @Override
   public Predicate<String> getPredicate(final Locale language) {
     return this.predicate;
   }
+
+  /**
+   * Creates the map from patterns that match a word that consists of one code
+   * point of a class followed by code points of a second class to these two
+   * classes.
+   */
+  private static Map<String, IntPredicate[]> createCodePointPatterns() {
+    final Map<String, IntPredicate[]> patterns = new HashMap<>();
+    final Map<String, IntPredicate> classes = new HashMap<>();
+    classes.put("\\p{IsAlphabetic}", Character::isAlphabetic);
+    classes.put("\\p{L}", Character::isLetter);
+    for (final Map.Entry<String, IntPredicate> entry : classes.entrySet()) {
+      final String name = entry.getKey();
+      final IntPredicate codePointClass = entry.getValue();
+      final IntPredicate withHyphen =
+          codePoint -> codePoint == '-' || codePointClass.test(codePoint);
+
+      final IntPredicate[] letters = { codePointClass, codePointClass };
+      WordMatchFilter.putAnchored(patterns, name + "+", letters);
+      WordMatchFilter.putAnchored(patterns, name + name + "*", letters);
+
+      final IntPredicate[] lettersWithHyphens = { codePointClass, withHyphen };
+      final String hyphenated = name + "[-" + name + "]*";
+      WordMatchFilter.putAnchored(patterns, hyphenated, lettersWithHyphens);
+      // the trailing class is redundant, but part of the default pattern of
+      // the PotthastJerichoExtractor
+      WordMatchFilter.putAnchored(
+          patterns, hyphenated + name + "*", lettersWithHyphens);
+    }
+    return patterns;
+  }
+
+  private static void putAnchored(final Map<String, IntPredicate[]> patterns,
+      final String pattern, final IntPredicate[] codePointPattern) {
+    // as the entire word has to match, anchors do not change the result
+    patterns.put(pattern, codePointPattern);
+    patterns.put("^" + pattern, codePointPattern);
+    patterns.put(pattern + "$", codePointPattern);
+    patterns.put("^" + pattern + "$", codePointPattern);
+  }
   
-  protected class PatternPredicate implements Predicate<String> {
+  protected class PatternPredicate implements WordPredicate {
     
     private final Pattern pattern;
     
@@ -76,7 +137,70 @@ public class WordMatchFilter extends WordFilter {
     public boolean test(final String word) {
       return this.pattern.matcher(word).matches();
     }
+
+    @Override
+    public boolean test(
+        final CharSequence text, final int begin, final int end) {
+      return this.pattern.matcher(text).region(begin, end).matches();
+    }
     
   }
 
+  /**
+   * Tests whether a word consists of one code point of a first class followed
+   * by any number of code points of a second class, as specified by the
+   * pattern.
+   */
+  protected class CodePointPatternPredicate extends PatternPredicate {
+
+    private final IntPredicate first;
+
+    private final IntPredicate rest;
+
+    protected CodePointPatternPredicate(final Pattern pattern,
+        final IntPredicate first, final IntPredicate rest) {
+      super(pattern);
+      if (first == null) { throw new NullPointerException(); }
+      if (rest == null) { throw new NullPointerException(); }
+      this.first = first;
+      this.rest = rest;
+    }
+
+    @Override
+    public boolean test(final String word) {
+      return this.test(word, 0, word.length());
+    }
+
+    @Override
+    public boolean test(
+        final CharSequence text, final int begin, final int end) {
+      if (begin >= end) { return false; }
+      int codePoint = WordMatchFilter.codePointAt(text, begin, end);
+      if (!this.first.test(codePoint)) { return false; }
+      for (int i = begin + Character.charCount(codePoint); i < end;
+          i += Character.charCount(codePoint)) {
+        codePoint = WordMatchFilter.codePointAt(text, i, end);
+        if (!this.rest.test(codePoint)) { return false; }
+      }
+      return true;
+    }
+
+  }
+
+  /**
+   * Gets the code point at given index, not combining surrogates across the
+   * end of the region (like a matcher with that region).
+   */
+  private static int codePointAt(
+      final CharSequence text, final int index, final int end) {
+    final char high = text.charAt(index);
+    if (Character.isHighSurrogate(high) && index + 1 < end) {
+      final char low = text.charAt(index + 1);
+      if (Character.isLowSurrogate(low)) {
+        return Character.toCodePoint(high, low);
+      }
+    }
+    return high;
+  }
+
 }
@@ -0,0 +1,26 @@
+package de.aitools.aq.text;
+
+import java.util.function.Predicate;
+
+/**
+ * A test for words that can also test a word given as region of a text, so
+ * that no String has to be created for it.
+ *
+ * @version $Date$
+ * @see TextSpans
+ *
+ */
+public interface WordPredicate extends Predicate<String> {
+
+  /**
+   * Tests the word that spans from <tt>begin</tt> (inclusive) to <tt>end</tt>
+   * (exclusive) in given text.
+   */
+  public boolean test(final CharSequence text, final int begin, final int end);
+
+  @Override
+  public default boolean test(final String word) {
+    return this.test(word, 0, word.length());
+  }
+
+}
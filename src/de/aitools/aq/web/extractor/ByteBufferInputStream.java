@@ -0,0 +1,41 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream that reads the remaining bytes of a buffer.
+ *
+ * @version $Date$
+ *
+ */
+class ByteBufferInputStream extends InputStream {
+
+  private final ByteBuffer buffer;
+
+  public ByteBufferInputStream(final ByteBuffer buffer) {
+    if (buffer == null) { throw new NullPointerException(); }
+    this.buffer = buffer;
+  }
+
+  @Override
+  public int read() {
+    if (!this.buffer.hasRemaining()) { return -1; }
+    return this.buffer.get() & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] target, final int offset, final int length) {
+    if (length == 0) { return 0; }
+    if (!this.buffer.hasRemaining()) { return -1; }
+    final int numRead = Math.min(length, this.buffer.remaining());
+    this.buffer.get(target, offset, numRead);
+    return numRead;
+  }
+
+  @Override
+  public int available() {
+    return this.buffer.remaining();
+  }
+
+}
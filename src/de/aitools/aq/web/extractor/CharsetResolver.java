@@ -0,0 +1,304 @@
+package de.aitools.aq.web.extractor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.ibm.icu.text.CharsetDetector;
+import com.ibm.icu.text.CharsetMatch;
+
+/**
+ * Determines the charset of an HTML document and decodes it.
+ *
+ * <p>
+ * The charset is taken from the first of these sources that yields a
+ * supported charset:
+ * </p>
+ * <ol>
+ * <li>A byte order mark at the start of the document (UTF-8 or UTF-16)</li>
+ * <li>The charset parameter of the HTTP Content-Type header</li>
+ * <li>A <tt>&lt;meta charset&gt;</tt> or
+ * <tt>&lt;meta http-equiv="Content-Type"&gt;</tt> tag within the first
+ * {@value #META_SNIFFING_LENGTH} bytes</li>
+ * <li>The ICU {@link CharsetDetector}, if enabled (see
+ * {@link #setUseDetector(boolean)})</li>
+ * <li>The default charset (see {@link #setDefaultCharset(Charset)})</li>
+ * </ol>
+ * <p>
+ * Resolvers can be used by several threads at once, but should not be
+ * configured while they are used.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class CharsetResolver {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The number of bytes at the start of a document that are searched for a
+   * meta tag that declares the charset.
+   */
+  public static final int META_SNIFFING_LENGTH = 4 * 1024;
+
+  /**
+   * The number of bytes at the start of a document that are passed to the
+   * {@link CharsetDetector}.
+   */
+  public static final int DETECTION_LENGTH = 16 * 1024;
+
+  /**
+   * The charset used if no other source yields one, unless changed using
+   * {@link #setDefaultCharset(Charset)}. This is the charset that HTTP
+   * assumes for text without charset.
+   */
+  public static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
+
+  private static final Pattern META_CHARSET_PATTERN = Pattern.compile(
+      "<meta\\s[^>]*?charset\\s*=\\s*[\"']?\\s*([-a-z0-9_.:]+)",
+      Pattern.CASE_INSENSITIVE);
+
+  private static final byte[] BOM_UTF_8 =
+    { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+  private static final byte[] BOM_UTF_16BE = { (byte) 0xFE, (byte) 0xFF };
+
+  private static final byte[] BOM_UTF_16LE = { (byte) 0xFF, (byte) 0xFE };
+
+  /**
+   * The sources a charset can be taken from.
+   */
+  public static enum Source {
+    /** A byte order mark at the start of the document. */
+    BOM,
+    /** The charset parameter of the HTTP Content-Type header. */
+    HEADER,
+    /** A meta tag in the document. */
+    META,
+    /** The ICU charset detector. */
+    DETECTOR,
+    /** The default charset of the resolver. */
+    DEFAULT
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Charset defaultCharset;
+
+  private boolean useDetector;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new resolver that does not use the {@link CharsetDetector} and
+   * uses {@link #DEFAULT_CHARSET} as default.
+   */
+  public CharsetResolver() {
+    this.setDefaultCharset(DEFAULT_CHARSET);
+    this.setUseDetector(false);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the charset that is used if no other source yields one.
+   */
+  public Charset getDefaultCharset() {
+    return this.defaultCharset;
+  }
+
+  /**
+   * Checks whether the ICU {@link CharsetDetector} is used if neither the
+   * byte order mark, the header, nor a meta tag yield a charset.
+   */
+  public boolean usesDetector() {
+    return this.useDetector;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the charset that is used if no other source yields one.
+   */
+  public void setDefaultCharset(final Charset defaultCharset) {
+    if (defaultCharset == null) { throw new NullPointerException(); }
+    this.defaultCharset = defaultCharset;
+  }
+
+  /**
+   * Sets whether the ICU {@link CharsetDetector} is used if neither the byte
+   * order mark, the header, nor a meta tag yield a charset.
+   */
+  public void setUseDetector(final boolean useDetector) {
+    this.useDetector = useDetector;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Determines the charset of given document and decodes it.
+   * @param body The bytes of the document, which are not modified
+   * @param headerCharset The charset parameter of the HTTP Content-Type header,
+   * or <tt>null</tt> if there is none
+   * @return The decoded document
+   */
+  public HtmlDocument decode(final ByteBuffer body, final String headerCharset) {
+    final byte[] bytes;
+    final int offset;
+    final int length = body.remaining();
+    if (body.hasArray()) {
+      bytes = body.array();
+      offset = body.arrayOffset() + body.position();
+    } else {
+      bytes = new byte[length];
+      body.duplicate().get(bytes);
+      offset = 0;
+    }
+    return this.decode(bytes, offset, length, headerCharset);
+  }
+
+  /**
+   * Determines the charset of given document and decodes it.
+   * @param bytes The array containing the document, which is not modified
+   * @param offset The index of the first byte of the document
+   * @param length The number of bytes of the document
+   * @param headerCharset The charset parameter of the HTTP Content-Type header,
+   * or <tt>null</tt> if there is none
+   * @return The decoded document
+   */
+  public HtmlDocument decode(final byte[] bytes, final int offset,
+      final int length, final String headerCharset) {
+    // byte order mark
+    final Charset bomCharset;
+    final int bomLength;
+    if (CharsetResolver.startsWith(bytes, offset, length, BOM_UTF_8)) {
+      bomCharset = StandardCharsets.UTF_8;
+      bomLength = BOM_UTF_8.length;
+    } else if (CharsetResolver.startsWith(bytes, offset, length, BOM_UTF_16BE)) {
+      bomCharset = StandardCharsets.UTF_16BE;
+      bomLength = BOM_UTF_16BE.length;
+    } else if (CharsetResolver.startsWith(bytes, offset, length, BOM_UTF_16LE)) {
+      bomCharset = StandardCharsets.UTF_16LE;
+      bomLength = BOM_UTF_16LE.length;
+    } else {
+      bomCharset = null;
+      bomLength = 0;
+    }
+    if (bomCharset != null) {
+      return CharsetResolver.decode(bytes, offset + bomLength,
+          length - bomLength, bomCharset, Source.BOM);
+    }
+
+    // HTTP header
+    final Charset charsetFromHeader = CharsetResolver.forName(headerCharset);
+    if (charsetFromHeader != null) {
+      return CharsetResolver.decode(
+          bytes, offset, length, charsetFromHeader, Source.HEADER);
+    }
+
+    // meta tag
+    final Charset charsetFromMeta =
+        CharsetResolver.sniffMetaCharset(bytes, offset, length);
+    if (charsetFromMeta != null) {
+      return CharsetResolver.decode(
+          bytes, offset, length, charsetFromMeta, Source.META);
+    }
+
+    // detector
+    if (this.useDetector) {
+      final Charset detectedCharset =
+          CharsetResolver.detect(bytes, offset, length);
+      if (detectedCharset != null) {
+        return CharsetResolver.decode(
+            bytes, offset, length, detectedCharset, Source.DETECTOR);
+      }
+    }
+
+    return CharsetResolver.decode(
+        bytes, offset, length, this.defaultCharset, Source.DEFAULT);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static HtmlDocument decode(final byte[] bytes, final int offset,
+      final int length, final Charset charset, final Source source) {
+    return new HtmlDocument(
+        new String(bytes, offset, length, charset), charset, source);
+  }
+
+  private static Charset sniffMetaCharset(
+      final byte[] bytes, final int offset, final int length) {
+    final String prefix = new String(bytes, offset,
+        Math.min(length, META_SNIFFING_LENGTH), StandardCharsets.ISO_8859_1);
+    final Matcher matcher = META_CHARSET_PATTERN.matcher(prefix);
+    while (matcher.find()) {
+      final Charset charset = CharsetResolver.forName(matcher.group(1));
+      if (charset != null) {
+        // a document that could be read as ASCII to find this tag is not UTF-16
+        if (charset.equals(StandardCharsets.UTF_16)
+            || charset.equals(StandardCharsets.UTF_16BE)
+            || charset.equals(StandardCharsets.UTF_16LE)) {
+          return StandardCharsets.UTF_8;
+        }
+        return charset;
+      }
+    }
+    return null;
+  }
+
+  private static Charset detect(
+      final byte[] bytes, final int offset, final int length) {
+    final byte[] prefix = new byte[Math.min(length, DETECTION_LENGTH)];
+    System.arraycopy(bytes, offset, prefix, 0, prefix.length);
+    final CharsetDetector detector = new CharsetDetector();
+    detector.setText(prefix);
+    final CharsetMatch match = detector.detect();
+    if (match == null) { return null; }
+    return CharsetResolver.forName(match.getName());
+  }
+
+  /**
+   * Gets the charset of given name, or <tt>null</tt> if the name is
+   * <tt>null</tt> or the charset is not supported.
+   */
+  private static Charset forName(final String charsetName) {
+    if (charsetName == null) { return null; }
+    final String name = charsetName.trim();
+    if (name.isEmpty()) { return null; }
+    try {
+      return Charset.forName(name);
+    } catch (final IllegalCharsetNameException
+        | UnsupportedCharsetException e) {
+      return null;
+    }
+  }
+
+  private static boolean startsWith(final byte[] bytes, final int offset,
+      final int length, final byte[] prefix) {
+    if (length < prefix.length) { return false; }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (bytes[offset + i] != prefix[i]) { return false; }
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,391 @@
+package de.aitools.aq.web.extractor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Checks whether the first bytes of a response body look like HTML.
+ *
+ * <p>
+ * Servers frequently label PDFs, images, or script bundles as
+ * <tt>text/html</tt>. The sniffer inspects only the first
+ * {@value #SNIFFING_LENGTH} bytes of the (decoded) body and rejects it if
+ * </p>
+ * <ol>
+ * <li>it starts with the magic number of a known binary format,</li>
+ * <li>the ratio of control bytes exceeds the maximum (see
+ * {@link #setMaxControlByteRatio(double)}), or</li>
+ * <li>only if markup is required (see {@link #setRequireMarkup(boolean)}):
+ * it contains no tag, that is, no <tt>&lt;</tt> that is followed by a letter,
+ * <tt>/</tt> and a letter, or <tt>!</tt>.</li>
+ * </ol>
+ * <p>
+ * For the markup check, the first {@value #SNIFFING_LENGTH} bytes after a
+ * byte order mark and leading whitespace are inspected. Bodies that start with
+ * a UTF-16 byte order mark are not checked for control bytes and are searched
+ * for markup ignoring the zero bytes.
+ * </p><p>
+ * Sniffers can be used by several threads at once, but should not be
+ * configured while they are used.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class ContentSniffer {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The number of bytes at the start of a body that are inspected.
+   */
+  public static final int SNIFFING_LENGTH = 1024;
+
+  /**
+   * The maximum ratio of control bytes, unless changed using
+   * {@link #setMaxControlByteRatio(double)}.
+   */
+  public static final double DEFAULT_MAX_CONTROL_BYTE_RATIO = 0.05;
+
+  private static final byte[][] MAGIC_NUMBERS = {
+    ContentSniffer.ascii("%PDF-"),
+    ContentSniffer.ascii("%!PS"),
+    ContentSniffer.ascii("{\\rtf"),
+    ContentSniffer.ascii("GIF87a"),
+    ContentSniffer.ascii("GIF89a"),
+    { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' },
+    { (byte) 0xFF, (byte) 0xD8, (byte) 0xFF },                    // JPEG
+    { 'I', 'I', 0x2A, 0x00 },                                     // TIFF
+    { 'M', 'M', 0x00, 0x2A },                                     // TIFF
+    { 0x00, 0x00, 0x01, 0x00 },                                   // ICO
+    ContentSniffer.ascii("RIFF"),                   // WEBP, WAV, AVI
+    ContentSniffer.ascii("OggS"),
+    ContentSniffer.ascii("ID3"),                                  // MP3
+    ContentSniffer.ascii("fLaC"),
+    { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3 },                     // WebM
+    ContentSniffer.ascii("FWS"),                                  // Flash
+    ContentSniffer.ascii("CWS"),                                  // Flash
+    ContentSniffer.ascii("wOFF"),
+    ContentSniffer.ascii("wOF2"),
+    { 0x00, 0x01, 0x00, 0x00, 0x00 },                             // TrueType
+    ContentSniffer.ascii("OTTO"),                                 // OpenType
+    { 'P', 'K', 0x03, 0x04 },                      // ZIP, JAR, Office
+    { 0x1F, (byte) 0x8B },                                        // GZIP
+    ContentSniffer.ascii("BZh"),
+    { (byte) 0xFD, '7', 'z', 'X', 'Z', 0x00 },
+    { '7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C },
+    ContentSniffer.ascii("Rar!"),
+    { 0x7F, 'E', 'L', 'F' },
+    { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE },      // Java class
+    { (byte) 0xD0, (byte) 0xCF, 0x11, (byte) 0xE0 }            // Office (old)
+  };
+
+  /**
+   * Position of the ISO base media file type box (MP4, MOV, ...).
+   */
+  private static final int FTYP_OFFSET = 4;
+
+  private static final byte[] FTYP = ContentSniffer.ascii("ftyp");
+
+  private static final byte[] UTF8_BYTE_ORDER_MARK =
+    { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+  /**
+   * The reasons for rejecting a body.
+   */
+  public static enum Reason {
+    /** The body starts with the magic number of a binary format. */
+    MAGIC_NUMBER,
+    /** The body contains too many control bytes. */
+    CONTROL_BYTES,
+    /** The body contains no HTML markup. */
+    NO_MARKUP
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private double maxControlByteRatio;
+
+  private boolean requireMarkup;
+
+  private boolean sniffMissingContentType;
+
+  private ObjLongConsumer<Reason> rejectionListener;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new sniffer that uses the
+   * {@link #DEFAULT_MAX_CONTROL_BYTE_RATIO}, does not require markup, and
+   * sniffs responses without Content-Type.
+   */
+  public ContentSniffer() {
+    this.setMaxControlByteRatio(DEFAULT_MAX_CONTROL_BYTE_RATIO);
+    this.setRequireMarkup(false);
+    this.setSniffMissingContentType(true);
+    this.setRejectionListener(null);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the maximum ratio of control bytes in the inspected part of a body.
+   */
+  public double getMaxControlByteRatio() {
+    return this.maxControlByteRatio;
+  }
+
+  /**
+   * Checks whether bodies without HTML markup are rejected.
+   */
+  public boolean requiresMarkup() {
+    return this.requireMarkup;
+  }
+
+  /**
+   * Checks whether responses without Content-Type header are sniffed and, if
+   * they pass, treated as HTML.
+   */
+  public boolean sniffsMissingContentType() {
+    return this.sniffMissingContentType;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the maximum ratio of control bytes (other than whitespace and escape)
+   * in the inspected part of a body.
+   * @param maxControlByteRatio The ratio between 0 and 1, where 1 disables the
+   * check
+   */
+  public void setMaxControlByteRatio(final double maxControlByteRatio) {
+    if (maxControlByteRatio < 0 || maxControlByteRatio > 1) {
+      throw new IllegalArgumentException(
+          "Ratio not in [0,1]: " + maxControlByteRatio);
+    }
+    this.maxControlByteRatio = maxControlByteRatio;
+  }
+
+  /**
+   * Sets whether bodies without HTML markup are rejected. Responses without
+   * Content-Type header always need markup to be treated as HTML (see
+   * {@link #setSniffMissingContentType(boolean)}).
+   */
+  public void setRequireMarkup(final boolean requireMarkup) {
+    this.requireMarkup = requireMarkup;
+  }
+
+  /**
+   * Sets whether responses without Content-Type header are sniffed and, if
+   * they pass including the markup check, treated as HTML.
+   */
+  public void setSniffMissingContentType(
+      final boolean sniffMissingContentType) {
+    this.sniffMissingContentType = sniffMissingContentType;
+  }
+
+  /**
+   * Sets the listener that is informed of each body rejected by
+   * {@link #test(ByteBuffer)}, together with the length of the body.
+   * @param rejectionListener The listener, or <tt>null</tt> for none
+   */
+  public void setRejectionListener(
+      final ObjLongConsumer<Reason> rejectionListener) {
+    this.rejectionListener = rejectionListener;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether given body looks like HTML, and informs the rejection
+   * listener if not.
+   * @param body The body, which is not modified
+   * @return Whether the body passed
+   */
+  public boolean test(final ByteBuffer body) {
+    return this.test(body, this.requireMarkup);
+  }
+
+  /**
+   * Checks whether given body looks like HTML, and informs the rejection
+   * listener if not.
+   * @param body The body, which is not modified
+   * @param requireMarkup Whether to reject the body if it contains no markup,
+   * regardless of {@link #requiresMarkup()}
+   * @return Whether the body passed
+   */
+  public boolean test(final ByteBuffer body, final boolean requireMarkup) {
+    final Reason reason = this.sniff(body, requireMarkup);
+    if (reason == null) { return true; }
+    if (this.rejectionListener != null) {
+      this.rejectionListener.accept(reason, body.remaining());
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether given body looks like HTML.
+   * @param body The body, which is not modified
+   * @return The reason for rejecting the body, or <tt>null</tt> if it passed
+   */
+  public Reason sniff(final ByteBuffer body) {
+    return this.sniff(body, this.requireMarkup);
+  }
+
+  /**
+   * Checks whether given body looks like HTML.
+   * @param body The body, which is not modified
+   * @param requireMarkup Whether to reject the body if it contains no markup,
+   * regardless of {@link #requiresMarkup()}
+   * @return The reason for rejecting the body, or <tt>null</tt> if it passed
+   */
+  public Reason sniff(final ByteBuffer body, final boolean requireMarkup) {
+    final byte[] prefix = ContentSniffer.getPrefix(body, 0);
+
+    if (ContentSniffer.hasMagicNumber(prefix)) { return Reason.MAGIC_NUMBER; }
+
+    final boolean utf16 = ContentSniffer.hasUtf16ByteOrderMark(prefix);
+    if (!utf16 && this.maxControlByteRatio < 1
+        && ContentSniffer.countControlBytes(prefix)
+          > this.maxControlByteRatio * prefix.length) {
+      return Reason.CONTROL_BYTES;
+    }
+
+    if (requireMarkup) {
+      final int contentStart = ContentSniffer.skipLeadingWhitespace(
+          body, ContentSniffer.getByteOrderMarkLength(prefix), utf16);
+      if (!ContentSniffer.hasMarkup(
+          ContentSniffer.getPrefix(body, contentStart), utf16)) {
+        return Reason.NO_MARKUP;
+      }
+    }
+    return null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets up to {@value #SNIFFING_LENGTH} bytes of the body, starting at given
+   * offset from its position.
+   */
+  private static byte[] getPrefix(final ByteBuffer body, final int offset) {
+    final int length =
+        Math.max(0, Math.min(body.remaining() - offset, SNIFFING_LENGTH));
+    final byte[] prefix = new byte[length];
+    final ByteBuffer duplicate = body.duplicate();
+    duplicate.position(duplicate.position() + offset);
+    duplicate.get(prefix);
+    return prefix;
+  }
+
+  private static boolean hasMagicNumber(final byte[] prefix) {
+    for (final byte[] magicNumber : MAGIC_NUMBERS) {
+      if (ContentSniffer.startsWith(prefix, 0, magicNumber)) { return true; }
+    }
+    return ContentSniffer.startsWith(prefix, FTYP_OFFSET, FTYP);
+  }
+
+  private static boolean hasUtf16ByteOrderMark(final byte[] prefix) {
+    return prefix.length >= 2
+        && ((prefix[0] == (byte) 0xFE && prefix[1] == (byte) 0xFF)
+            || (prefix[0] == (byte) 0xFF && prefix[1] == (byte) 0xFE));
+  }
+
+  private static int getByteOrderMarkLength(final byte[] prefix) {
+    if (ContentSniffer.hasUtf16ByteOrderMark(prefix)) { return 2; }
+    if (ContentSniffer.startsWith(prefix, 0, UTF8_BYTE_ORDER_MARK)) {
+      return UTF8_BYTE_ORDER_MARK.length;
+    }
+    return 0;
+  }
+
+  /**
+   * Gets the offset from the position of the body of the first byte at or
+   * after given offset that is no whitespace (and no zero byte for UTF-16).
+   */
+  private static int skipLeadingWhitespace(
+      final ByteBuffer body, final int offset, final boolean utf16) {
+    final int start = body.position();
+    int index = start + offset;
+    while (index < body.limit()) {
+      final byte b = body.get(index);
+      if (b != ' ' && b != '\t' && b != '\n' && b != '\r' && b != '\f'
+          && !(utf16 && b == 0)) {
+        break;
+      }
+      ++index;
+    }
+    return index - start;
+  }
+
+  private static int countControlBytes(final byte[] prefix) {
+    int numControlBytes = 0;
+    for (final byte b : prefix) {
+      if ((b >= 0 && b < 0x20 && b != '\t' && b != '\n' && b != '\r'
+            && b != '\f' && b != 0x1B) // ESC is used by ISO-2022
+          || b == 0x7F) {
+        ++numControlBytes;
+      }
+    }
+    return numControlBytes;
+  }
+
+  /**
+   * Checks whether the prefix contains a start tag, end tag, comment, or
+   * doctype, that is, <tt>&lt;</tt> followed by a letter, <tt>/</tt> and a
+   * letter, or <tt>!</tt>.
+   */
+  private static boolean hasMarkup(final byte[] prefix, final boolean utf16) {
+    // 1 after '<', 2 after "</", 0 otherwise; zero bytes are ignored for
+    // UTF-16
+    int state = 0;
+    for (final byte b : prefix) {
+      if (utf16 && b == 0) { continue; }
+      if (b == '<') {
+        state = 1;
+      } else if (state == 1 && (ContentSniffer.isAsciiLetter(b) || b == '!')) {
+        return true;
+      } else if (state == 1 && b == '/') {
+        state = 2;
+      } else if (state == 2 && ContentSniffer.isAsciiLetter(b)) {
+        return true;
+      } else {
+        state = 0;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isAsciiLetter(final byte b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+  }
+
+  private static boolean startsWith(
+      final byte[] bytes, final int offset, final byte[] prefix) {
+    if (bytes.length < offset + prefix.length) { return false; }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (bytes[offset + i] != prefix[i]) { return false; }
+    }
+    return true;
+  }
+
+  private static byte[] ascii(final String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+}
@@ -23,8 +23,10 @@ import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 
+import edu.cmu.lemurproject.SplittableWarcFileInputFormat;
+import edu.cmu.lemurproject.WarcDecompressor;
 import edu.cmu.lemurproject.WarcFileInputFormat;
-import edu.cmu.lemurproject.WarcHTMLResponseRecord;
+import edu.cmu.lemurproject.WarcFileRecordReader;
 import edu.cmu.lemurproject.WarcRecord;
 import edu.cmu.lemurproject.WritableWarcRecord;
 
@@ -39,7 +41,10 @@ import edu.cmu.lemurproject.WritableWarcRecord;
  * When an extraction fails, this is just recorded in the counters of the job,
  * but the mappers will continue and ignore this particular WARC record.
  * </p><p>
- * Currently, this only supports reading WARCs. Each mapper will write all
+ * Currently, this only supports reading WARCs. Records that are no HTML
+ * responses are skipped already by the record reader (see
+ * {@link Warcs#createHtmlRecordFilter()}), which also reuses one record object
+ * for all records of a mapper. Each mapper will write all
  * extracted sentences line-by-line to an own gzipped file in the output
  * directory.
  * </p>
@@ -131,8 +136,21 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
 
     job.setOutputKeyClass(Text.class);
     job.setOutputValueClass(Text.class);
-    job.setInputFormatClass(WarcFileInputFormat.class);
+    if (config.hasOption(HtmlSentenceExtractor.FLAG_SPLIT_INPUT)) {
+      job.setInputFormatClass(SplittableWarcFileInputFormat.class);
+    } else {
+      job.setInputFormatClass(WarcFileInputFormat.class);
+    }
     job.setOutputFormatClass(TextOutputFormat.class);
+    Warcs.createHtmlRecordFilter().configure(job.getConfiguration());
+    job.getConfiguration().setBoolean(
+        WarcFileRecordReader.PARAM_REUSE_RECORDS, true);
+    final String decompressor =
+        config.getOptionValue(HtmlSentenceExtractor.FLAG_DECOMPRESSOR);
+    if (decompressor != null) {
+      job.getConfiguration().set(WarcFileRecordReader.PARAM_DECOMPRESSOR,
+          WarcDecompressor.valueOf(decompressor).name());
+    }
 
     TextOutputFormat.setCompressOutput(job, true);
     TextOutputFormat.setOutputCompressorClass(job, GzipCodec.class);
@@ -169,6 +187,7 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
       VALID_ZERO_SENTENCE_FILES,
       EXTRACTION_ERRORS,
       EXTRACTION_TIMEOUT_ERRORS,
+      NON_HTML_RESPONSES,
       OUTPUT_NUM_SENTENCES,
     }
     
@@ -216,6 +235,16 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
       } catch (final ParseException e) {
         throw new RuntimeException(e);
       }
+
+      this.extractor.setCounter((counterName, amount) ->
+          context.getCounter(counterName).increment(amount));
+
+      final ContentSniffer contentSniffer =
+          this.extractor.getContentSniffer();
+      if (contentSniffer != null) {
+        contentSniffer.setRejectionListener((reason, numBytes) ->
+            context.getCounter(reason).increment(1));
+      }
     }
 
     @Override
@@ -225,8 +254,17 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
       final WarcRecord warcRecord = value.getRecord();
       List<String> sentences = null;
       try {
-        final String html = Warcs.getHtml(warcRecord);
-        sentences = this.extractor.extractSentences(html);
+        final HtmlDocument document = Warcs.getHtmlDocument(warcRecord,
+            this.extractor.getContentSniffer(),
+            this.extractor.getCharsetResolver());
+        if (document == null) {
+          context.getCounter(COUNTERS.NON_HTML_RESPONSES).increment(1);
+          context.progress();
+          return;
+        }
+        context.getCounter(document.getCharsetSource()).increment(1);
+        sentences = this.extractor.extractSentences(
+            document.getHtml(), document.getContentLanguage());
       } catch (final Throwable e) {
         final Throwable cause = e.getCause();
         if (cause != null && cause instanceof TimeoutException) {
@@ -241,17 +279,14 @@ public class HadoopHtmlSentenceExtractionTool implements Tool {
         if (sentences.isEmpty()) {
           context.getCounter(COUNTERS.VALID_ZERO_SENTENCE_FILES).increment(1);
         } else {
-          final WarcHTMLResponseRecord htmlWarcRecord =
-              new WarcHTMLResponseRecord(warcRecord);
-
           if (this.writeNames) {
             context.write(EMPTY_TEXT, EMPTY_TEXT);
             context.write(EMPTY_TEXT, EMPTY_TEXT);
             final StringBuilder names = new StringBuilder();
-            final String uri = htmlWarcRecord.getTargetURI();
+            final String uri = Warcs.getTargetUri(warcRecord);
             if (uri != null) { names.append(uri); }
             names.append(' ');
-            final String trecId = htmlWarcRecord.getTargetTrecID();
+            final String trecId = Warcs.getTargetTrecId(warcRecord);
             if (trecId != null) { names.append(trecId); }
             this.writeSentence(names.toString(), context);
           }
@@ -0,0 +1,109 @@
+package de.aitools.aq.web.extractor;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * A decoded HTML document together with the charset it was decoded with and
+ * the language declared for it by the server, if any.
+ *
+ * @version $Date$
+ * @see CharsetResolver
+ *
+ */
+public class HtmlDocument {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final String html;
+
+  private final Charset charset;
+
+  private final CharsetResolver.Source charsetSource;
+
+  private final Locale contentLanguage;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new document without declared language.
+   * @param html The decoded HTML
+   * @param charset The charset the HTML was decoded with
+   * @param charsetSource Where the charset was taken from
+   */
+  public HtmlDocument(final String html, final Charset charset,
+      final CharsetResolver.Source charsetSource) {
+    this(html, charset, charsetSource, null);
+  }
+
+  /**
+   * Creates a new document.
+   * @param html The decoded HTML
+   * @param charset The charset the HTML was decoded with
+   * @param charsetSource Where the charset was taken from
+   * @param contentLanguage The language declared by the server (usually in
+   * the Content-Language header), or <tt>null</tt> for none
+   */
+  public HtmlDocument(final String html, final Charset charset,
+      final CharsetResolver.Source charsetSource,
+      final Locale contentLanguage) {
+    if (html == null) { throw new NullPointerException(); }
+    if (charset == null) { throw new NullPointerException(); }
+    if (charsetSource == null) { throw new NullPointerException(); }
+    this.html = html;
+    this.charset = charset;
+    this.charsetSource = charsetSource;
+    this.contentLanguage = contentLanguage;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the decoded HTML.
+   */
+  public String getHtml() {
+    return this.html;
+  }
+
+  /**
+   * Gets the charset the HTML was decoded with.
+   */
+  public Charset getCharset() {
+    return this.charset;
+  }
+
+  /**
+   * Gets where the charset was taken from.
+   */
+  public CharsetResolver.Source getCharsetSource() {
+    return this.charsetSource;
+  }
+
+  /**
+   * Gets the language declared by the server, or <tt>null</tt> if none was
+   * declared.
+   */
+  public Locale getContentLanguage() {
+    return this.contentLanguage;
+  }
+
+  /**
+   * Creates a copy of this document with given declared language.
+   */
+  public HtmlDocument withContentLanguage(final Locale contentLanguage) {
+    return new HtmlDocument(
+        this.html, this.charset, this.charsetSource, contentLanguage);
+  }
+
+  @Override
+  public String toString() {
+    return this.charset + " (" + this.charsetSource + "): " + this.html;
+  }
+
+}
@@ -1,21 +1,26 @@
 package de.aitools.aq.web.extractor;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
 import java.util.logging.Logger;
 
 import org.apache.commons.cli.AlreadySelectedException;
@@ -27,11 +32,10 @@ import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.UnrecognizedOptionException;
-import org.apache.commons.io.FileUtils;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.ToolRunner;
 
-import edu.cmu.lemurproject.WarcHTMLResponseRecord;
+import edu.cmu.lemurproject.WarcDecompressor;
 import net.htmlparser.jericho.Config;
 import net.htmlparser.jericho.LoggerProvider;
 
@@ -46,6 +50,15 @@ import net.htmlparser.jericho.LoggerProvider;
  * locally and the number of failed extractions is counted when running on
  * Hadoop).
  * </p><p>
+ * Extractions that timed out are stopped when the extractor next calls
+ * {@link #checkTimeout()}, so extractors should call it regularly (e.g., once
+ * per paragraph). In {@link TimeoutMode#WATCHDOG} mode, this is the only way
+ * an extraction can time out.
+ * </p><p>
+ * Extractors can report statistics using {@link #count(Enum, long)}. These
+ * are added to the counters of the job when running on Hadoop and are printed
+ * to standard error at the end when running locally.
+ * </p><p>
  * Currently, it supports reading HTML files and WARC files (both gzipped and
  * not) when running locally and only WARC files (both gzipped and not) when
  * running on Hadoop. Every class that extends this class will automatically
@@ -96,7 +109,26 @@ public abstract class HtmlSentenceExtractor {
    * extractor should not timeout extraction attempts.
    */
   public static final int NO_TIMEOUT = -1;
-  
+
+  /**
+   * How extraction attempts are timed out.
+   * @see HtmlSentenceExtractor#setTimeoutMode(TimeoutMode)
+   */
+  public static enum TimeoutMode {
+    /**
+     * Each extraction runs on a thread of a shared pool, and the calling
+     * thread waits for it at most the timeout. On timeout, the extraction is
+     * abandoned and stops at its next
+     * {@link HtmlSentenceExtractor#checkTimeout()}.
+     */
+    THREAD,
+    /**
+     * Each extraction runs on the calling thread, and a single shared watchdog
+     * thread marks it as timed out after the timeout. The extraction then
+     * stops at its next {@link HtmlSentenceExtractor#checkTimeout()}.
+     */
+    WATCHDOG
+  }
 
   
   private static final String MODE_LOCAL = "local";
@@ -121,35 +153,91 @@ public abstract class HtmlSentenceExtractor {
   
   public static String FLAG_NUM_THREADS = "threads";
 
+  public static String SHORT_FLAG_NUM_READER_THREADS = "tr";
+
+  public static String FLAG_NUM_READER_THREADS = "reader-threads";
+
+  public static String SHORT_FLAG_ORDERED_OUTPUT = "oo";
+
+  public static String FLAG_ORDERED_OUTPUT = "ordered-output";
+
+  public static String SHORT_FLAG_VIRTUAL_THREADS = "vt";
+
+  public static String FLAG_VIRTUAL_THREADS = "virtual-threads";
+
   public static String SHORT_FLAG_TIMEOUT = "s";
 
   public static String FLAG_TIMEOUT = "timeout-in-seconds";
 
+  public static String SHORT_FLAG_TIMEOUT_MODE = "sm";
+
+  public static String FLAG_TIMEOUT_MODE = "timeout-mode";
+
   public static String SHORT_FLAG_WRITE_NAMES = "n";
 
   public static String FLAG_WRITE_NAMES = "write-names";
 
+  public static String SHORT_FLAG_SPLIT_INPUT = "si";
+
+  public static String FLAG_SPLIT_INPUT = "split-input";
+
+  public static String SHORT_FLAG_DECOMPRESSOR = "d";
+
+  public static String FLAG_DECOMPRESSOR = "decompressor";
+
+  public static String SHORT_FLAG_CHARSET_DETECTION = "cd";
+
+  public static String FLAG_CHARSET_DETECTION = "charset-detection";
+
+  public static String SHORT_FLAG_NO_CONTENT_SNIFFING = "ns";
+
+  public static String FLAG_NO_CONTENT_SNIFFING = "no-content-sniffing";
+
+  public static String SHORT_FLAG_REQUIRE_MARKUP = "rm";
+
+  public static String FLAG_REQUIRE_MARKUP = "require-markup";
+
   //////////////////////////////////////////////////////////////////////////////
   //                               STATIC VARIABLES                           //
   //////////////////////////////////////////////////////////////////////////////
   
   private static ExecutorService EXECUTOR = null;
 
+  private static ScheduledThreadPoolExecutor WATCHDOG = null;
+
+  private static final ThreadLocal<Deadline> DEADLINE = new ThreadLocal<>();
+
+  private static final DeadlineExpiredException DEADLINE_EXPIRED =
+      new DeadlineExpiredException();
+
   //////////////////////////////////////////////////////////////////////////////
   //                                   MEMBERS                                //
   //////////////////////////////////////////////////////////////////////////////
   
   private int timeoutInSeconds;
 
+  private TimeoutMode timeoutMode;
+
+  private final CharsetResolver charsetResolver;
+
+  private ContentSniffer contentSniffer;
+
+  private ObjLongConsumer<Enum<?>> counter;
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONSTRUCTORS                              //
   //////////////////////////////////////////////////////////////////////////////
   
   /**
-   * Create a new extractor that does not timeout extraction attempts.
+   * Create a new extractor that does not timeout extraction attempts and
+   * sniffs the content of HTML responses.
    */
   public HtmlSentenceExtractor() {
     this.setNoTimeout();
+    this.setTimeoutMode(TimeoutMode.THREAD);
+    this.charsetResolver = new CharsetResolver();
+    this.setContentSniffer(new ContentSniffer());
+    this.setCounter(null);
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -177,6 +265,33 @@ public abstract class HtmlSentenceExtractor {
     return this.timeoutInSeconds;
   }
 
+  /**
+   * Gets how this extractor times out extraction attempts.
+   * @see #setTimeoutMode(TimeoutMode)
+   */
+  public TimeoutMode getTimeoutMode() {
+    return this.timeoutMode;
+  }
+
+  /**
+   * Gets the resolver used to determine the charset of HTML responses before
+   * they are passed to {@link #extractSentences(String)}.
+   * <p>
+   * The resolver is owned by this extractor and can be configured directly.
+   * </p>
+   */
+  public CharsetResolver getCharsetResolver() {
+    return this.charsetResolver;
+  }
+
+  /**
+   * Gets the sniffer used to skip responses that do not look like HTML before
+   * they are decoded, or <tt>null</tt> if responses are not sniffed.
+   */
+  public ContentSniffer getContentSniffer() {
+    return this.contentSniffer;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONFIGURATION                             //
   //////////////////////////////////////////////////////////////////////////////
@@ -195,6 +310,40 @@ public abstract class HtmlSentenceExtractor {
     if (timeout != null) {
       this.setTimeoutInSeconds(Integer.parseInt(timeout));
     }
+    final String timeoutMode = config.getOptionValue(FLAG_TIMEOUT_MODE);
+    if (timeoutMode != null) {
+      this.setTimeoutMode(
+          TimeoutMode.valueOf(timeoutMode.toUpperCase(Locale.ROOT)));
+    }
+    this.charsetResolver.setUseDetector(
+        config.hasOption(FLAG_CHARSET_DETECTION));
+    if (config.hasOption(FLAG_NO_CONTENT_SNIFFING)) {
+      this.setContentSniffer(null);
+    } else if (config.hasOption(FLAG_REQUIRE_MARKUP)
+        && this.contentSniffer != null) {
+      this.contentSniffer.setRequireMarkup(true);
+    }
+  }
+  
+  /**
+   * Sets the sniffer used to skip responses that do not look like HTML before
+   * they are decoded.
+   * @param contentSniffer The sniffer, or <tt>null</tt> to not sniff responses
+   */
+  public void setContentSniffer(final ContentSniffer contentSniffer) {
+    this.contentSniffer = contentSniffer;
+  }
+  
+  /**
+   * Sets the sink for the statistics reported by {@link #count(Enum, long)}.
+   * <p>
+   * The sink has to be thread-safe if this extractor is used by several
+   * threads at once.
+   * </p>
+   * @param counter The sink, or <tt>null</tt> to discard the statistics
+   */
+  public void setCounter(final ObjLongConsumer<Enum<?>> counter) {
+    this.counter = counter;
   }
   
   /**
@@ -226,21 +375,60 @@ public abstract class HtmlSentenceExtractor {
     this.timeoutInSeconds = timeoutInSeconds;
   }
 
+  /**
+   * Sets how this extractor times out extraction attempts if it has a timeout.
+   * <p>
+   * In {@link TimeoutMode#THREAD} mode (the default), each extraction costs a
+   * hand-off to another thread, but it times out even if the extractor does
+   * not call {@link #checkTimeout()}. In {@link TimeoutMode#WATCHDOG} mode,
+   * extractions run on the calling thread and only time out at a call of
+   * {@link #checkTimeout()}.
+   * </p>
+   * @see #setTimeoutInSeconds(int)
+   */
+  public void setTimeoutMode(final TimeoutMode timeoutMode) {
+    if (timeoutMode == null) { throw new NullPointerException(); }
+    this.timeoutMode = timeoutMode;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   //                                 EXECUTOR                                 //
   //////////////////////////////////////////////////////////////////////////////
 
   /**
-   * Start the executor service, which is needed for extracting sentences with
-   * timeout.
+   * Start the executor service and the watchdog, which are needed for
+   * extracting sentences with timeout.
    * <p>This method is automatically called when you set a timeout (using
    * {@link #setTimeoutInSeconds(int)}).</p>
    */
   public static void startExecutorService() {
+    HtmlSentenceExtractor.startExecutorService(Executors.defaultThreadFactory());
+  }
+
+  /**
+   * Start the executor service like {@link #startExecutorService()}, but
+   * create its threads using given factory (e.g., for virtual threads).
+   * <p>
+   * If the executor service is already running, it is not restarted, so call
+   * {@link #shutdownExecutorService()} before if needed.
+   * </p>
+   */
+  public static void startExecutorService(final ThreadFactory threadFactory) {
+    if (threadFactory == null) { throw new NullPointerException(); }
     synchronized (LOGGER) {
       if (null == EXECUTOR || EXECUTOR.isShutdown()) {
         LOGGER.fine("Starting executor service");
-        EXECUTOR = Executors.newCachedThreadPool();
+        EXECUTOR = Executors.newCachedThreadPool(threadFactory);
+      }
+      if (null == WATCHDOG || WATCHDOG.isShutdown()) {
+        LOGGER.fine("Starting watchdog");
+        WATCHDOG = new ScheduledThreadPoolExecutor(1, runnable -> {
+          final Thread thread =
+              new Thread(runnable, "HtmlSentenceExtractor-watchdog");
+          thread.setDaemon(true);
+          return thread;
+        });
+        WATCHDOG.setRemoveOnCancelPolicy(true);
       }
     }
   }
@@ -254,6 +442,9 @@ public abstract class HtmlSentenceExtractor {
    */
   public static boolean shutdownExecutorService() {
     synchronized (LOGGER) {
+      if (null != WATCHDOG) {
+        WATCHDOG.shutdownNow();
+      }
       if (null != EXECUTOR && !EXECUTOR.isShutdown()) {
         EXECUTOR.shutdown();
         try {
@@ -291,6 +482,50 @@ public abstract class HtmlSentenceExtractor {
    */
   protected abstract List<String> extract(final String htmlInput)
   throws IllegalArgumentException;
+
+  /**
+   * Extracts sentences from given HTML, for which the server declared given
+   * language.
+   * <p>
+   * This method does not implement the timeout functionality, but will be
+   * called by {@link #extractSentences(String, Locale)}, which does. The
+   * default implementation ignores the language hint and calls
+   * {@link #extract(String)}.
+   * </p>
+   * @param htmlInput The HTML input to extract sentences from
+   * @param languageHint The language declared for the HTML (e.g., by the
+   * Content-Language header), or <tt>null</tt> if none was declared
+   * @return The extracted sentences
+   * @throws IllegalArgumentException If the HTML can not be used for some
+   * reason
+   */
+  protected List<String> extract(
+      final String htmlInput, final Locale languageHint)
+  throws IllegalArgumentException {
+    return this.extract(htmlInput);
+  }
+
+  /**
+   * Stops the extraction by throwing an unchecked exception if it timed out.
+   * <p>
+   * Extractors should call this method regularly (e.g., once per paragraph),
+   * and must not catch the exception. The method only reads a flag, so it can
+   * be called often. It does nothing if the extraction was not started using
+   * {@link #extractSentences(String, Locale)} with a timeout.
+   * </p>
+   */
+  protected final void checkTimeout() {
+    final Deadline deadline = DEADLINE.get();
+    if (deadline != null && deadline.expired) { throw DEADLINE_EXPIRED; }
+  }
+
+  /**
+   * Adds given amount to a counter of this extractor.
+   * @see #setCounter(ObjLongConsumer)
+   */
+  protected void count(final Enum<?> counterName, final long amount) {
+    if (this.counter != null) { this.counter.accept(counterName, amount); }
+  }
   
   /**
    * Extracts sentences from given HTML.
@@ -302,27 +537,82 @@ public abstract class HtmlSentenceExtractor {
    * {@link TimeoutException} as its cause
    */
   public List<String> extractSentences(final String htmlInput)
+  throws NullPointerException, ExecutionException {
+    return this.extractSentences(htmlInput, null);
+  }
+  
+  /**
+   * Extracts sentences from given HTML, for which the server declared given
+   * language.
+   * @param htmlInput The HTML to extract sentences from
+   * @param languageHint The language declared for the HTML (e.g., by the
+   * Content-Language header), or <tt>null</tt> if none was declared
+   * @return The extracted sentences
+   * @throws NullPointerException If the HTML is <tt>null</tt>
+   * @throws ExecutionException If the extraction failed. When it fails due to a
+   * timeout (see {@link #setTimeoutInSeconds(int)}), the exception will have a
+   * {@link TimeoutException} as its cause
+   * @see HtmlDocument#getContentLanguage()
+   */
+  public List<String> extractSentences(
+      final String htmlInput, final Locale languageHint)
   throws NullPointerException, ExecutionException {
     if (htmlInput == null) { throw new NullPointerException(); }
     final HtmlSentenceExtractor extractor = this;
     
     if (this.timeoutInSeconds == NO_TIMEOUT) {
-      return extractor.extract(htmlInput);
+      return extractor.extract(htmlInput, languageHint);
+    } else if (this.timeoutMode == TimeoutMode.WATCHDOG) {
+      final Deadline deadline = new Deadline();
+      final Future<?> alarm =
+          WATCHDOG.schedule(deadline, this.timeoutInSeconds, TimeUnit.SECONDS);
+      try {
+        return extractor.extract(htmlInput, languageHint, deadline);
+      } catch (final DeadlineExpiredException e) {
+        throw new ExecutionException(new TimeoutException(
+            "Timed out after " + this.timeoutInSeconds + " seconds"));
+      } catch (final Throwable e) {
+        throw new ExecutionException(e);
+      } finally {
+        alarm.cancel(false);
+      }
     } else {
+      final Deadline deadline = new Deadline();
       final Callable<List<String>> task = new Callable<List<String>>() {
          public List<String> call() throws IOException {
-            return extractor.extract(htmlInput);
+            return extractor.extract(htmlInput, languageHint, deadline);
          }
       };
       final Future<List<String>> future = EXECUTOR.submit(task);
       try {
         return future.get(this.timeoutInSeconds, TimeUnit.SECONDS);
       } catch (final Throwable e) {
+        // stops the extraction at its next check, as it may ignore interrupts
+        deadline.run();
         future.cancel(true);
         throw new ExecutionException(e);
       }
     }
   }
+
+  /**
+   * Extracts sentences on the current thread, with {@link #checkTimeout()}
+   * checking given deadline.
+   */
+  private List<String> extract(final String htmlInput,
+      final Locale languageHint, final Deadline deadline) {
+    final Deadline enclosingDeadline = DEADLINE.get();
+    DEADLINE.set(deadline);
+    try {
+      return this.extract(htmlInput, languageHint);
+    } finally {
+      if (enclosingDeadline == null) {
+        DEADLINE.remove();
+      } else {
+        DEADLINE.set(enclosingDeadline);
+      }
+    }
+  }
   
   //////////////////////////////////////////////////////////////////////////////
   //                                   PROGRAM                                //
@@ -359,7 +649,7 @@ public abstract class HtmlSentenceExtractor {
     
     final Option outputOption = new Option(SHORT_FLAG_OUTPUT, true,
         "Sets the directory to which extracted sentences are written (one file "
-        + "named 'part-m-<id>' per local thread or hadoop mapper)");
+        + "named 'part-m-<id>' per local extraction thread or hadoop mapper)");
     outputOption.setLongOpt(FLAG_OUTPUT);
     outputOption.setArgName("dir");
     outputOption.setRequired(true);
@@ -376,6 +666,18 @@ public abstract class HtmlSentenceExtractor {
     timeoutOption.setArgName("sec");
     options.addOption(timeoutOption);
 
+    final Option timeoutModeOption = new Option(SHORT_FLAG_TIMEOUT_MODE, true,
+        "Sets how extraction attempts are timed out: "
+        + TimeoutMode.THREAD.name().toLowerCase(Locale.ROOT) + " (extract on "
+        + "a separate thread that is abandoned on timeout) or "
+        + TimeoutMode.WATCHDOG.name().toLowerCase(Locale.ROOT) + " (extract "
+        + "on the reading thread and stop at the next paragraph or sentence "
+        + "after the timeout) (Current: "
+        + this.timeoutMode.name().toLowerCase(Locale.ROOT) + ")");
+    timeoutModeOption.setLongOpt(FLAG_TIMEOUT_MODE);
+    timeoutModeOption.setArgName("mode");
+    options.addOption(timeoutModeOption);
+
     final Option numThreadsOption = new Option(SHORT_FLAG_NUM_THREADS, true,
         "Sets the number of web pages to extract in parallel (only used for "
         + MODE_LOCAL + " mode; Current: 1)");
@@ -383,13 +685,85 @@ public abstract class HtmlSentenceExtractor {
     numThreadsOption.setArgName("num");
     options.addOption(numThreadsOption);
 
+    final Option numReaderThreadsOption = new Option(
+        SHORT_FLAG_NUM_READER_THREADS, true,
+        "Sets the number of input files to read in parallel, which pass their "
+        + "pages to the extraction threads (only used for " + MODE_LOCAL
+        + " mode without --" + FLAG_ORDERED_OUTPUT + " and --" + FLAG_WRITE_NAMES
+        + "; Current: 1)");
+    numReaderThreadsOption.setLongOpt(FLAG_NUM_READER_THREADS);
+    numReaderThreadsOption.setArgName("num");
+    options.addOption(numReaderThreadsOption);
+
+    final Option orderedOutputOption = new Option(SHORT_FLAG_ORDERED_OUTPUT,
+        "Configures this extractor to write the sentences of all pages in "
+        + "input order to a single file 'part-m-00000' instead of one file per "
+        + "thread (only used for " + MODE_LOCAL + " mode; implied by --"
+        + FLAG_WRITE_NAMES + ")");
+    orderedOutputOption.setLongOpt(FLAG_ORDERED_OUTPUT);
+    options.addOption(orderedOutputOption);
+
+    final Option virtualThreadsOption = new Option(SHORT_FLAG_VIRTUAL_THREADS,
+        "Configures this extractor to use one virtual thread per input file "
+        + "and page (requires Java 21 or later, otherwise ignored). Then, --"
+        + FLAG_NUM_THREADS + " sets the number of pages that are extracted at "
+        + "once and --" + FLAG_NUM_READER_THREADS + " the number of files that "
+        + "are read at once, both by default the number of processors. As each "
+        + "page gets a new thread, the per-thread caches of sentence and word "
+        + "segmenters are not reused across pages (only used for " + MODE_LOCAL
+        + " mode)");
+    virtualThreadsOption.setLongOpt(FLAG_VIRTUAL_THREADS);
+    options.addOption(virtualThreadsOption);
+
     final Option writeFileNamesOption = new Option(SHORT_FLAG_WRITE_NAMES,
         "Configures this extractor to separate the sentences from different "
         + "pages by two empty lines and adds a line containing the file name "
         + "(local mode) or URI (and TREC-ID, if it exists; hadoop mode) before "
-        + "the first extracted sentence");
+        + "the first extracted sentence. In " + MODE_LOCAL + " mode, this "
+        + "implies --" + FLAG_ORDERED_OUTPUT);
     writeFileNamesOption.setLongOpt(FLAG_WRITE_NAMES);
     options.addOption(writeFileNamesOption);
+
+    final Option splitInputOption = new Option(SHORT_FLAG_SPLIT_INPUT,
+        "Configures this extractor to split .warc.gz files into several parts "
+        + "that are read by different mappers (only used for " + MODE_HADOOP
+        + " mode). Requires that each WARC record is compressed as a separate "
+        + "gzip member, as is the case for CommonCrawl WARCs");
+    splitInputOption.setLongOpt(FLAG_SPLIT_INPUT);
+    options.addOption(splitInputOption);
+
+    final Option decompressorOption = new Option(SHORT_FLAG_DECOMPRESSOR, true,
+        "Sets how .warc.gz files are decompressed: "
+        + Arrays.toString(WarcDecompressor.values()) + " (default: "
+        + WarcDecompressor.JDK + " for " + MODE_LOCAL + " mode and "
+        + WarcDecompressor.HADOOP_NATIVE + " for " + MODE_HADOOP + " mode)");
+    decompressorOption.setLongOpt(FLAG_DECOMPRESSOR);
+    decompressorOption.setArgName("name");
+    options.addOption(decompressorOption);
+
+    final Option charsetDetectionOption = new Option(
+        SHORT_FLAG_CHARSET_DETECTION,
+        "Configures this extractor to detect the charset of pages for which "
+        + "neither a byte order mark, the HTTP header, nor a meta tag declares "
+        + "it, instead of assuming " + CharsetResolver.DEFAULT_CHARSET);
+    charsetDetectionOption.setLongOpt(FLAG_CHARSET_DETECTION);
+    options.addOption(charsetDetectionOption);
+
+    final Option noContentSniffingOption = new Option(
+        SHORT_FLAG_NO_CONTENT_SNIFFING,
+        "Configures this extractor to not skip responses labeled as HTML whose "
+        + "first bytes look like a binary format, and to skip responses "
+        + "without Content-Type header");
+    noContentSniffingOption.setLongOpt(FLAG_NO_CONTENT_SNIFFING);
+    options.addOption(noContentSniffingOption);
+
+    final Option requireMarkupOption = new Option(SHORT_FLAG_REQUIRE_MARKUP,
+        "Configures this extractor to also skip responses labeled as HTML "
+        + "that contain no tag within their first "
+        + ContentSniffer.SNIFFING_LENGTH + " bytes after leading whitespace "
+        + "(ignored with --" + FLAG_NO_CONTENT_SNIFFING + ")");
+    requireMarkupOption.setLongOpt(FLAG_REQUIRE_MARKUP);
+    options.addOption(requireMarkupOption);
     
     return options;
   }
@@ -485,99 +859,55 @@ public abstract class HtmlSentenceExtractor {
   IllegalAccessException, IOException {
     extractor.configure(config);
 
-    final int numThreads =
-        Integer.parseInt(config.getOptionValue(FLAG_NUM_THREADS, "1"));
+    ThreadFactory virtualThreadFactory = null;
+    if (config.hasOption(FLAG_VIRTUAL_THREADS)) {
+      virtualThreadFactory = LocalExtractionEngine.getVirtualThreadFactory();
+      if (virtualThreadFactory == null) {
+        System.err.println("Virtual threads are not supported by this Java "
+            + "runtime, using platform threads instead");
+      } else if (extractor.hasTimeout()) {
+        HtmlSentenceExtractor.shutdownExecutorService();
+        HtmlSentenceExtractor.startExecutorService(virtualThreadFactory);
+      }
+    }
+    final String defaultNumThreads = virtualThreadFactory == null
+        ? "1" : String.valueOf(Runtime.getRuntime().availableProcessors());
+    final int numThreads = Integer.parseInt(
+        config.getOptionValue(FLAG_NUM_THREADS, defaultNumThreads));
+    final int numReaderThreads = Integer.parseInt(
+        config.getOptionValue(FLAG_NUM_READER_THREADS, defaultNumThreads));
     final boolean writeNames =
         config.hasOption(HtmlSentenceExtractor.FLAG_WRITE_NAMES);
+    final WarcDecompressor decompressor = WarcDecompressor.valueOf(
+        config.getOptionValue(FLAG_DECOMPRESSOR, WarcDecompressor.JDK.name()));
     final Queue<String> inputFileNames = new ConcurrentLinkedQueue<>();
     for (final String inputFileName : config.getOptionValues(FLAG_INPUT)) {
       HtmlSentenceExtractor.addInputRecursive(inputFileNames, inputFileName);
     }
     final File outputDirectory = new File(config.getOptionValue(FLAG_OUTPUT));
     outputDirectory.mkdirs();
-
-    final Thread[] threads = new Thread[numThreads];
-    for (int t = 0; t < numThreads; ++t) {
-      final int tId = t;
-      threads[t] = new Thread() {
-        private final int threadId = tId;
-        @Override
-        public void run() {
-          final File outputFile =  new File(
-              outputDirectory, String.format("part-m-%05d", this.threadId));
-          try (final BufferedWriter writer =
-              new BufferedWriter(new FileWriter(outputFile))) {
-            for (String inputFileName = inputFileNames.poll();
-                inputFileName != null;
-                inputFileName = inputFileNames.poll()) {
-              HtmlSentenceExtractor.extractLocalFile(
-                  inputFileName, extractor, writer, writeNames);
-            }
-          } catch (final IOException e) {
-            throw new UncheckedIOException(e);
-          }
-        }
-      };
-      threads[t].start();
-    }
-    
-    for (final Thread thread : threads) {
-      thread.join();
-    }
-  }
-  
-  private static void extractLocalFile(
-      final String inputFileName, final HtmlSentenceExtractor extractor,
-      final BufferedWriter writer, final boolean writeNames)
-  throws NullPointerException, IOException {
-    final File inputFile = new File(inputFileName);
-    System.err.println("Extracting " + inputFileName);
-    try {
-      if (inputFileName.endsWith(".html") || inputFileName.endsWith(".htm")) {
-        HtmlSentenceExtractor.extractLocalHtml(
-            FileUtils.readFileToString(inputFile), inputFileName, null, null,
-            extractor, writer, writeNames);
-      } else {
-        Warcs.getRecords(inputFile).forEachOrdered(record -> {
-          try {
-            final String html = Warcs.getHtml(record);
-            final WarcHTMLResponseRecord htmlRecord =
-                new WarcHTMLResponseRecord(record);
-            HtmlSentenceExtractor.extractLocalHtml(
-                html, inputFileName,
-                htmlRecord.getTargetURI(), htmlRecord.getTargetTrecID(),
-                extractor, writer, writeNames);
-          } catch (final Exception e) {}
-        });
-      }
-    } catch (final ExecutionException e) {
-      // Continue with next
-      System.err.println("EXTRACTION ERROR on parsing " + inputFile
-          + ": " + e.getMessage());
-    }
-  }
-  
-  private static void extractLocalHtml(
-      final String html, final String inputFileName,
-      final String uri, final String trecId,
-      final HtmlSentenceExtractor extractor, 
-      final BufferedWriter writer, final boolean writeNames)
-  throws NullPointerException, ExecutionException, IOException {
-    final List<String> sentences = extractor.extractSentences(html);
-    if (!sentences.isEmpty()) {
-      if (writeNames) {
-        writer.append("\n\n");
-        if (uri != null) { writer.append(uri); }
-        writer.append(' ');
-        if (trecId != null) { writer.append(trecId); }
-        writer.append(' ');
-        if (inputFileName != null) { writer.append(inputFileName); }
-        writer.append("\n");
-      }
-    }
-    for (final String sentence: sentences) {
-      writer.append(sentence).append('\n');
-    }
+    final Map<Enum<?>, LongAdder> counters = new ConcurrentHashMap<>();
+    extractor.setCounter((counterName, amount) ->
+        counters.computeIfAbsent(counterName, name -> new LongAdder())
+          .add(amount));
+
+    final LocalExtractionEngine engine = new LocalExtractionEngine(
+        extractor, outputDirectory, writeNames, decompressor);
+    engine.setNumWorkers(numThreads);
+    engine.setNumReaders(numReaderThreads);
+    // the names are only useful if the pages are in input order
+    engine.setOrderedOutput(
+        config.hasOption(FLAG_ORDERED_OUTPUT) || writeNames);
+    engine.setPageThreadFactory(virtualThreadFactory);
+    engine.run(inputFileNames);
+
+    counters.entrySet().stream()
+      .sorted(Comparator.comparing(entry ->
+          entry.getKey().getDeclaringClass().getName()
+          + '.' + entry.getKey().name()))
+      .forEachOrdered(entry -> System.err.println(
+          entry.getKey().getDeclaringClass().getSimpleName() + "."
+          + entry.getKey().name() + ": " + entry.getValue().sum()));
   }
   
   private static void printHelp(
@@ -608,4 +938,38 @@ public abstract class HtmlSentenceExtractor {
     System.exit(exitCode);
   }
 
+  //////////////////////////////////////////////////////////////////////////////
+  //                                 DEADLINES                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Flag that is set by the watchdog (or the waiting thread) when an
+   * extraction timed out.
+   */
+  private static final class Deadline implements Runnable {
+
+    private volatile boolean expired = false;
+
+    @Override
+    public void run() {
+      this.expired = true;
+    }
+
+  }
+
+  /**
+   * Thrown by {@link HtmlSentenceExtractor#checkTimeout()} to stop an
+   * extraction that timed out.
+   */
+  private static final class DeadlineExpiredException
+  extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private DeadlineExpiredException() {
+      super("Extraction timed out", null, false, false);
+    }
+
+  }
+
 }
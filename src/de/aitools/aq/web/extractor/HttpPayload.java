@@ -0,0 +1,586 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.client.entity.DeflateInputStream;
+
+import edu.cmu.lemurproject.WarcRecord;
+
+/**
+ * A lazily parsed view of the HTTP response in a WARC response record.
+ *
+ * <p>
+ * The status line and the headers are parsed from the content bytes of the
+ * record on the first call to a getter. Only the status code and the headers
+ * needed for extracting the body are kept (see the getters). The body is only
+ * decoded when {@link #getBody()} is called, which undoes the chunked transfer
+ * encoding and the gzip or deflate content encoding if needed. If neither is
+ * used, the body is a slice of the record content and not copied.
+ * </p><p>
+ * The parsing follows the one of the HttpComponents library that
+ * {@link Warcs#toResponse(WarcRecord)} uses: the content has to start with the
+ * status line, header lines can be folded, and the body length is determined
+ * like by the
+ * <tt>LaxContentLengthStrategy</tt>. Header values are decoded as ISO-8859-1.
+ * Instances are not thread-safe.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class HttpPayload {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Value of {@link #getContentLength()} if the response has no valid
+   * Content-Length header.
+   */
+  public static final long NO_CONTENT_LENGTH = -1;
+
+  /**
+   * Pattern for the Content-Type of HTML responses, also used by
+   * {@link Warcs}.
+   */
+  static final Pattern HTML_CONTENT_TYPE_PATTERN = Pattern.compile(
+      "text/html.*");
+
+  private static final String RESPONSE_TYPE = "response";
+
+  private static final String HEADER_CONTENT_TYPE = "content-type";
+
+  private static final String HEADER_CONTENT_ENCODING = "content-encoding";
+
+  private static final String HEADER_CONTENT_LANGUAGE = "content-language";
+
+  private static final String HEADER_TRANSFER_ENCODING = "transfer-encoding";
+
+  private static final String HEADER_CONTENT_LENGTH = "content-length";
+
+  private static final String CODING_IDENTITY = "identity";
+
+  private static final String CODING_CHUNKED = "chunked";
+
+  private static final int MIN_DECODE_BUFFER_SIZE = 8 * 1024;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final ByteBuffer message;
+
+  private boolean parsed;
+
+  private int statusCode;
+
+  private String contentType;
+
+  private String contentEncoding;
+
+  private String contentLanguage;
+
+  private String transferEncoding;
+
+  private long contentLength;
+
+  private int bodyOffset;
+
+  private ByteBuffer body;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new view of the HTTP response in the remaining bytes of given
+   * buffer. The buffer must not be modified while the view is used.
+   */
+  public HttpPayload(final ByteBuffer message) {
+    if (message == null) { throw new NullPointerException(); }
+    this.message = message.slice();
+    this.parsed = false;
+    this.body = null;
+  }
+
+  /**
+   * Creates a view of the HTTP response in given record.
+   * @return The view, or <tt>null</tt> if the record is no response record or
+   * has no content
+   */
+  public static HttpPayload of(final WarcRecord record) {
+    if (record == null) { return null; }
+    if (!RESPONSE_TYPE.equals(record.getHeaderRecordType())) { return null; }
+    final ByteBuffer content = record.getContentBuffer();
+    if (content == null) { return null; }
+    return new HttpPayload(content);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the status code of the response.
+   * @throws IOException If the response could not be parsed
+   */
+  public int getStatusCode() throws IOException {
+    this.parse();
+    return this.statusCode;
+  }
+
+  /**
+   * Gets the value of the last Content-Type header, or <tt>null</tt> if there
+   * is none.
+   * @throws IOException If the response could not be parsed
+   */
+  public String getContentType() throws IOException {
+    this.parse();
+    return this.contentType;
+  }
+
+  /**
+   * Gets the charset parameter of the Content-Type header, or <tt>null</tt> if
+   * there is none.
+   * @throws IOException If the response could not be parsed
+   */
+  public String getContentTypeCharset() throws IOException {
+    final String contentType = this.getContentType();
+    if (contentType == null) { return null; }
+    final String element = HttpPayload.firstElement(contentType);
+    for (final String parameter : HttpPayload.split(element, ';', 1)) {
+      final int equals = parameter.indexOf('=');
+      if (equals < 0) { continue; }
+      final String name = parameter.substring(0, equals).trim();
+      if (name.equalsIgnoreCase("charset")) {
+        final String value =
+            HttpPayload.unquote(parameter.substring(equals + 1).trim());
+        return value.trim().isEmpty() ? null : value;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Gets the value of the last Content-Language header, or <tt>null</tt> if
+   * there is none.
+   * @throws IOException If the response could not be parsed
+   */
+  public String getContentLanguage() throws IOException {
+    this.parse();
+    return this.contentLanguage;
+  }
+
+  /**
+   * Gets the language of the Content-Language header if it names exactly one
+   * language, or <tt>null</tt> otherwise.
+   * @throws IOException If the response could not be parsed
+   */
+  public Locale getContentLanguageLocale() throws IOException {
+    final String contentLanguage = this.getContentLanguage();
+    if (contentLanguage == null) { return null; }
+    final String[] elements = HttpPayload.split(contentLanguage, ',', 0);
+    if (elements.length != 1) { return null; } // intended for several
+    final Locale language = Locale.forLanguageTag(elements[0].trim());
+    return language.getLanguage().isEmpty() ? null : language;
+  }
+
+  /**
+   * Gets the value of the first Content-Encoding header, or <tt>null</tt> if
+   * there is none.
+   * @throws IOException If the response could not be parsed
+   */
+  public String getContentEncoding() throws IOException {
+    this.parse();
+    return this.contentEncoding;
+  }
+
+  /**
+   * Gets the value of the first Transfer-Encoding header, or <tt>null</tt> if
+   * there is none.
+   * @throws IOException If the response could not be parsed
+   */
+  public String getTransferEncoding() throws IOException {
+    this.parse();
+    return this.transferEncoding;
+  }
+
+  /**
+   * Gets the value of the last Content-Length header that is a number, or
+   * {@link #NO_CONTENT_LENGTH} if there is none or it is negative.
+   * @throws IOException If the response could not be parsed
+   */
+  public long getContentLength() throws IOException {
+    this.parse();
+    return this.contentLength;
+  }
+
+  /**
+   * Checks whether the body uses the chunked transfer encoding.
+   * @throws IOException If the response could not be parsed
+   */
+  public boolean isChunked() throws IOException {
+    final String transferEncoding = this.getTransferEncoding();
+    if (transferEncoding == null
+        || transferEncoding.equalsIgnoreCase(CODING_IDENTITY)) {
+      return false;
+    }
+    final String[] codings = HttpPayload.split(transferEncoding, ',', 0);
+    if (codings.length == 0) { return false; }
+    final String last = codings[codings.length - 1];
+    return HttpPayload.split(last, ';', 0)[0].trim()
+        .equalsIgnoreCase(CODING_CHUNKED);
+  }
+
+  /**
+   * Checks whether the Content-Type of the response is HTML.
+   * @return Whether there is a Content-Type header that starts with
+   * <tt>text/html</tt>
+   * @throws IOException If the response could not be parsed
+   */
+  public boolean isHtml() throws IOException {
+    final String contentType = this.getContentType();
+    if (contentType == null) { return false; } // no content type
+    return HTML_CONTENT_TYPE_PATTERN.matcher(contentType).matches();
+  }
+
+  /**
+   * Gets the body as it was transferred, that is all bytes after the header.
+   * @return A read-only buffer of the body
+   * @throws IOException If the response could not be parsed
+   */
+  public ByteBuffer getRawBody() throws IOException {
+    this.parse();
+    final ByteBuffer rawBody = this.message.asReadOnlyBuffer();
+    rawBody.position(this.bodyOffset);
+    return rawBody.slice();
+  }
+
+  /**
+   * Gets the decoded body.
+   * <p>
+   * The body is delimited by the Content-Length header or the chunked transfer
+   * encoding, and is decoded according to the Content-Encoding header.
+   * </p>
+   * @return A read-only buffer of the body
+   * @throws IOException If the response could not be parsed, the body is
+   * shorter than announced, or the body could not be decoded
+   */
+  public ByteBuffer getBody() throws IOException {
+    if (this.body == null) {
+      this.body = this.decodeContent(this.getTransferredBody());
+    }
+    return this.body.asReadOnlyBuffer();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private void parse() throws IOException {
+    if (this.parsed) { return; }
+    this.contentType = null;
+    this.contentEncoding = null;
+    this.contentLanguage = null;
+    this.transferEncoding = null;
+    this.contentLength = NO_CONTENT_LENGTH;
+
+    int position = this.parseStatusLine();
+    String lastName = null;
+    StringBuilder lastValue = null;
+    while (position < this.message.limit()) {
+      final int lineEnd = this.findLineEnd(position);
+      final String line = this.readLine(position, lineEnd);
+      position = Math.min(lineEnd + 1, this.message.limit());
+      if (line.isEmpty()) { break; } // end of header
+
+      final char first = line.charAt(0);
+      if ((first == ' ' || first == '\t') && lastValue != null) {
+        // folded header line
+        int begin = 1;
+        while (begin < line.length()
+            && (line.charAt(begin) == ' ' || line.charAt(begin) == '\t')) {
+          ++begin;
+        }
+        lastValue.append(' ').append(line, begin, line.length());
+      } else {
+        if (lastName != null) {
+          this.addHeader(lastName, lastValue.toString().trim());
+        }
+        final int colon = line.indexOf(':');
+        if (colon < 0) { throw new IOException("Invalid header: " + line); }
+        lastName = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+        lastValue = new StringBuilder(line.substring(colon + 1));
+      }
+    }
+    if (lastName != null) {
+      this.addHeader(lastName, lastValue.toString().trim());
+    }
+    this.bodyOffset = position;
+    this.parsed = true;
+  }
+
+  /**
+   * Parses the status line and returns the position after it.
+   */
+  private int parseStatusLine() throws IOException {
+    if (this.message.limit() == 0) {
+      throw new EOFException("No HTTP status line");
+    }
+    final int lineEnd = this.findLineEnd(0);
+    final String line = this.readLine(0, lineEnd).trim();
+    if (!line.startsWith("HTTP/")) {
+      throw new IOException("Not a valid protocol version: " + line);
+    }
+    final String[] parts = line.split("[ \t]+", 3);
+    try {
+      this.statusCode = Integer.parseInt(parts[1]);
+    } catch (final ArrayIndexOutOfBoundsException | NumberFormatException e) {
+      throw new IOException("Invalid status line: " + line);
+    }
+    return Math.min(lineEnd + 1, this.message.limit());
+  }
+
+  private void addHeader(final String name, final String value) {
+    switch (name) {
+    case HEADER_CONTENT_TYPE:
+      this.contentType = value;
+      break;
+    case HEADER_CONTENT_ENCODING:
+      if (this.contentEncoding == null) { this.contentEncoding = value; }
+      break;
+    case HEADER_CONTENT_LANGUAGE:
+      this.contentLanguage = value;
+      break;
+    case HEADER_TRANSFER_ENCODING:
+      if (this.transferEncoding == null) { this.transferEncoding = value; }
+      break;
+    case HEADER_CONTENT_LENGTH:
+      try {
+        this.contentLength =
+            Math.max(NO_CONTENT_LENGTH, Long.parseLong(value));
+      } catch (final NumberFormatException e) {
+        // keep the previous valid one
+      }
+      break;
+    default:
+      break;
+    }
+  }
+
+  /**
+   * Gets the body without transfer encoding.
+   */
+  private ByteBuffer getTransferredBody() throws IOException {
+    final ByteBuffer rawBody = this.getRawBody();
+    if (this.getTransferEncoding() != null) {
+      if (this.isChunked()) {
+        return HttpPayload.decodeChunked(rawBody);
+      }
+      return rawBody;
+    }
+
+    final long contentLength = this.getContentLength();
+    if (contentLength < 0) { return rawBody; }
+    if (rawBody.remaining() < contentLength) {
+      throw new EOFException("Premature end of Content-Length delimited "
+          + "message body (expected: " + contentLength + "; received: "
+          + rawBody.remaining() + ")");
+    }
+    rawBody.limit((int) contentLength);
+    return rawBody;
+  }
+
+  private ByteBuffer decodeContent(final ByteBuffer transferred)
+  throws IOException {
+    final String contentEncoding = this.getContentEncoding();
+    if (contentEncoding == null) { return transferred; }
+    if (this.getTransferEncoding() == null && this.getContentLength() == 0) {
+      return transferred;
+    }
+
+    ByteBuffer decoded = transferred;
+    for (final String element : HttpPayload.split(contentEncoding, ',', 0)) {
+      final String coding =
+          HttpPayload.split(element, ';', 0)[0].trim().toLowerCase(Locale.ROOT);
+      if (coding.isEmpty()) { continue; }
+      switch (coding) {
+      case "gzip":
+      case "x-gzip":
+        decoded = HttpPayload.readFully(new GZIPInputStream(
+            new ByteBufferInputStream(decoded)), decoded.remaining());
+        break;
+      case "deflate":
+        decoded = HttpPayload.readFully(new DeflateInputStream(
+            new ByteBufferInputStream(decoded)), decoded.remaining());
+        break;
+      case CODING_IDENTITY:
+        break;
+      default:
+        throw new IOException("Unsupported Content-Encoding: " + coding);
+      }
+    }
+    return decoded;
+  }
+
+  private static ByteBuffer decodeChunked(final ByteBuffer chunked)
+  throws IOException {
+    byte[] decoded = new byte[chunked.remaining()];
+    int length = 0;
+    boolean first = true;
+    while (true) {
+      if (!first) {
+        // CR LF after the chunk data
+        final String separator = HttpPayload.readLine(chunked);
+        if (separator == null || !separator.isEmpty()) {
+          throw new IOException("Unexpected content at the end of chunk");
+        }
+      }
+      first = false;
+
+      final String header = HttpPayload.readLine(chunked);
+      if (header == null) {
+        throw new EOFException(
+            "Premature end of chunk coded message body: closing chunk "
+            + "expected");
+      }
+      final int semicolon = header.indexOf(';');
+      final int chunkSize;
+      try {
+        chunkSize = Integer.parseInt((semicolon < 0
+            ? header : header.substring(0, semicolon)).trim(), 16);
+      } catch (final NumberFormatException e) {
+        throw new IOException("Bad chunk header: " + header);
+      }
+      if (chunkSize < 0) {
+        throw new IOException("Negative chunk size: " + header);
+      }
+      if (chunkSize == 0) { break; }
+
+      if (chunked.remaining() < chunkSize) {
+        throw new EOFException("Truncated chunk (expected size: " + chunkSize
+            + "; actual size: " + chunked.remaining() + ")");
+      }
+      if (decoded.length - length < chunkSize) {
+        decoded = Arrays.copyOf(decoded, length + chunkSize);
+      }
+      chunked.get(decoded, length, chunkSize);
+      length += chunkSize;
+    }
+    // trailer headers are ignored
+    return ByteBuffer.wrap(decoded, 0, length).slice();
+  }
+
+  private static ByteBuffer readFully(
+      final InputStream input, final int expectedSize)
+  throws IOException {
+    try (final InputStream in = input) {
+      byte[] bytes =
+          new byte[Math.max(MIN_DECODE_BUFFER_SIZE, expectedSize * 4)];
+      int length = 0;
+      while (true) {
+        if (length == bytes.length) {
+          bytes = Arrays.copyOf(bytes, bytes.length * 2);
+        }
+        final int numRead = in.read(bytes, length, bytes.length - length);
+        if (numRead < 0) { break; }
+        length += numRead;
+      }
+      return ByteBuffer.wrap(bytes, 0, length).slice();
+    }
+  }
+
+  private int findLineEnd(final int begin) {
+    int index = begin;
+    final int limit = this.message.limit();
+    while (index < limit && this.message.get(index) != '\n') { ++index; }
+    return index;
+  }
+
+  /**
+   * Reads the bytes from begin to end as ISO-8859-1, without a trailing CR.
+   */
+  private String readLine(final int begin, final int end) {
+    int lineEnd = end;
+    if (lineEnd > begin && this.message.get(lineEnd - 1) == '\r') { --lineEnd; }
+    final byte[] bytes = new byte[lineEnd - begin];
+    final ByteBuffer line = this.message.duplicate();
+    line.position(begin);
+    line.get(bytes);
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Reads the next line of given buffer, without line feed and trailing CR.
+   * @return The line or <tt>null</tt> if the buffer has no more bytes
+   */
+  private static String readLine(final ByteBuffer buffer) {
+    if (!buffer.hasRemaining()) { return null; }
+    final StringBuilder line = new StringBuilder();
+    while (buffer.hasRemaining()) {
+      final char c = (char) (buffer.get() & 0xFF);
+      if (c == '\n') { break; }
+      line.append(c);
+    }
+    final int length = line.length();
+    if (length > 0 && line.charAt(length - 1) == '\r') {
+      line.setLength(length - 1);
+    }
+    return line.toString();
+  }
+
+  /**
+   * Gets the first element of a header value, which ends at the first comma
+   * outside of quotes.
+   */
+  private static String firstElement(final String value) {
+    final String[] elements = HttpPayload.split(value, ',', 0);
+    return elements.length == 0 ? "" : elements[0];
+  }
+
+  /**
+   * Splits given value at the separator outside of quotes.
+   * @param skip The number of leading parts to omit
+   */
+  private static String[] split(
+      final String value, final char separator, final int skip) {
+    final List<String> parts = new ArrayList<>();
+    boolean quoted = false;
+    int begin = 0;
+    for (int i = 0; i < value.length(); ++i) {
+      final char c = value.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == '\\' && quoted) {
+        ++i;
+      } else if (c == separator && !quoted) {
+        parts.add(value.substring(begin, i));
+        begin = i + 1;
+      }
+    }
+    parts.add(value.substring(begin));
+    final int numParts = Math.max(0, parts.size() - skip);
+    return parts.subList(parts.size() - numParts, parts.size())
+        .toArray(new String[numParts]);
+  }
+
+  private static String unquote(final String value) {
+    if (value.length() >= 2 && value.charAt(0) == '"'
+        && value.charAt(value.length() - 1) == '"') {
+      return value.substring(1, value.length() - 1);
+    }
+    return value;
+  }
+
+}
@@ -4,10 +4,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import org.apache.commons.cli.CommandLine;
@@ -17,10 +20,11 @@ import org.apache.commons.cli.Options;
 
 import com.ibm.icu.text.BreakIterator;
 
+import de.aitools.aq.text.Segmenters;
+import de.aitools.aq.text.TextSpans;
+import de.aitools.aq.text.WordFilter;
 import de.aitools.ie.languagedetection.LanguageDetector;
 import net.htmlparser.jericho.Renderer;
-import net.htmlparser.jericho.Segment;
-import net.htmlparser.jericho.Source;
 
 /**
  * A basic sentence extractor based on the Jericho extraction library.
@@ -32,10 +36,27 @@ import net.htmlparser.jericho.Source;
  * In case you need to know whether sentences are from the same paragraph, you
  * can use {@link #setParagraphSeparator(String)}.
  * </p><p>
+ * By default, the language is detected for each paragraph separately. Using
+ * {@link #setDetectLanguagePerPage(boolean)}, the language is instead detected
+ * once for the entire page if possible (see
+ * {@link #detectPageLanguage(List, Set)}). Moreover, languages declared by
+ * <tt>lang</tt> attributes or the Content-Language header can be used instead
+ * of a detection (see {@link #setLanguageHintMode(LanguageHintMode)}).
+ * </p><p>
+ * To bound the cost of pathological pages, the extractor can be given a
+ * budget for the length of the HTML, the length of the rendered text, and the
+ * number of paragraphs and sentences per page (see
+ * {@link #setMaxHtmlLength(int)} and the following setters). A page that
+ * exceeds the budget is truncated: the sentences found until then are
+ * extracted, and the truncation is counted as a {@link BudgetCounter}.
+ * </p><p>
  * This class is designed to be extended further. This should be done by
  * overriding the {@link #isValidParagraph(String, Locale)} and
  * {@link #isValidSentence(String, Locale)} checks (both of which always return
- * just <tt>true</tt> for this extractor).
+ * just <tt>true</tt> for this extractor). Checks on paragraphs that do not
+ * need the paragraph language should instead be added as a
+ * {@link ParagraphFilter} (see {@link #addParagraphFilter(ParagraphFilter)}),
+ * as these are applied before the comparatively expensive language detection.
  * </p><p>
  * When extending this extractor, see the documentation of
  * {@link HtmlSentenceExtractor} for information on how to integrate parameters
@@ -76,6 +97,111 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
 
   private static String SHORT_FLAG_DO_NOT_EXTRACT_ALT_TEXTS = "oa";
 
+  private static String SHORT_FLAG_DETECT_LANGUAGE_PER_PAGE = "lp";
+
+  private static String FLAG_DETECT_LANGUAGE_PER_PAGE = "language-per-page";
+
+  private static String SHORT_FLAG_LANGUAGE_HINT_MODE = "lh";
+
+  private static String FLAG_LANGUAGE_HINT_MODE = "language-hints";
+
+  private static String SHORT_FLAG_MAX_HTML_LENGTH = "bh";
+
+  private static String FLAG_MAX_HTML_LENGTH = "budget-html-chars";
+
+  private static String SHORT_FLAG_MAX_RENDERED_LENGTH = "br";
+
+  private static String FLAG_MAX_RENDERED_LENGTH = "budget-rendered-chars";
+
+  private static String SHORT_FLAG_MAX_PARAGRAPHS = "bp";
+
+  private static String FLAG_MAX_PARAGRAPHS = "budget-paragraphs";
+
+  private static String SHORT_FLAG_MAX_SENTENCES = "bs";
+
+  private static String FLAG_MAX_SENTENCES = "budget-sentences";
+
+  /**
+   * Value to use in the setters of the page budget (like
+   * {@link #setMaxHtmlLength(int)}) to specify that the respective quantity is
+   * not limited.
+   */
+  public static final int NO_LIMIT = -1;
+
+  /**
+   * The maximum number of characters in each of the two samples of a page that
+   * are used to detect the language of the page.
+   */
+  public static final int PAGE_LANGUAGE_SAMPLE_LENGTH = 1024;
+
+  private static final int PAGE_LANGUAGE_NUM_SAMPLES = 2;
+
+  /**
+   * The number of characters at the start of a paragraph that are used to
+   * verify its declared language in {@link LanguageHintMode#VERIFY} mode.
+   */
+  public static final int LANGUAGE_HINT_VERIFICATION_LENGTH = 160;
+
+  /**
+   * How languages declared for paragraphs are used.
+   * @see JerichoHtmlSentenceExtractor#setLanguageHintMode(LanguageHintMode)
+   */
+  public static enum LanguageHintMode {
+    /** Declared languages are ignored. */
+    IGNORE,
+    /**
+     * Declared target languages are used if the detected language of the
+     * start of the paragraph is the same.
+     */
+    VERIFY,
+    /** Declared target languages are used without detection. */
+    TRUST
+  }
+
+  /**
+   * Counters for the language detection.
+   */
+  public static enum LanguageDetectionCounter {
+    /** Calls to the language detector. */
+    DETECTOR_CALLS,
+    /**
+     * Calls to the language detector saved by detecting per page or by
+     * trusting declared languages.
+     */
+    DETECTOR_CALLS_SAVED,
+    /** Pages for which the detected page language was used. */
+    PAGE_LANGUAGE_USED,
+    /** Pages with paragraphs declared to be of different languages. */
+    PAGE_LANGUAGE_MIXED_DECLARATIONS,
+    /** Pages for which the samples were detected as different languages. */
+    PAGE_LANGUAGE_UNCERTAIN,
+    /** Pages with too few paragraphs to detect the page language. */
+    PAGE_LANGUAGE_TOO_FEW_PARAGRAPHS,
+    /** Paragraphs for which the declared language was used without check. */
+    HINT_TRUSTED,
+    /** Paragraphs for which the declared language was verified. */
+    HINT_VERIFIED,
+    /** Paragraphs for which the declared language was not verified. */
+    HINT_REJECTED
+  }
+
+  /**
+   * Counters for pages that were truncated because they exceeded the budget.
+   */
+  public static enum BudgetCounter {
+    /** Pages of which only the start of the HTML was extracted. */
+    HTML_TRUNCATED,
+    /** Pages for which rendering stopped at the rendered text length. */
+    RENDERED_TEXT_TRUNCATED,
+    /** Pages for which rendering stopped at the number of paragraphs. */
+    PARAGRAPHS_TRUNCATED,
+    /** Pages for which extraction stopped at the number of sentences. */
+    SENTENCES_TRUNCATED
+  }
+
+  private static final BudgetExhaustedException BUDGET_EXHAUSTED =
+      new BudgetExhaustedException();
+
   //////////////////////////////////////////////////////////////////////////////
   //                                   MEMBERS                                //
   //////////////////////////////////////////////////////////////////////////////
@@ -90,6 +216,20 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
 
   private boolean extractAltTexts = true;
 
+  private boolean detectLanguagePerPage;
+
+  private LanguageHintMode languageHintMode;
+
+  private final List<ParagraphFilter> paragraphFilters = new ArrayList<>();
+
+  private int maxHtmlLength = NO_LIMIT;
+
+  private int maxRenderedLength = NO_LIMIT;
+
+  private int maxParagraphs = NO_LIMIT;
+
+  private int maxSentences = NO_LIMIT;
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONSTRUCTORS                              //
   //////////////////////////////////////////////////////////////////////////////
@@ -101,6 +241,8 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
   public JerichoHtmlSentenceExtractor() {
     this.setExtractLanguage(Locale.ENGLISH);
     this.setDoNotSeparateParagraphs();
+    this.setDetectLanguagePerPage(false);
+    this.setLanguageHintMode(LanguageHintMode.IGNORE);
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -143,6 +285,23 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     return this.separateParagraphs;
   }
 
+  /**
+   * Checks whether this extractor detects the language once per page where
+   * possible instead of for each paragraph.
+   * @see #setDetectLanguagePerPage(boolean)
+   */
+  public boolean detectsLanguagePerPage() {
+    return this.detectLanguagePerPage;
+  }
+
+  /**
+   * Gets how languages declared for paragraphs are used.
+   * @see #setLanguageHintMode(LanguageHintMode)
+   */
+  public LanguageHintMode getLanguageHintMode() {
+    return this.languageHintMode;
+  }
+
   /**
    * Whether alternative image descriptions should be extracted (default: true).
    */
@@ -163,6 +322,50 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     return this.paragraphSeparator;
   }
 
+  /**
+   * Gets the filters that paragraphs have to pass, in the order they are
+   * applied within the language-independent and language-dependent groups.
+   */
+  public List<ParagraphFilter> getParagraphFilters() {
+    return Collections.unmodifiableList(this.paragraphFilters);
+  }
+
+  /**
+   * Gets the number of characters of the HTML of a page that are extracted, or
+   * {@link #NO_LIMIT}.
+   * @see #setMaxHtmlLength(int)
+   */
+  public int getMaxHtmlLength() {
+    return this.maxHtmlLength;
+  }
+
+  /**
+   * Gets the number of characters of rendered paragraphs per page after which
+   * rendering stops, or {@link #NO_LIMIT}.
+   * @see #setMaxRenderedLength(int)
+   */
+  public int getMaxRenderedLength() {
+    return this.maxRenderedLength;
+  }
+
+  /**
+   * Gets the number of rendered paragraphs per page after which rendering
+   * stops, or {@link #NO_LIMIT}.
+   * @see #setMaxParagraphs(int)
+   */
+  public int getMaxParagraphs() {
+    return this.maxParagraphs;
+  }
+
+  /**
+   * Gets the number of sentences per page after which extraction stops, or
+   * {@link #NO_LIMIT}.
+   * @see #setMaxSentences(int)
+   */
+  public int getMaxSentences() {
+    return this.maxSentences;
+  }
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONFIGURATION                             //
   //////////////////////////////////////////////////////////////////////////////
@@ -181,6 +384,124 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     this.languageDetector = null;
   }
 
+  /**
+   * Adds a filter that paragraphs have to pass to be extracted.
+   * <p>
+   * Language-independent filters are applied before the language of the
+   * paragraph is detected. Within each group, filters are applied by
+   * increasing {@link ParagraphFilter#getCost()}, and filters of equal cost in
+   * the order they were added.
+   * </p>
+   */
+  public void addParagraphFilter(final ParagraphFilter paragraphFilter) {
+    if (paragraphFilter == null) { throw new NullPointerException(); }
+    this.paragraphFilters.add(paragraphFilter);
+    this.paragraphFilters.sort(
+        Comparator.comparingDouble(ParagraphFilter::getCost));
+  }
+
+  /**
+   * Removes a filter that was added using
+   * {@link #addParagraphFilter(ParagraphFilter)}.
+   * @return Whether the filter was added before
+   */
+  public boolean removeParagraphFilter(final ParagraphFilter paragraphFilter) {
+    return this.paragraphFilters.remove(paragraphFilter);
+  }
+
+  /**
+   * Sets whether this extractor detects the language once per page where
+   * possible instead of for each paragraph.
+   * <p>
+   * If set, the paragraphs of a page that pass the language-independent
+   * paragraph filters are collected before any sentences are extracted, and
+   * all of them are treated as being in the language detected by
+   * {@link #detectPageLanguage(List, Set)}. Only if that method can not
+   * determine a page language, the language is detected for each paragraph.
+   * </p>
+   */
+  public void setDetectLanguagePerPage(final boolean detectLanguagePerPage) {
+    this.detectLanguagePerPage = detectLanguagePerPage;
+  }
+
+  /**
+   * Sets how languages declared for paragraphs are used.
+   * <p>
+   * The language declared for a paragraph is the one of the <tt>lang</tt>
+   * attribute of the innermost enclosing element that has one, or else the one
+   * passed to {@link #extractSentences(String, Locale)} (usually from the
+   * Content-Language header). Only declared languages that are target
+   * languages are used. The default is {@link LanguageHintMode#IGNORE}.
+   * </p>
+   */
+  public void setLanguageHintMode(final LanguageHintMode languageHintMode) {
+    if (languageHintMode == null) { throw new NullPointerException(); }
+    this.languageHintMode = languageHintMode;
+  }
+
+  /**
+   * Sets the number of characters of the HTML of a page that are extracted.
+   * <p>
+   * Longer HTML is cut before the last tag that starts within the limit (or at
+   * the limit if there is none) and counted as
+   * {@link BudgetCounter#HTML_TRUNCATED}.
+   * </p>
+   * @param maxHtmlLength The maximum number of characters, or
+   * {@link #NO_LIMIT}
+   */
+  public void setMaxHtmlLength(final int maxHtmlLength) {
+    this.maxHtmlLength = JerichoHtmlSentenceExtractor.checkLimit(maxHtmlLength);
+  }
+
+  /**
+   * Sets the number of characters of rendered paragraphs per page after which
+   * rendering stops.
+   * <p>
+   * The paragraph that would exceed the limit is not extracted, and the page
+   * is counted as {@link BudgetCounter#RENDERED_TEXT_TRUNCATED}.
+   * </p>
+   * @param maxRenderedLength The maximum number of characters, or
+   * {@link #NO_LIMIT}
+   */
+  public void setMaxRenderedLength(final int maxRenderedLength) {
+    this.maxRenderedLength =
+        JerichoHtmlSentenceExtractor.checkLimit(maxRenderedLength);
+  }
+
+  /**
+   * Sets the number of rendered paragraphs per page after which rendering
+   * stops.
+   * <p>
+   * All rendered paragraphs count, including those that are filtered out
+   * later. If a page has more, it is counted as
+   * {@link BudgetCounter#PARAGRAPHS_TRUNCATED}.
+   * </p>
+   * @param maxParagraphs The maximum number of paragraphs, or
+   * {@link #NO_LIMIT}
+   */
+  public void setMaxParagraphs(final int maxParagraphs) {
+    this.maxParagraphs = JerichoHtmlSentenceExtractor.checkLimit(maxParagraphs);
+  }
+
+  /**
+   * Sets the number of sentences per page after which extraction stops.
+   * <p>
+   * If a page has more, only the first sentences are extracted, and the page
+   * is counted as {@link BudgetCounter#SENTENCES_TRUNCATED}.
+   * </p>
+   * @param maxSentences The maximum number of sentences, or {@link #NO_LIMIT}
+   */
+  public void setMaxSentences(final int maxSentences) {
+    this.maxSentences = JerichoHtmlSentenceExtractor.checkLimit(maxSentences);
+  }
+
+  private static int checkLimit(final int limit) {
+    if (limit <= 0 && limit != NO_LIMIT) {
+      throw new IllegalArgumentException("Non-positive limit: " + limit);
+    }
+    return limit;
+  }
+
   /**
    * Configure this extractor to extract or not extract alternative image
    * descriptions (alt attributes) from the given input HTML text.
@@ -336,6 +657,18 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
         config.hasOption(FLAG_DO_NOT_SEPARATE_PARAGRAPHS);
     final boolean doNotExtractAltTexts =
         config.hasOption(FLAG_DO_NOT_EXTRACT_ALT_TEXTS);
+    final boolean detectLanguagePerPage =
+        config.hasOption(FLAG_DETECT_LANGUAGE_PER_PAGE);
+    final String languageHintMode =
+        config.getOptionValue(FLAG_LANGUAGE_HINT_MODE);
+    final String maxHtmlLength =
+        config.getOptionValue(FLAG_MAX_HTML_LENGTH);
+    final String maxRenderedLength =
+        config.getOptionValue(FLAG_MAX_RENDERED_LENGTH);
+    final String maxParagraphs =
+        config.getOptionValue(FLAG_MAX_PARAGRAPHS);
+    final String maxSentences =
+        config.getOptionValue(FLAG_MAX_SENTENCES);
     
     if (detectAll) {
       this.setExtractAllLanguages();
@@ -354,6 +687,28 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     if (doNotExtractAltTexts) {
       this.setExtractAltTexts(false);
     }
+
+    if (detectLanguagePerPage) {
+      this.setDetectLanguagePerPage(true);
+    }
+
+    if (languageHintMode != null) {
+      this.setLanguageHintMode(LanguageHintMode.valueOf(
+          languageHintMode.toUpperCase(Locale.ROOT)));
+    }
+
+    if (maxHtmlLength != null) {
+      this.setMaxHtmlLength(Integer.parseInt(maxHtmlLength));
+    }
+    if (maxRenderedLength != null) {
+      this.setMaxRenderedLength(Integer.parseInt(maxRenderedLength));
+    }
+    if (maxParagraphs != null) {
+      this.setMaxParagraphs(Integer.parseInt(maxParagraphs));
+    }
+    if (maxSentences != null) {
+      this.setMaxSentences(Integer.parseInt(maxSentences));
+    }
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -362,66 +717,281 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
 
   @Override
   protected List<String> extract(final String htmlInput)
+  throws NullPointerException, IllegalArgumentException {
+    return this.extract(htmlInput, null);
+  }
+
+  @Override
+  protected List<String> extract(
+      final String htmlInput, final Locale languageHint)
   throws NullPointerException, IllegalArgumentException {
     if (htmlInput == null) {
       throw new NullPointerException();
     }
+    final String html = this.truncateHtml(htmlInput);
+    final PageBudget budget = new PageBudget(
+        this.maxRenderedLength, this.maxParagraphs, this.maxSentences);
+    if (this.detectLanguagePerPage) {
+      return this.extractWithPageLanguage(html, languageHint, budget);
+    }
+
+    final List<String> sentences = new ArrayList<>();
+    final boolean rendered = this.extractParagraphsWithLanguages(html, budget,
+        (paragraph, declaredLanguage) -> {
+          final boolean withinBudget = this.addParagraphSentences(sentences,
+              this.extractSentencesFromHintedParagraph(paragraph,
+                  declaredLanguage == null ? languageHint : declaredLanguage),
+              budget);
+          if (!withinBudget) { throw BUDGET_EXHAUSTED; }
+        });
+    if (!rendered) {
+      throw new IllegalArgumentException("Could not parse: " + htmlInput);
+    }
+    return sentences;
+  }
 
-    final List<String> paragraphs = this.extractParagraphs(htmlInput);
-    if (paragraphs == null) {
+  /**
+   * Extracts the sentences from the page, using the language detected for the
+   * page for all paragraphs without usable language hint if possible.
+   * @see #setDetectLanguagePerPage(boolean)
+   */
+  private List<String> extractWithPageLanguage(final String htmlInput,
+      final Locale languageHint, final PageBudget budget) {
+    final List<String> candidateParagraphs = new ArrayList<>();
+    final List<Locale> paragraphLanguageHints = new ArrayList<>();
+    final Set<String> declaredLanguages = new HashSet<>();
+    final boolean rendered = this.extractParagraphsWithLanguages(
+        htmlInput, budget, (paragraph, declaredLanguage) -> {
+          if (this.isCandidateParagraph(paragraph)) {
+            candidateParagraphs.add(paragraph);
+            if (declaredLanguage != null) {
+              declaredLanguages.add(declaredLanguage.getLanguage());
+              paragraphLanguageHints.add(declaredLanguage);
+            } else {
+              paragraphLanguageHints.add(languageHint);
+            }
+          }
+        });
+    if (!rendered) {
       throw new IllegalArgumentException("Could not parse: " + htmlInput);
     }
+
     final List<String> sentences = new ArrayList<>();
-    boolean firstParagraph = true;
-    for (final String paragraph : paragraphs) {
-      final List<String> paragraphSentences =
-          this.extractSentencesFromParagraph(paragraph);
-      if (!paragraphSentences.isEmpty()) {
-        if (firstParagraph) {
-          firstParagraph = false;
-        } else if (this.separateParagraphs) {
-          sentences.add(this.paragraphSeparator);
+    boolean pageLanguageDetected = false;
+    Locale pageLanguage = null;
+    int numPageLanguageParagraphs = 0;
+    for (int p = 0; p < candidateParagraphs.size(); ++p) {
+      final String paragraph = candidateParagraphs.get(p);
+      final Locale paragraphLanguageHint = paragraphLanguageHints.get(p);
+      final Locale paragraphLanguage;
+      if (this.usesLanguageHint(paragraphLanguageHint)) {
+        paragraphLanguage =
+            this.detectLanguage(paragraph, paragraphLanguageHint);
+      } else {
+        if (!pageLanguageDetected) {
+          pageLanguage =
+              this.detectPageLanguage(candidateParagraphs, declaredLanguages);
+          pageLanguageDetected = true;
+          if (pageLanguage != null) {
+            this.count(LanguageDetectionCounter.PAGE_LANGUAGE_USED, 1);
+          }
+        }
+        if (pageLanguage == null) {
+          paragraphLanguage = this.detectLanguage(paragraph);
+        } else {
+          ++numPageLanguageParagraphs;
+          paragraphLanguage =
+              this.isTargetLanguage(pageLanguage) ? pageLanguage : null;
         }
-        sentences.addAll(paragraphSentences);
       }
+      final boolean withinBudget = this.addParagraphSentences(sentences,
+          this.extractSentencesFromCandidateParagraph(
+              paragraph, paragraphLanguage),
+          budget);
+      if (!withinBudget) { break; }
+    }
+    if (pageLanguage != null) {
+      // negative if the samples took more calls than the paragraphs would have
+      this.count(LanguageDetectionCounter.DETECTOR_CALLS_SAVED,
+          numPageLanguageParagraphs - PAGE_LANGUAGE_NUM_SAMPLES);
     }
     return sentences;
   }
+
+  /**
+   * Adds the sentences of a paragraph to those of the page, as far as the
+   * budget allows. Returns <tt>false</tt> if sentences were left out.
+   */
+  private boolean addParagraphSentences(final List<String> sentences,
+      final List<String> paragraphSentences, final PageBudget budget) {
+    if (paragraphSentences.isEmpty()) { return true; }
+    final int numSentences = budget.takeSentences(paragraphSentences.size());
+    if (numSentences > 0) {
+      // sentences is empty until sentences of the first paragraph are added
+      if (this.separateParagraphs && !sentences.isEmpty()) {
+        sentences.add(this.paragraphSeparator);
+      }
+      sentences.addAll(paragraphSentences.subList(0, numSentences));
+    }
+    if (numSentences < paragraphSentences.size()) {
+      this.count(BudgetCounter.SENTENCES_TRUNCATED, 1);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the start of the HTML that fits into
+   * {@link #getMaxHtmlLength()}.
+   */
+  private String truncateHtml(final String htmlInput) {
+    if (this.maxHtmlLength == NO_LIMIT
+        || htmlInput.length() <= this.maxHtmlLength) {
+      return htmlInput;
+    }
+    this.count(BudgetCounter.HTML_TRUNCATED, 1);
+    int end = htmlInput.lastIndexOf('<', this.maxHtmlLength);
+    if (end <= 0) {
+      end = this.maxHtmlLength;
+      if (Character.isLowSurrogate(htmlInput.charAt(end))) { --end; }
+    }
+    return htmlInput.substring(0, end);
+  }
   
   /**
-   * Renders the HTML page with Jericho {@link Renderer}, normalizes sequences
-   * of whitespace characters to a single whitespace, and returns the list of
-   * paragraphs. Return <tt>null</tt> on a fatal rendering error.
+   * Renders the HTML page and returns the list of its non-empty paragraphs, with
+   * sequences of whitespace characters normalized to a single whitespace.
+   * Returns <tt>null</tt> on a fatal rendering error.
+   * @see #extractParagraphs(String, Consumer)
    */
   protected List<String> extractParagraphs(final String htmlInput) {
+    final List<String> paragraphs = new ArrayList<>();
+    if (!this.extractParagraphs(htmlInput, paragraphs::add)) { return null; }
+    return paragraphs;
+  }
+
+  /**
+   * Renders the HTML page with a {@link StreamingParagraphRenderer}, which
+   * produces the same paragraphs as the Jericho {@link Renderer} would, and
+   * passes each non-empty paragraph to the consumer as soon as it is complete.
+   * Sequences of whitespace characters in the paragraphs are normalized to a
+   * single whitespace. Returns <tt>false</tt> on a fatal rendering error.
+   */
+  protected boolean extractParagraphs(
+      final String htmlInput, final Consumer<String> paragraphConsumer) {
+    final StreamingParagraphRenderer renderer =
+        new StreamingParagraphRenderer();
+    renderer.setIncludeAlternateTexts(this.extractAltTexts);
     try {
-      final Source source = new Source(htmlInput);
-      final Segment segment = new Segment(source, 0, htmlInput.length());
-      final Renderer renderer = new Renderer(segment);
-      renderer.setMaxLineLength(0);
-      renderer.setIncludeHyperlinkURLs(false);
-      renderer.setIncludeAlternateText(this.extractAltTexts);
-      final String[] paragraphsArray = renderer.toString().split("\n");
-      final List<String> paragraphs = new ArrayList<>(paragraphsArray.length);
-      for (final String paragraph : paragraphsArray) {
-        paragraphs.add(this.normalizeWhitespace(paragraph));
-      }
-      return paragraphs;
+      renderer.render(htmlInput, paragraphConsumer);
+      return true;
     } catch (final Error error) {
-      return null;
+      return false;
+    }
+  }
+
+  /**
+   * Renders the HTML page like {@link #extractParagraphs(String, Consumer)},
+   * but passes each paragraph together with the language declared for it by
+   * <tt>lang</tt> attributes, or <tt>null</tt> if none is declared.
+   */
+  protected boolean extractParagraphsWithLanguages(final String htmlInput,
+      final BiConsumer<String, Locale> paragraphConsumer) {
+    return this.extractParagraphsWithLanguages(htmlInput,
+        new PageBudget(NO_LIMIT, NO_LIMIT, NO_LIMIT), paragraphConsumer);
+  }
+
+  /**
+   * Renders the HTML page like
+   * {@link #extractParagraphsWithLanguages(String, BiConsumer)}, but stops
+   * (successfully) when the paragraphs exceed the budget or the consumer
+   * throws {@link #BUDGET_EXHAUSTED}.
+   */
+  private boolean extractParagraphsWithLanguages(final String htmlInput,
+      final PageBudget budget,
+      final BiConsumer<String, Locale> paragraphConsumer) {
+    final StreamingParagraphRenderer renderer =
+        new StreamingParagraphRenderer();
+    renderer.setIncludeAlternateTexts(this.extractAltTexts);
+    try {
+      renderer.renderWithLanguages(htmlInput, (paragraph, declaredLanguage) -> {
+        final BudgetCounter exceeded = budget.addParagraph(paragraph);
+        if (exceeded != null) {
+          this.count(exceeded, 1);
+          throw BUDGET_EXHAUSTED;
+        }
+        paragraphConsumer.accept(paragraph, declaredLanguage);
+      });
+      return true;
+    } catch (final BudgetExhaustedException exception) {
+      return true;
+    } catch (final Error error) {
+      return false;
     }
   }
 
   /**
-   * Detects the language of the paragraph, checks whether it is a target
-   * language and it {@link #isValidParagraph(String, Locale)}, and returns the
-   * sentences from it. Returns an empty list when the paragraph is empty, from
-   * a non-target language, or not valid.
+   * Checks the paragraph against the language-independent paragraph filters,
+   * detects its language, checks whether it is a target language, passes the
+   * language-dependent paragraph filters, and it
+   * {@link #isValidParagraph(String, Locale)}, and returns the sentences from
+   * it. Returns an empty list when the paragraph is empty, from a non-target
+   * language, or not valid.
    */
   protected List<String> extractSentencesFromParagraph(final String paragraph) {
-    final Locale paragraphLanguage = this.detectLanguage(paragraph);
-    if (paragraphLanguage == null
-        || !this.isValidParagraph(paragraph, paragraphLanguage)) {
+    return this.extractSentencesFromHintedParagraph(paragraph, null);
+  }
+
+  /**
+   * Like {@link #extractSentencesFromParagraph(String)}, but determines the
+   * language of the paragraph using {@link #detectLanguage(String, Locale)}.
+   * @param paragraph The paragraph
+   * @param languageHint The language declared for the paragraph, or
+   * <tt>null</tt> if none was declared
+   */
+  protected List<String> extractSentencesFromHintedParagraph(
+      final String paragraph, final Locale languageHint) {
+    if (!this.isCandidateParagraph(paragraph)) {
+      return Collections.emptyList();
+    }
+    return this.extractSentencesFromCandidateParagraph(
+        paragraph, this.detectLanguage(paragraph, languageHint));
+  }
+
+  /**
+   * Checks whether the paragraph passes all language-independent paragraph
+   * filters.
+   */
+  private boolean isCandidateParagraph(final String paragraph) {
+    this.checkTimeout();
+    for (final ParagraphFilter paragraphFilter : this.paragraphFilters) {
+      if (paragraphFilter.isLanguageIndependent()
+          && !paragraphFilter.test(paragraph, null)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks the language of a paragraph that passed all language-independent
+   * paragraph filters, passes the language-dependent paragraph filters, and
+   * returns the sentences from it.
+   * @param paragraphLanguage The language of the paragraph, or <tt>null</tt>
+   * if it is not a target language
+   */
+  private List<String> extractSentencesFromCandidateParagraph(
+      final String paragraph, final Locale paragraphLanguage) {
+    if (paragraphLanguage == null) { return Collections.emptyList(); }
+    this.checkTimeout();
+
+    for (final ParagraphFilter paragraphFilter : this.paragraphFilters) {
+      if (!paragraphFilter.isLanguageIndependent()
+          && !paragraphFilter.test(paragraph, paragraphLanguage)) {
+        return Collections.emptyList();
+      }
+    }
+    if (!this.isValidParagraph(paragraph, paragraphLanguage)) {
       return Collections.emptyList();
     }
     return this.extractSentencesFromParagraph(paragraph, paragraphLanguage);
@@ -434,16 +1004,18 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
    */
   protected List<String> extractSentencesFromParagraph(
       final String paragraph, final Locale paragraphLanguage) {
-    // they are not thread-safe, so we create a new one each time
+    // they are not thread-safe, so each thread has its own
     final BreakIterator segmenter =
-        BreakIterator.getSentenceInstance(paragraphLanguage);
+        Segmenters.getSentenceInstance(paragraphLanguage);
 
-    final List<String> sentences = new ArrayList<String>();
-    for (final String sentence : this.getSegments(paragraph, segmenter)) {
-      if (!sentence.isEmpty()) {
-        if (this.isValidSentence(sentence, paragraphLanguage)) {
-          sentences.add(sentence);
-        }
+    final TextSpans spans = this.getSegmentSpans(paragraph, segmenter);
+    final List<String> sentences = new ArrayList<String>(spans.size());
+    for (int s = 0; s < spans.size(); ++s) {
+      this.checkTimeout();
+      final int begin = spans.getBegin(s);
+      final int end = spans.getEnd(s);
+      if (this.isValidSentence(paragraph, begin, end, paragraphLanguage)) {
+        sentences.add(paragraph.substring(begin, end));
       }
     }
     return sentences;
@@ -451,6 +1023,7 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
   
   /**
    * Checks whether given paragraph of given language should be extracted.
+   * This is called after the paragraph passed all paragraph filters.
    * <p>
    * The default implementation of this method always return true.
    * </p>
@@ -473,6 +1046,24 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
       final String sentence, final Locale paragraphLanguage) {
     return true;
   }
+
+  /**
+   * Checks whether the sentence that spans from <tt>begin</tt> (inclusive) to
+   * <tt>end</tt> (exclusive) in given paragraph should be extracted.
+   * <p>
+   * This is the check that is used during extraction. Override it instead of
+   * {@link #isValidSentence(String, Locale)} to check sentences without
+   * creating a String for each of them (e.g., using
+   * {@link WordFilter#toWordSpans(String, int, int, Locale)}). The default
+   * implementation creates the String and calls
+   * {@link #isValidSentence(String, Locale)}.
+   * </p>
+   */
+  protected boolean isValidSentence(final String paragraph,
+      final int begin, final int end, final Locale paragraphLanguage) {
+    return this.isValidSentence(
+        paragraph.substring(begin, end), paragraphLanguage);
+  }
   
   /**
    * Detects the language of the text using the language detector (see
@@ -482,11 +1073,124 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
    * target language.
    */
   protected Locale detectLanguage(final String text) {
+    this.count(LanguageDetectionCounter.DETECTOR_CALLS, 1);
     final Locale detectedLanguage = this.getLanguageDetector().apply(text);
     if (!this.isTargetLanguage(detectedLanguage)) { return null; }
     return detectedLanguage;
   }
 
+  /**
+   * Determines the language of the text like {@link #detectLanguage(String)},
+   * but uses the language declared for it according to the
+   * {@link #getLanguageHintMode()} if it is a target language.
+   * @param text The text
+   * @param languageHint The language declared for the text, or <tt>null</tt>
+   * if none was declared
+   */
+  protected Locale detectLanguage(
+      final String text, final Locale languageHint) {
+    if (!this.usesLanguageHint(languageHint)) {
+      return this.detectLanguage(text);
+    }
+    final Locale hintedLanguage = new Locale(languageHint.getLanguage());
+    switch (this.languageHintMode) {
+    case TRUST:
+      this.count(LanguageDetectionCounter.HINT_TRUSTED, 1);
+      this.count(LanguageDetectionCounter.DETECTOR_CALLS_SAVED, 1);
+      return hintedLanguage;
+    case VERIFY:
+      if (text.length() <= LANGUAGE_HINT_VERIFICATION_LENGTH) {
+        // the verification would be a complete detection
+        return this.detectLanguage(text);
+      }
+      this.count(LanguageDetectionCounter.DETECTOR_CALLS, 1);
+      final Locale verifiedLanguage = this.getLanguageDetector().apply(
+          text.substring(0, LANGUAGE_HINT_VERIFICATION_LENGTH));
+      if (verifiedLanguage != null && verifiedLanguage.getLanguage().equals(
+          hintedLanguage.getLanguage())) {
+        this.count(LanguageDetectionCounter.HINT_VERIFIED, 1);
+        return hintedLanguage;
+      } else {
+        this.count(LanguageDetectionCounter.HINT_REJECTED, 1);
+        return this.detectLanguage(text);
+      }
+    default:
+      return this.detectLanguage(text);
+    }
+  }
+
+  /**
+   * Checks whether the language declared for a text is used in place of or to
+   * simplify its detection.
+   */
+  private boolean usesLanguageHint(final Locale languageHint) {
+    return languageHint != null
+        && this.languageHintMode != LanguageHintMode.IGNORE
+        && this.isTargetLanguage(languageHint);
+  }
+
+  /**
+   * Detects the language of a page from its paragraphs, or returns
+   * <tt>null</tt> if the paragraphs should be detected separately.
+   * <p>
+   * The paragraphs are alternately added to two samples of up to
+   * {@value #PAGE_LANGUAGE_SAMPLE_LENGTH} characters each, and the language of
+   * the page is only returned if the language detector detects the same
+   * language for both samples. No page language is detected if the page
+   * has less than two paragraphs or paragraphs declared to be of different
+   * languages.
+   * </p>
+   * @param paragraphs The paragraphs of the page that passed the
+   * language-independent paragraph filters
+   * @param declaredLanguages The languages declared for these paragraphs by
+   * <tt>lang</tt> attributes
+   * @return The detected language, which may not be a target language, or
+   * <tt>null</tt>
+   */
+  protected Locale detectPageLanguage(
+      final List<String> paragraphs, final Set<String> declaredLanguages) {
+    if (paragraphs.size() < 2) {
+      this.count(LanguageDetectionCounter.PAGE_LANGUAGE_TOO_FEW_PARAGRAPHS, 1);
+      return null;
+    }
+    if (declaredLanguages.size() > 1) {
+      this.count(LanguageDetectionCounter.PAGE_LANGUAGE_MIXED_DECLARATIONS, 1);
+      return null;
+    }
+
+    final StringBuilder[] samples =
+        new StringBuilder[PAGE_LANGUAGE_NUM_SAMPLES];
+    for (int s = 0; s < samples.length; ++s) {
+      samples[s] = new StringBuilder();
+    }
+    for (int p = 0; p < paragraphs.size(); ++p) {
+      final StringBuilder sample = samples[p % samples.length];
+      if (sample.length() < PAGE_LANGUAGE_SAMPLE_LENGTH) {
+        if (sample.length() > 0) { sample.append('\n'); }
+        sample.append(paragraphs.get(p));
+      }
+    }
+    final Function<String, Locale> languageDetector =
+        this.getLanguageDetector();
+    this.count(LanguageDetectionCounter.DETECTOR_CALLS, samples.length);
+    final Locale firstLanguage =
+        languageDetector.apply(this.getSample(samples[0]));
+    final Locale secondLanguage =
+        languageDetector.apply(this.getSample(samples[1]));
+    if (firstLanguage == null || secondLanguage == null
+        || !firstLanguage.getLanguage().equals(secondLanguage.getLanguage())) {
+      this.count(LanguageDetectionCounter.PAGE_LANGUAGE_UNCERTAIN, 1);
+      return null;
+    }
+    return firstLanguage;
+  }
+
+  private String getSample(final StringBuilder sample) {
+    return sample.length() <= PAGE_LANGUAGE_SAMPLE_LENGTH
+        ? sample.toString()
+        : sample.substring(0, PAGE_LANGUAGE_SAMPLE_LENGTH);
+  }
+
   /**
    * Checks whether the given language is a target language.
    * @see #setExtractLanguages(Locale...)
@@ -505,6 +1209,15 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     return text.replaceAll("\\s+", " ").trim();
   }
   
+  /**
+   * Uses given break iterator to segment the text, and returns the spans of
+   * the non-empty segments without leading and trailing whitespace.
+   */
+  protected TextSpans getSegmentSpans(
+      final String text, final BreakIterator segmenter) {
+    return TextSpans.segment(text, segmenter);
+  }
+
   /**
    * Uses given break iterator to segment the text.
    */
@@ -589,11 +1302,137 @@ public class JerichoHtmlSentenceExtractor extends HtmlSentenceExtractor {
     other.addOption(noAltTextExtraction);
     options.addOptionGroup(other);
 
+    final Option detectLanguagePerPageOption = new Option(
+        SHORT_FLAG_DETECT_LANGUAGE_PER_PAGE, false,
+        "Configures this extractor to detect the language once per page from "
+        + "two samples of its paragraphs, and to detect it per paragraph only "
+        + "if the samples disagree or the page declares several languages");
+    detectLanguagePerPageOption.setLongOpt(FLAG_DETECT_LANGUAGE_PER_PAGE);
+    options.addOption(detectLanguagePerPageOption);
+
+    final Option languageHintModeOption = new Option(
+        SHORT_FLAG_LANGUAGE_HINT_MODE, true,
+        "Sets how target languages declared by lang attributes or the "
+        + "Content-Language header are used: "
+        + Arrays.toString(LanguageHintMode.values()).toLowerCase(Locale.ROOT)
+        + " (Current: "
+        + this.languageHintMode.name().toLowerCase(Locale.ROOT) + ")");
+    languageHintModeOption.setLongOpt(FLAG_LANGUAGE_HINT_MODE);
+    languageHintModeOption.setArgName("mode");
+    options.addOption(languageHintModeOption);
+
+    final Option maxHtmlLengthOption = new Option(
+        SHORT_FLAG_MAX_HTML_LENGTH, true,
+        "Sets the number of characters of the HTML of a page that are "
+        + "extracted; the rest is ignored (Current: "
+        + JerichoHtmlSentenceExtractor.toString(this.maxHtmlLength) + ")");
+    maxHtmlLengthOption.setLongOpt(FLAG_MAX_HTML_LENGTH);
+    maxHtmlLengthOption.setArgName("num");
+    options.addOption(maxHtmlLengthOption);
+
+    final Option maxRenderedLengthOption = new Option(
+        SHORT_FLAG_MAX_RENDERED_LENGTH, true,
+        "Sets the number of characters of rendered text per page after which "
+        + "rendering stops (Current: "
+        + JerichoHtmlSentenceExtractor.toString(this.maxRenderedLength) + ")");
+    maxRenderedLengthOption.setLongOpt(FLAG_MAX_RENDERED_LENGTH);
+    maxRenderedLengthOption.setArgName("num");
+    options.addOption(maxRenderedLengthOption);
+
+    final Option maxParagraphsOption = new Option(
+        SHORT_FLAG_MAX_PARAGRAPHS, true,
+        "Sets the number of rendered paragraphs per page after which "
+        + "rendering stops (Current: "
+        + JerichoHtmlSentenceExtractor.toString(this.maxParagraphs) + ")");
+    maxParagraphsOption.setLongOpt(FLAG_MAX_PARAGRAPHS);
+    maxParagraphsOption.setArgName("num");
+    options.addOption(maxParagraphsOption);
+
+    final Option maxSentencesOption = new Option(
+        SHORT_FLAG_MAX_SENTENCES, true,
+        "Sets the number of sentences per page after which extraction stops "
+        + "(Current: "
+        + JerichoHtmlSentenceExtractor.toString(this.maxSentences) + ")");
+    maxSentencesOption.setLongOpt(FLAG_MAX_SENTENCES);
+    maxSentencesOption.setArgName("num");
+    options.addOption(maxSentencesOption);
+
     return options;
   }
   
+  private static String toString(final int limit) {
+    return limit == NO_LIMIT ? "none" : String.valueOf(limit);
+  }
+  
   public static void main(final String[] args) throws Exception {
     HtmlSentenceExtractor.main(args, JerichoHtmlSentenceExtractor.class);
   }
 
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   BUDGET                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * What is left of the budget for extracting one page.
+   */
+  private static final class PageBudget {
+
+    private long remainingRenderedLength;
+
+    private int remainingParagraphs;
+
+    private int remainingSentences;
+
+    private PageBudget(final int maxRenderedLength, final int maxParagraphs,
+        final int maxSentences) {
+      this.remainingRenderedLength =
+          maxRenderedLength == NO_LIMIT ? Long.MAX_VALUE : maxRenderedLength;
+      this.remainingParagraphs =
+          maxParagraphs == NO_LIMIT ? Integer.MAX_VALUE : maxParagraphs;
+      this.remainingSentences =
+          maxSentences == NO_LIMIT ? Integer.MAX_VALUE : maxSentences;
+    }
+
+    /**
+     * Takes a rendered paragraph from the budget, or returns the counter of
+     * the exceeded limit if it does not fit.
+     */
+    private BudgetCounter addParagraph(final String paragraph) {
+      if (this.remainingParagraphs == 0) {
+        return BudgetCounter.PARAGRAPHS_TRUNCATED;
+      }
+      if (paragraph.length() > this.remainingRenderedLength) {
+        return BudgetCounter.RENDERED_TEXT_TRUNCATED;
+      }
+      --this.remainingParagraphs;
+      this.remainingRenderedLength -= paragraph.length();
+      return null;
+    }
+
+    /**
+     * Takes up to given number of sentences from the budget and returns how
+     * many were taken.
+     */
+    private int takeSentences(final int numSentences) {
+      final int numTaken = Math.min(numSentences, this.remainingSentences);
+      this.remainingSentences -= numTaken;
+      return numTaken;
+    }
+
+  }
+
+  /**
+   * Thrown to stop rendering a page when its budget is exhausted.
+   */
+  private static final class BudgetExhaustedException
+  extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private BudgetExhaustedException() {
+      super("Budget exhausted", null, false, false);
+    }
+
+  }
+
 }
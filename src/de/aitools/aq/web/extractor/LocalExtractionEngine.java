@@ -0,0 +1,633 @@
+package de.aitools.aq.web.extractor;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+import de.aitools.aq.text.Segmenters;
+import edu.cmu.lemurproject.WarcDecompressor;
+import edu.cmu.lemurproject.WarcRecord;
+
+/**
+ * Extracts sentences from local HTML and WARC files in parallel at the
+ * granularity of single pages.
+ *
+ * <p>
+ * Reader threads take the input files from a queue, split them into pages
+ * (one per HTML file and one per HTML response record in a WARC file), and put
+ * them into a bounded queue. Worker threads take the pages from this queue,
+ * decode the HTML of WARC records, and extract their sentences. As the queue
+ * is bounded, the readers wait when the workers can not keep up, so that only
+ * few pages are in memory at once. As pages rather than files are distributed
+ * and the readers only separate the records, all workers are busy even if the
+ * input is a single large WARC file.
+ * </p><p>
+ * By default, each worker writes the sentences of the pages it extracted to
+ * its own file (<tt>part-m-&lt;id&gt;</tt>), so the order of the pages in the
+ * output is not the input order. With {@link #setOrderedOutput(boolean)}, the
+ * sentences of all pages are instead written in input order to a single file
+ * <tt>part-m-00000</tt>. In this case, the number of pages that are read but
+ * not yet written is bounded, so that a slow page stalls the readers rather
+ * than filling the memory.
+ * </p><p>
+ * Alternatively, the engine can start one thread per page from a given
+ * factory instead of using a fixed number of workers (see
+ * {@link #setPageThreadFactory(ThreadFactory)}). This is intended for virtual
+ * threads (see {@link #getVirtualThreadFactory()}), which are cheap to create
+ * and to block. The readers then also run on such threads, and a semaphore
+ * limits the number of pages that are extracted at once to the number of
+ * workers. As each page gets a new thread, per-thread caches like those of
+ * {@link Segmenters} only last for one page.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+final class LocalExtractionEngine {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The default number of pages per worker that can wait in the queue.
+   */
+  public static final int DEFAULT_QUEUE_CAPACITY_PER_WORKER = 4;
+
+  private static final Page END_OF_INPUT =
+      new Page(-1, null, null, null, null, null, null);
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final HtmlSentenceExtractor extractor;
+
+  private final File outputDirectory;
+
+  private final boolean writeNames;
+
+  private final WarcDecompressor decompressor;
+
+  private int numReaders;
+
+  private int numWorkers;
+
+  private int queueCapacityPerWorker;
+
+  private boolean orderedOutput;
+
+  private ThreadFactory pageThreadFactory;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new engine with one reader and one worker that writes the
+   * sentences in no particular order.
+   * @param extractor The extractor to use by all workers
+   * @param outputDirectory The directory to write the output files to
+   * @param writeNames Whether to write the names of the pages before their
+   * sentences (see {@link HtmlSentenceExtractor#FLAG_WRITE_NAMES})
+   * @param decompressor The decompressor for gzipped WARC files
+   */
+  public LocalExtractionEngine(final HtmlSentenceExtractor extractor,
+      final File outputDirectory, final boolean writeNames,
+      final WarcDecompressor decompressor) {
+    if (extractor == null) { throw new NullPointerException(); }
+    if (outputDirectory == null) { throw new NullPointerException(); }
+    if (decompressor == null) { throw new NullPointerException(); }
+    this.extractor = extractor;
+    this.outputDirectory = outputDirectory;
+    this.writeNames = writeNames;
+    this.decompressor = decompressor;
+    this.setNumReaders(1);
+    this.setNumWorkers(1);
+    this.setQueueCapacityPerWorker(DEFAULT_QUEUE_CAPACITY_PER_WORKER);
+    this.setOrderedOutput(false);
+    this.setPageThreadFactory(null);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets a factory for virtual threads, or <tt>null</tt> if the Java runtime
+   * does not support them (before Java 21).
+   * <p>
+   * The factory is obtained by reflection, as this code is compiled for
+   * Java 8.
+   * </p>
+   */
+  public static ThreadFactory getVirtualThreadFactory() {
+    try {
+      final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+          .getMethod("factory").invoke(builder);
+    } catch (final ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the number of threads that read input files. Only one reader is used
+   * for ordered output.
+   */
+  public void setNumReaders(final int numReaders) {
+    if (numReaders <= 0) {
+      throw new IllegalArgumentException("Non-positive: " + numReaders);
+    }
+    this.numReaders = numReaders;
+  }
+
+  /**
+   * Sets the number of threads that extract sentences from pages.
+   */
+  public void setNumWorkers(final int numWorkers) {
+    if (numWorkers <= 0) {
+      throw new IllegalArgumentException("Non-positive: " + numWorkers);
+    }
+    this.numWorkers = numWorkers;
+  }
+
+  /**
+   * Sets the number of pages per worker that can wait in the queue between
+   * readers and workers.
+   */
+  public void setQueueCapacityPerWorker(final int queueCapacityPerWorker) {
+    if (queueCapacityPerWorker <= 0) {
+      throw new IllegalArgumentException(
+          "Non-positive: " + queueCapacityPerWorker);
+    }
+    this.queueCapacityPerWorker = queueCapacityPerWorker;
+  }
+
+  /**
+   * Sets whether the sentences of all pages are written in input order to a
+   * single file instead of to one file per worker.
+   */
+  public void setOrderedOutput(final boolean orderedOutput) {
+    this.orderedOutput = orderedOutput;
+  }
+
+  /**
+   * Sets the factory from which to create one reader thread per input file and
+   * one thread per page, or <tt>null</tt> to use a fixed number of reader and
+   * worker threads that pass the pages through a queue.
+   * <p>
+   * With a factory, the number of workers (see {@link #setNumWorkers(int)})
+   * is the number of pages that are extracted at once, and the number of
+   * readers (see {@link #setNumReaders(int)}) the number of files that are
+   * read at once.
+   * </p><p>
+   * Each page is extracted on a new thread, so that data the extractor caches
+   * per thread (like the segmenters from {@link Segmenters}) is not reused
+   * across pages, but created again for each page. This is the price for
+   * threads that can block cheaply, like virtual threads.
+   * </p>
+   * @see #getVirtualThreadFactory()
+   */
+  public void setPageThreadFactory(final ThreadFactory pageThreadFactory) {
+    this.pageThreadFactory = pageThreadFactory;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Extracts the sentences of all pages in the input files and waits until
+   * they are written.
+   * @param inputFileNames The HTML and WARC files to read; the readers remove
+   * the names from the queue
+   * @throws IOException If an output file could not be written
+   * @throws InterruptedException If interrupted while waiting
+   */
+  public void run(final Queue<String> inputFileNames)
+  throws IOException, InterruptedException {
+    final int queueCapacity = this.numWorkers * this.queueCapacityPerWorker;
+    final AtomicReference<IOException> writeError = new AtomicReference<>();
+
+    final Sequencer sequencer;
+    final List<Writer> writers = new ArrayList<>();
+    if (this.orderedOutput) {
+      final Writer writer = this.openOutput(0);
+      writers.add(writer);
+      // pages in the queue, in extraction, or waiting for earlier pages
+      sequencer = new Sequencer(writer, 2 * queueCapacity + this.numWorkers);
+    } else {
+      for (int w = 0; w < this.numWorkers; ++w) {
+        writers.add(this.openOutput(w));
+      }
+      sequencer = null;
+    }
+
+    try {
+      if (this.pageThreadFactory == null) {
+        this.runWorkers(
+            inputFileNames, queueCapacity, writers, sequencer, writeError);
+      } else {
+        this.runThreadPerPage(inputFileNames, writers, sequencer, writeError);
+      }
+    } finally {
+      for (final Writer writer : writers) {
+        try {
+          writer.close();
+        } catch (final IOException e) {
+          writeError.compareAndSet(null, e);
+        }
+      }
+    }
+
+    if (writeError.get() != null) { throw writeError.get(); }
+  }
+
+  /**
+   * Runs readers that put the pages into a queue, from which a fixed number of
+   * workers take them.
+   */
+  private void runWorkers(final Queue<String> inputFileNames,
+      final int queueCapacity, final List<Writer> writers,
+      final Sequencer sequencer, final AtomicReference<IOException> writeError)
+  throws InterruptedException {
+    final BlockingQueue<Page> pages = new ArrayBlockingQueue<>(queueCapacity);
+    final AtomicLong numPages = new AtomicLong();
+    final int numReaders = this.orderedOutput ? 1 : this.numReaders;
+    final List<Thread> readers = new ArrayList<>(numReaders);
+    for (int r = 0; r < numReaders; ++r) {
+      readers.add(this.startThread(null, () -> {
+        try {
+          for (String inputFileName = inputFileNames.poll();
+              inputFileName != null;
+              inputFileName = inputFileNames.poll()) {
+            this.read(inputFileName, numPages, sequencer, pages::put);
+          }
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+    }
+
+    final List<Thread> workers = new ArrayList<>(this.numWorkers);
+    for (int w = 0; w < this.numWorkers; ++w) {
+      final Writer writer = this.orderedOutput ? null : writers.get(w);
+      workers.add(this.startThread(null, () -> {
+        try {
+          for (Page page = pages.take(); page != END_OF_INPUT;
+              page = pages.take()) {
+            this.process(page, writer, sequencer, writeError);
+          }
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+    }
+
+    for (final Thread reader : readers) {
+      reader.join();
+    }
+    for (int w = 0; w < this.numWorkers; ++w) {
+      pages.put(END_OF_INPUT);
+    }
+    for (final Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  /**
+   * Runs one thread per input file, which starts one thread per page, using
+   * the page thread factory.
+   */
+  private void runThreadPerPage(final Queue<String> inputFileNames,
+      final List<Writer> writers, final Sequencer sequencer,
+      final AtomicReference<IOException> writeError)
+  throws InterruptedException {
+    final ThreadFactory factory = this.pageThreadFactory;
+    final Semaphore readPermits =
+        new Semaphore(this.orderedOutput ? 1 : this.numReaders, true);
+    final Semaphore extractPermits = new Semaphore(this.numWorkers);
+    final BlockingQueue<Writer> idleWriters =
+        new ArrayBlockingQueue<>(writers.size(), false, writers);
+    final AtomicLong numPages = new AtomicLong();
+
+    final List<Thread> readers = new ArrayList<>();
+    for (final String inputFileName : inputFileNames) {
+      readers.add(this.startThread(factory, () -> {
+        try {
+          readPermits.acquire();
+          try {
+            this.read(inputFileName, numPages, sequencer, page -> {
+              extractPermits.acquire();
+              this.startThread(factory, () -> {
+                try {
+                  if (sequencer != null) {
+                    this.process(page, null, sequencer, writeError);
+                  } else {
+                    final Writer writer = idleWriters.take();
+                    try {
+                      this.process(page, writer, null, writeError);
+                    } finally {
+                      idleWriters.put(writer);
+                    }
+                  }
+                } catch (final InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                } finally {
+                  extractPermits.release();
+                }
+              });
+            });
+          } finally {
+            readPermits.release();
+          }
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+      // ordered output requires the files to be read in order
+      if (this.orderedOutput) { readers.get(readers.size() - 1).join(); }
+    }
+    inputFileNames.clear();
+
+    for (final Thread reader : readers) {
+      reader.join();
+    }
+    // wait for the running extractions
+    extractPermits.acquire(this.numWorkers);
+    extractPermits.release(this.numWorkers);
+  }
+
+  private Writer openOutput(final int id) throws IOException {
+    final File outputFile =
+        new File(this.outputDirectory, String.format("part-m-%05d", id));
+    return new BufferedWriter(new FileWriter(outputFile));
+  }
+
+  private Thread startThread(
+      final ThreadFactory factory, final Runnable runnable) {
+    final Thread thread =
+        factory == null ? new Thread(runnable) : factory.newThread(runnable);
+    thread.start();
+    return thread;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   READER                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private void read(final String inputFileName, final AtomicLong numPages,
+      final Sequencer sequencer, final PageSink pages)
+  throws InterruptedException {
+    final File inputFile = new File(inputFileName);
+    System.err.println("Extracting " + inputFileName);
+    try {
+      if (inputFileName.endsWith(".html") || inputFileName.endsWith(".htm")) {
+        this.enqueue(numPages, sequencer, pages,
+            FileUtils.readFileToString(inputFile), null, null, inputFileName,
+            null, null);
+      } else {
+        try (final Stream<WarcRecord> records =
+            Warcs.getRecords(inputFile, this.decompressor,
+                Warcs.createHtmlRecordFilter())) {
+          final InterruptedException[] interrupted =
+              new InterruptedException[1];
+          records.anyMatch(record -> {
+            // the record is decoded by the worker
+            try {
+              this.enqueue(numPages, sequencer, pages,
+                  null, null, record, inputFileName,
+                  Warcs.getTargetUri(record), Warcs.getTargetTrecId(record));
+              return false;
+            } catch (final InterruptedException e) {
+              interrupted[0] = e;
+              return true; // stop reading
+            }
+          });
+          if (interrupted[0] != null) { throw interrupted[0]; }
+        }
+      }
+    } catch (final IOException | RuntimeException e) {
+      // Continue with next
+      System.err.println("READ ERROR on " + inputFile + ": " + e.getMessage());
+    }
+  }
+
+  private void enqueue(final AtomicLong numPages, final Sequencer sequencer,
+      final PageSink pages, final String html, final Locale languageHint,
+      final WarcRecord record, final String inputFileName,
+      final String uri, final String trecId)
+  throws InterruptedException {
+    if (sequencer != null) { sequencer.awaitCapacity(); }
+    final Page page = new Page(numPages.getAndIncrement(),
+        html, languageHint, record, inputFileName, uri, trecId);
+    pages.accept(page);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   WORKER                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private void process(final Page page, final Writer writer,
+      final Sequencer sequencer, final AtomicReference<IOException> writeError) {
+    List<String> sentences;
+    try {
+      sentences = this.extract(page);
+    } catch (final Throwable e) {
+      // Also errors like a StackOverflowError on deeply nested markup: the
+      // page is still passed on, as the worker would otherwise die and the
+      // sequencer wait for the page forever
+      System.err.println("EXTRACTION ERROR on "
+          + (page.uri == null ? page.inputFileName : page.uri) + ": " + e);
+      sentences = Collections.emptyList();
+    }
+    try {
+      if (sequencer == null) {
+        if (writeError.get() == null) {
+          LocalExtractionEngine.write(
+              writer, page, sentences, this.writeNames);
+        }
+      } else {
+        sequencer.write(page, sentences, this.writeNames);
+      }
+    } catch (final IOException e) {
+      // keep processing pages so that the readers do not block
+      writeError.compareAndSet(null, e);
+    }
+  }
+
+  private List<String> extract(final Page page) {
+    String html = page.html;
+    Locale languageHint = page.languageHint;
+    if (page.record != null) {
+      final HtmlDocument document;
+      try {
+        document = Warcs.getHtmlDocument(
+            page.record, this.extractor.getContentSniffer(),
+            this.extractor.getCharsetResolver());
+      } catch (final Exception e) {
+        return Collections.emptyList(); // skip record
+      }
+      if (document == null) { return Collections.emptyList(); } // no HTML
+      html = document.getHtml();
+      languageHint = document.getContentLanguage();
+    }
+
+    try {
+      return this.extractor.extractSentences(html, languageHint);
+    } catch (final ExecutionException e) {
+      if (page.uri == null) {
+        System.err.println("EXTRACTION ERROR on parsing " + page.inputFileName
+            + ": " + e.getMessage());
+      }
+      return Collections.emptyList();
+    } catch (final RuntimeException e) {
+      return Collections.emptyList();
+    }
+  }
+
+  private static void write(final Writer writer, final Page page,
+      final List<String> sentences, final boolean writeNames)
+  throws IOException {
+    if (!sentences.isEmpty()) {
+      if (writeNames) {
+        writer.append("\n\n");
+        if (page.uri != null) { writer.append(page.uri); }
+        writer.append(' ');
+        if (page.trecId != null) { writer.append(page.trecId); }
+        writer.append(' ');
+        if (page.inputFileName != null) { writer.append(page.inputFileName); }
+        writer.append("\n");
+      }
+    }
+    for (final String sentence: sentences) {
+      writer.append(sentence).append('\n');
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               HELPER CLASSES                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Receives the pages from a reader.
+   */
+  private static interface PageSink {
+
+    public void accept(final Page page) throws InterruptedException;
+
+  }
+
+  /**
+   * A page to extract sentences from, given either as HTML or as a WARC record
+   * that still has to be decoded.
+   */
+  private static final class Page {
+
+    private final long sequenceNumber;
+
+    private final String html;
+
+    private final Locale languageHint;
+
+    private final WarcRecord record;
+
+    private final String inputFileName;
+
+    private final String uri;
+
+    private final String trecId;
+
+    private Page(final long sequenceNumber, final String html,
+        final Locale languageHint, final WarcRecord record,
+        final String inputFileName, final String uri, final String trecId) {
+      this.sequenceNumber = sequenceNumber;
+      this.html = html;
+      this.languageHint = languageHint;
+      this.record = record;
+      this.inputFileName = inputFileName;
+      this.uri = uri;
+      this.trecId = trecId;
+    }
+
+  }
+
+  /**
+   * Writes the sentences of pages in the order of their sequence numbers,
+   * holding back those of pages that were extracted before earlier pages.
+   */
+  private static final class Sequencer {
+
+    private final Writer writer;
+
+    private final Semaphore capacity;
+
+    private final Map<Long, List<String>> pendingSentences;
+
+    private final Map<Long, Page> pendingPages;
+
+    private long nextSequenceNumber;
+
+    private Sequencer(final Writer writer, final int capacity) {
+      this.writer = writer;
+      this.capacity = new Semaphore(capacity);
+      this.pendingSentences = new HashMap<>();
+      this.pendingPages = new HashMap<>();
+      this.nextSequenceNumber = 0;
+    }
+
+    /**
+     * Waits until a further page can be read without exceeding the number of
+     * pages that are read but not yet written.
+     */
+    private void awaitCapacity() throws InterruptedException {
+      this.capacity.acquire();
+    }
+
+    /**
+     * Writes the sentences of the page as soon as those of all earlier pages
+     * are written.
+     */
+    private synchronized void write(final Page page,
+        final List<String> sentences, final boolean writeNames)
+    throws IOException {
+      this.pendingPages.put(page.sequenceNumber, page);
+      this.pendingSentences.put(page.sequenceNumber, sentences);
+      while (this.pendingPages.containsKey(this.nextSequenceNumber)) {
+        final Page nextPage = this.pendingPages.remove(this.nextSequenceNumber);
+        final List<String> nextSentences =
+            this.pendingSentences.remove(this.nextSequenceNumber);
+        ++this.nextSequenceNumber;
+        this.capacity.release();
+        LocalExtractionEngine.write(
+            this.writer, nextPage, nextSentences, writeNames);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,149 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.Locale;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Decides whether sentences are extracted from a paragraph.
+ *
+ * <p>
+ * Filters that do not depend on the language of the paragraph should declare
+ * so using {@link #isLanguageIndependent()}. The
+ * {@link JerichoHtmlSentenceExtractor} applies such filters before it detects
+ * the language, and calls them with a <tt>null</tt> language. Within each
+ * group, filters are applied in the order of their {@link #getCost()}, so that
+ * cheap filters can reject a paragraph before expensive ones are applied.
+ * </p>
+ *
+ * @version $Date$
+ * @see JerichoHtmlSentenceExtractor#addParagraphFilter(ParagraphFilter)
+ *
+ */
+public interface ParagraphFilter extends BiPredicate<String, Locale> {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Cost of a filter that does not depend on the paragraph length.
+   */
+  public static final double COST_CONSTANT = 0;
+
+  /**
+   * Cost of a filter that iterates over the characters of the paragraph once.
+   */
+  public static final double COST_LINEAR = 1;
+
+  /**
+   * Cost of a filter that segments the paragraph or otherwise does multiple
+   * passes over the paragraph.
+   */
+  public static final double COST_SEGMENTING = 10;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether the decision of this filter does not depend on the language
+   * of the paragraph.
+   * <p>
+   * The default implementation returns <tt>false</tt>.
+   * </p>
+   */
+  public default boolean isLanguageIndependent() {
+    return false;
+  }
+
+  /**
+   * Gets the estimated cost of applying this filter relative to other filters,
+   * like {@link #COST_CONSTANT}, {@link #COST_LINEAR}, or
+   * {@link #COST_SEGMENTING}.
+   * <p>
+   * The default implementation returns {@link #COST_SEGMENTING}.
+   * </p>
+   */
+  public default double getCost() {
+    return COST_SEGMENTING;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether sentences should be extracted from given paragraph.
+   * @param paragraph The paragraph
+   * @param paragraphLanguage The language of the paragraph, or <tt>null</tt> if
+   * this filter {@link #isLanguageIndependent()}
+   */
+  @Override
+  public boolean test(final String paragraph, final Locale paragraphLanguage);
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  FACTORIES                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a language-independent filter.
+   * @param predicate The test for paragraphs
+   * @param cost The cost of the filter
+   */
+  public static ParagraphFilter languageIndependent(
+      final Predicate<String> predicate, final double cost) {
+    if (predicate == null) { throw new NullPointerException(); }
+    return new ParagraphFilter() {
+      @Override
+      public boolean test(
+          final String paragraph, final Locale paragraphLanguage) {
+        return predicate.test(paragraph);
+      }
+
+      @Override
+      public boolean isLanguageIndependent() {
+        return true;
+      }
+
+      @Override
+      public double getCost() {
+        return cost;
+      }
+    };
+  }
+
+  /**
+   * Creates a filter that accepts paragraphs with at least given number of
+   * characters.
+   */
+  public static ParagraphFilter minLength(final int minLengthInCharacters) {
+    return ParagraphFilter.languageIndependent(
+        paragraph -> paragraph.length() >= minLengthInCharacters,
+        COST_CONSTANT);
+  }
+
+  /**
+   * Creates a filter that accepts paragraphs in which at least given ratio of
+   * the characters that are not whitespace are letters.
+   */
+  public static ParagraphFilter minLetterRatio(final double minRatio) {
+    if (minRatio < 0 || minRatio > 1) {
+      throw new IllegalArgumentException("Ratio not in [0,1]: " + minRatio);
+    }
+    return ParagraphFilter.languageIndependent(paragraph -> {
+      int numLetters = 0;
+      int numNonWhitespace = 0;
+      for (int i = 0; i < paragraph.length(); ) {
+        final int codePoint = paragraph.codePointAt(i);
+        if (!Character.isWhitespace(codePoint)) {
+          ++numNonWhitespace;
+          if (Character.isLetter(codePoint)) { ++numLetters; }
+        }
+        i += Character.charCount(codePoint);
+      }
+      return numLetters >= minRatio * numNonWhitespace;
+    }, COST_LINEAR);
+  }
+
+}
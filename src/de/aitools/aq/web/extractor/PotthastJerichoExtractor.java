@@ -1,15 +1,16 @@
 package de.aitools.aq.web.extractor;
 
 import java.util.Collection;
-import java.util.List;
 import java.util.Locale;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 
+import de.aitools.aq.text.CompositeTextFilter;
 import de.aitools.aq.text.StopWordFilter;
 import de.aitools.aq.text.TextFilter;
+import de.aitools.aq.text.TextSpans;
 import de.aitools.aq.text.WordFilter;
 import de.aitools.aq.text.WordMatchFilter;
 
@@ -80,6 +81,8 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
   //////////////////////////////////////////////////////////////////////////////
   
   private int minParagraphLengthInCharacters;
+
+  private ParagraphFilter minParagraphLengthFilter;
   
   private StopWordFilter stopWordFilter;
   
@@ -89,6 +92,8 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
   
   private final TextFilter wordMatchTextFilter;
 
+  private final CompositeTextFilter sentenceFilter;
+
   //////////////////////////////////////////////////////////////////////////////
   //                                CONSTRUCTORS                              //
   //////////////////////////////////////////////////////////////////////////////
@@ -105,6 +110,8 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
     this.setMinStopWordsInSentence(DEFAULT_MIN_NUM_STOP_WORDS_IN_SENTENCE);
     this.wordMatchTextFilter = new TextFilter(this.wordMatchFilter);
     this.setMinMatchingWordRatioInSentence(DEFAULT_MIN_MATCHING_WORD_RATIO);
+    this.sentenceFilter = new CompositeTextFilter(
+        this.stopWordTextFilter, this.wordMatchTextFilter);
     this.setExtractLanguage(Locale.ENGLISH);
   }
 
@@ -122,11 +129,18 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
   
   /**
    * Sets the size threshold for paragraphs (in number of characters) to not be
-   * discarded.
+   * discarded. Paragraphs are checked against this threshold before their
+   * language is detected.
    */
   public void setMinParagraphLengthInCharacters(
       final int minParagraphLengthInCharacters) {
+    if (this.minParagraphLengthFilter != null) {
+      this.removeParagraphFilter(this.minParagraphLengthFilter);
+    }
     this.minParagraphLengthInCharacters = minParagraphLengthInCharacters;
+    this.minParagraphLengthFilter =
+        ParagraphFilter.minLength(minParagraphLengthInCharacters);
+    this.addParagraphFilter(this.minParagraphLengthFilter);
   }
   
   /**
@@ -230,20 +244,32 @@ public class PotthastJerichoExtractor extends JerichoHtmlSentenceExtractor {
   //////////////////////////////////////////////////////////////////////////////
   //                               FUNCTIONALITY                              //
   //////////////////////////////////////////////////////////////////////////////
-  
+
+  /**
+   * Checks the minimum paragraph length again. Paragraphs that reach this
+   * method already passed the same check as a paragraph filter before
+   * language detection, but subclasses may call it directly.
+   */
   @Override
   protected boolean isValidParagraph(
       final String paragraph, final Locale paragraphLanguage) {
     return paragraph.length() >= this.minParagraphLengthInCharacters;
   }
-  
+
   @Override
   protected boolean isValidSentence(
       final String sentence, final Locale paragraphLanguage) {
-    final List<String> words = WordFilter.toWords(sentence, paragraphLanguage);
+    return this.isValidSentence(
+        sentence, 0, sentence.length(), paragraphLanguage);
+  }
+
+  @Override
+  protected boolean isValidSentence(final String paragraph,
+      final int begin, final int end, final Locale paragraphLanguage) {
+    final TextSpans words =
+        WordFilter.toWordSpans(paragraph, begin, end, paragraphLanguage);
     
-    return this.stopWordTextFilter.test(words, paragraphLanguage)
-        && this.wordMatchTextFilter.test(words, paragraphLanguage);
+    return this.sentenceFilter.test(words, paragraphLanguage);
   }
 
   //////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,963 @@
+package de.aitools.aq.web.extractor;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import net.htmlparser.jericho.CharacterReference;
+import net.htmlparser.jericho.EndTag;
+import net.htmlparser.jericho.EndTagType;
+import net.htmlparser.jericho.HTMLElementName;
+import net.htmlparser.jericho.HTMLElements;
+import net.htmlparser.jericho.Renderer;
+import net.htmlparser.jericho.Segment;
+import net.htmlparser.jericho.StartTag;
+import net.htmlparser.jericho.StartTagType;
+import net.htmlparser.jericho.StreamedSource;
+import net.htmlparser.jericho.Tag;
+
+/**
+ * Renders the paragraphs of an HTML page in a single pass over the tags of a
+ * Jericho {@link StreamedSource}.
+ *
+ * <p>
+ * The paragraphs are the same as the non-empty lines of the text produced by
+ * a Jericho {@link Renderer} without maximum line length and hyperlink URLs,
+ * after sequences of whitespace characters are normalized to a single space
+ * and the lines are trimmed. Unlike the renderer, this class does not build
+ * the element hierarchy of the page or the rendered text of the entire page,
+ * but passes each paragraph to a consumer as soon as it is complete.
+ * </p><p>
+ * Element ends are determined using a stack of open elements and the
+ * terminating tags that {@link HTMLElements} defines for elements with
+ * optional end tag. Like in the renderer, elements whose required end tag is
+ * missing are treated as empty, and the text after a <tt>script</tt> start
+ * tag without end tag is parsed as markup again. Margins and indentation
+ * defined through the <tt>style</tt> attribute are ignored, which can only
+ * change where list bullets are placed.
+ * </p><p>
+ * Using {@link #renderWithLanguages(CharSequence, BiConsumer)}, each paragraph
+ * is passed together with the language declared by the <tt>lang</tt> (or
+ * <tt>xml:lang</tt>) attribute of the innermost element with such an attribute
+ * that is open where the paragraph starts.
+ * </p><p>
+ * Renderers can be used by several threads at once, but should not be
+ * configured while they are used.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class StreamingParagraphRenderer {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int HORIZONTAL_RULE_LENGTH = 72;
+
+  private static final int BLOCK_INDENT_SIZE = 4;
+
+  private static final int LIST_INDENT_SIZE = 6;
+
+  private static final char[] LIST_BULLETS = { '*', 'o', '+', '#' };
+
+  private static final String TABLE_CELL_SEPARATOR = " \t";
+
+  private static final int UNORDERED_LIST = -1;
+
+  private static final int NO_MARGIN = -1;
+
+  private static final String LANGUAGE_ATTRIBUTE = "lang";
+
+  private static final String XML_LANGUAGE_ATTRIBUTE = "xml:lang";
+
+  private static final Map<String, ElementRendering> ELEMENT_RENDERINGS =
+      StreamingParagraphRenderer.createElementRenderings();
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private boolean includeAlternateTexts;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new renderer that includes alternate texts.
+   */
+  public StreamingParagraphRenderer() {
+    this.setIncludeAlternateTexts(true);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether the alternate texts of images, inputs, and applets are
+   * rendered (in brackets).
+   */
+  public boolean includesAlternateTexts() {
+    return this.includeAlternateTexts;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets whether the alternate texts of images, inputs, and applets are
+   * rendered (in brackets).
+   */
+  public void setIncludeAlternateTexts(final boolean includeAlternateTexts) {
+    this.includeAlternateTexts = includeAlternateTexts;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Renders the paragraphs of given HTML.
+   * @param html The HTML
+   * @param paragraphConsumer Consumer that is called with each non-empty,
+   * whitespace-normalized paragraph in order
+   */
+  public void render(
+      final CharSequence html, final Consumer<String> paragraphConsumer) {
+    if (paragraphConsumer == null) { throw new NullPointerException(); }
+    this.renderWithLanguages(html,
+        (paragraph, declaredLanguage) -> paragraphConsumer.accept(paragraph));
+  }
+
+  /**
+   * Renders the paragraphs of given HTML together with the language declared
+   * for them.
+   * @param html The HTML
+   * @param paragraphConsumer Consumer that is called with each non-empty,
+   * whitespace-normalized paragraph in order, and the language declared for
+   * the element the paragraph starts in, or <tt>null</tt> if none is declared
+   */
+  public void renderWithLanguages(final CharSequence html,
+      final BiConsumer<String, Locale> paragraphConsumer) {
+    if (html == null) { throw new NullPointerException(); }
+    if (paragraphConsumer == null) { throw new NullPointerException(); }
+    new Processor(html, paragraphConsumer, this.includeAlternateTexts).run();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Checks whether given start tag has a language attribute, in which case it
+   * overrides the language of the enclosing element even if it is empty.
+   */
+  private static boolean declaresLanguage(final StartTag startTag) {
+    return startTag.getAttributeValue(LANGUAGE_ATTRIBUTE) != null
+        || startTag.getAttributeValue(XML_LANGUAGE_ATTRIBUTE) != null;
+  }
+
+  /**
+   * Gets the language declared by the attributes of given start tag, or
+   * <tt>null</tt> if none or an unknown one is declared.
+   */
+  private static Locale getDeclaredLanguage(final StartTag startTag) {
+    String tag = startTag.getAttributeValue(LANGUAGE_ATTRIBUTE);
+    if (tag == null) {
+      tag = startTag.getAttributeValue(XML_LANGUAGE_ATTRIBUTE);
+    }
+    if (tag == null) { return null; }
+    final Locale language = Locale.forLanguageTag(tag.trim());
+    if (language.getLanguage().isEmpty()) { return null; }
+    return language;
+  }
+
+  private static Map<String, ElementRendering> createElementRenderings() {
+    // same as the defaults of net.htmlparser.jericho.Renderer
+    final ElementRendering remove = new ElementRendering(Handling.REMOVE);
+    final ElementRendering alternateText =
+        new ElementRendering(Handling.ALTERNATE_TEXT);
+    final ElementRendering block00 = ElementRendering.block(0, 0, false);
+    final ElementRendering block11 = ElementRendering.block(1, 1, false);
+    final ElementRendering block21 = ElementRendering.block(2, 1, false);
+    final ElementRendering block00Indent = ElementRendering.block(0, 0, true);
+    final ElementRendering block11Indent = ElementRendering.block(1, 1, true);
+    final ElementRendering orderedList =
+        new ElementRendering(Handling.LIST, 0, 0, false, 0);
+    final ElementRendering unorderedList =
+        new ElementRendering(Handling.LIST, 0, 0, false, UNORDERED_LIST);
+    final ElementRendering tableCell =
+        new ElementRendering(Handling.TABLE_CELL);
+
+    final Map<String, ElementRendering> renderings = new HashMap<>();
+    renderings.put(HTMLElementName.ADDRESS, block00);
+    renderings.put(HTMLElementName.APPLET, alternateText);
+    renderings.put(HTMLElementName.BLOCKQUOTE, block11Indent);
+    renderings.put(HTMLElementName.BR,
+        new ElementRendering(Handling.LINE_BREAK));
+    renderings.put(HTMLElementName.BUTTON, remove);
+    renderings.put(HTMLElementName.CAPTION, block00);
+    renderings.put(HTMLElementName.CENTER, block11);
+    renderings.put(HTMLElementName.DD, block00Indent);
+    renderings.put(HTMLElementName.DIR, unorderedList);
+    renderings.put(HTMLElementName.DIV, block00);
+    renderings.put(HTMLElementName.DT, block00);
+    renderings.put(HTMLElementName.FIELDSET, block11);
+    renderings.put(HTMLElementName.FORM, block11);
+    renderings.put(HTMLElementName.H1, block21);
+    renderings.put(HTMLElementName.H2, block21);
+    renderings.put(HTMLElementName.H3, block21);
+    renderings.put(HTMLElementName.H4, block21);
+    renderings.put(HTMLElementName.H5, block21);
+    renderings.put(HTMLElementName.H6, block21);
+    renderings.put(HTMLElementName.HEAD, remove);
+    renderings.put(HTMLElementName.HR,
+        new ElementRendering(Handling.HORIZONTAL_RULE, 0, 0, false, 0));
+    renderings.put(HTMLElementName.IMG, alternateText);
+    renderings.put(HTMLElementName.INPUT, alternateText);
+    renderings.put(HTMLElementName.LEGEND, block00);
+    renderings.put(HTMLElementName.LI,
+        new ElementRendering(Handling.LIST_ITEM, 0, 0, false, 0));
+    renderings.put(HTMLElementName.MENU, unorderedList);
+    renderings.put(HTMLElementName.MAP, remove);
+    renderings.put(HTMLElementName.NOFRAMES, remove);
+    renderings.put(HTMLElementName.NOSCRIPT, remove);
+    renderings.put(HTMLElementName.OL, orderedList);
+    renderings.put(HTMLElementName.P, block11);
+    renderings.put(HTMLElementName.PRE,
+        new ElementRendering(Handling.PREFORMATTED, 1, 1, false, 0));
+    renderings.put(HTMLElementName.SCRIPT, remove);
+    renderings.put(HTMLElementName.SELECT, remove);
+    renderings.put(HTMLElementName.STYLE, remove);
+    renderings.put(HTMLElementName.TEXTAREA, remove);
+    renderings.put(HTMLElementName.TD, tableCell);
+    renderings.put(HTMLElementName.TH, tableCell);
+    renderings.put(HTMLElementName.TR, block00);
+    renderings.put(HTMLElementName.UL, unorderedList);
+    return Collections.unmodifiableMap(renderings);
+  }
+
+  /**
+   * Gets the position of the last end tag for each element name in the text.
+   */
+  private static Map<String, Integer> getLastEndTagPositions(
+      final CharSequence text) {
+    final Map<String, Integer> positions = new HashMap<>();
+    final int length = text.length();
+    for (int i = 0; i < length - 2; ++i) {
+      if (text.charAt(i) != '<' || text.charAt(i + 1) != '/') { continue; }
+      int end = i + 2;
+      while (end < length && StreamingParagraphRenderer.isNameChar(
+          text.charAt(end))) {
+        ++end;
+      }
+      if (end > i + 2) {
+        final String name = text.subSequence(i + 2, end).toString();
+        positions.put(name.toLowerCase(), i);
+      }
+      i = end - 1;
+    }
+    return positions;
+  }
+
+  private static boolean isNameChar(final char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+        || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == ':'
+        || c == '.';
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                INNER CLASSES                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static enum Handling {
+    INLINE,
+    REMOVE,
+    BLOCK,
+    LIST,
+    LIST_ITEM,
+    PREFORMATTED,
+    LINE_BREAK,
+    HORIZONTAL_RULE,
+    ALTERNATE_TEXT,
+    TABLE_CELL
+  }
+
+  private static final class ElementRendering {
+
+    private static final ElementRendering INLINE =
+        new ElementRendering(Handling.INLINE);
+
+    private final Handling handling;
+
+    private final int topMargin;
+
+    private final int bottomMargin;
+
+    private final int leftMargin;
+
+    private final int initialListBulletNumber;
+
+    public ElementRendering(final Handling handling) {
+      this(handling, 0, 0, false, 0);
+    }
+
+    public ElementRendering(final Handling handling,
+        final int topMargin, final int bottomMargin, final boolean indent,
+        final int initialListBulletNumber) {
+      this.handling = handling;
+      this.topMargin = topMargin;
+      this.bottomMargin = bottomMargin;
+      this.leftMargin = indent ? BLOCK_INDENT_SIZE : 0;
+      this.initialListBulletNumber = initialListBulletNumber;
+    }
+
+    public static ElementRendering block(
+        final int topMargin, final int bottomMargin, final boolean indent) {
+      return new ElementRendering(
+          Handling.BLOCK, topMargin, bottomMargin, indent, 0);
+    }
+
+    public static ElementRendering of(final String elementName) {
+      final ElementRendering rendering = ELEMENT_RENDERINGS.get(elementName);
+      return rendering == null ? INLINE : rendering;
+    }
+
+  }
+
+  private static final class OpenElement {
+
+    private final String name;
+
+    private final ElementRendering rendering;
+
+    private final Locale declaredLanguage;
+
+    private int savedListBulletNumber;
+
+    private boolean savedPreformatted;
+
+    public OpenElement(final String name, final ElementRendering rendering,
+        final Locale declaredLanguage) {
+      this.name = name;
+      this.rendering = rendering;
+      this.declaredLanguage = declaredLanguage;
+    }
+
+  }
+
+  /**
+   * Renders one page, using the same state as the processor of the Jericho
+   * renderer, where a new line completes a paragraph.
+   */
+  private static final class Processor {
+
+    private final CharSequence html;
+
+    private final BiConsumer<String, Locale> paragraphConsumer;
+
+    private final boolean includeAlternateTexts;
+
+    private final Map<String, Integer> lastEndTagPositions;
+
+    private final Deque<OpenElement> openElements;
+
+    private final StringBuilder paragraph;
+
+    private Locale paragraphLanguage;
+
+    private boolean pendingSpace;
+
+    private String skippedElementName;
+
+    private int skippedElementDepth;
+
+    private int offset;
+
+    // state of net.htmlparser.jericho.Renderer.Processor
+
+    private boolean atStartOfLine;
+
+    private boolean skipInitialNewLines;
+
+    private int col;
+
+    private int listIndentLevel;
+
+    private int indentSize;
+
+    private int blockVerticalMargin;
+
+    private boolean preformatted;
+
+    private boolean lastCharWhiteSpace;
+
+    private boolean bullet;
+
+    private int listBulletNumber;
+
+    public Processor(final CharSequence html,
+        final BiConsumer<String, Locale> paragraphConsumer,
+        final boolean includeAlternateTexts) {
+      this.html = html;
+      this.paragraphConsumer = paragraphConsumer;
+      this.includeAlternateTexts = includeAlternateTexts;
+      this.lastEndTagPositions =
+          StreamingParagraphRenderer.getLastEndTagPositions(html);
+      this.openElements = new ArrayDeque<>();
+      this.paragraph = new StringBuilder();
+      this.paragraphLanguage = null;
+      this.pendingSpace = false;
+      this.skippedElementName = null;
+      this.skippedElementDepth = 0;
+      this.offset = 0;
+
+      this.atStartOfLine = true;
+      this.skipInitialNewLines = true;
+      this.col = 0;
+      this.listIndentLevel = 0;
+      this.indentSize = 0;
+      this.blockVerticalMargin = NO_MARGIN;
+      this.preformatted = false;
+      this.lastCharWhiteSpace = false;
+      this.bullet = false;
+      this.listBulletNumber = 0;
+    }
+
+    public void run() {
+      int index = 0;
+      int restart = 0;
+      while (restart >= 0) {
+        this.offset = restart;
+        index = restart;
+        restart = -1;
+        final StreamedSource source = new StreamedSource(
+            this.html.subSequence(this.offset, this.html.length()));
+        source.setLogger(null);
+        for (final Segment segment : source) {
+          if (!(segment instanceof Tag)) { continue; }
+          final Tag tag = (Tag) segment;
+          if (this.skippedElementName != null) {
+            if (!this.continueSkipping(tag)) {
+              if (tag instanceof StartTag) {
+                this.processStartTag((StartTag) tag);
+              }
+              index = this.getEnd(tag);
+            }
+          } else {
+            this.appendSegment(index, this.getBegin(tag));
+            if (tag instanceof StartTag) {
+              final StartTag startTag = (StartTag) tag;
+              if (startTag.getStartTagType() == StartTagType.NORMAL) {
+                this.processStartTag(startTag);
+              }
+            } else {
+              final EndTag endTag = (EndTag) tag;
+              if (endTag.getEndTagType() == EndTagType.NORMAL) {
+                this.processEndTag(endTag);
+              }
+            }
+            index = this.getEnd(tag);
+          }
+          if (this.isUnterminatedScript(tag)) {
+            // the streamed source takes the rest as script content
+            restart = this.getEnd(tag);
+            break;
+          }
+        }
+      }
+      if (this.skippedElementName == null) {
+        this.appendSegment(index, this.html.length());
+      }
+      while (!this.openElements.isEmpty()) {
+        this.exitElement(this.openElements.pop());
+      }
+      this.completeParagraph();
+    }
+
+    /**
+     * Checks whether given tag starts a script element without end tag, which
+     * the Jericho renderer treats as empty while a {@link StreamedSource}
+     * reports the rest of the page as its content.
+     */
+    private boolean isUnterminatedScript(final Tag tag) {
+      if (!(tag instanceof StartTag)) { return false; }
+      final StartTag startTag = (StartTag) tag;
+      return startTag.getStartTagType() == StartTagType.NORMAL
+          && startTag.getName().equals(HTMLElementName.SCRIPT)
+          && !startTag.isEmptyElementTag()
+          && !this.hasEndTagAfter(HTMLElementName.SCRIPT, this.getEnd(tag));
+    }
+
+    private int getBegin(final Tag tag) {
+      return this.offset + tag.getBegin();
+    }
+
+    private int getEnd(final Tag tag) {
+      return this.offset + tag.getEnd();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Element structure
+
+    private void processStartTag(final StartTag startTag) {
+      final String name = startTag.getName();
+      this.closeTerminatedElements(name);
+
+      final ElementRendering rendering = ElementRendering.of(name);
+      final boolean hasContent = !startTag.isEmptyElementTag()
+          && !HTMLElements.getEndTagForbiddenElementNames().contains(name)
+          && (HTMLElements.getEndTagOptionalElementNames().contains(name)
+              || this.hasEndTagAfter(name, this.getEnd(startTag)));
+
+      switch (rendering.handling) {
+      case REMOVE:
+        if (hasContent) { this.startSkipping(name); }
+        return;
+      case ALTERNATE_TEXT:
+        this.appendAlternateText(startTag);
+        if (hasContent) { this.startSkipping(name); }
+        return;
+      case LINE_BREAK:
+        this.appendLineBreak();
+        return;
+      case HORIZONTAL_RULE:
+        this.blockBoundary(rendering.topMargin);
+        this.appendHorizontalRule();
+        this.blockBoundary(rendering.bottomMargin);
+        return;
+      default:
+        final Locale declaredLanguage =
+            StreamingParagraphRenderer.declaresLanguage(startTag)
+              ? StreamingParagraphRenderer.getDeclaredLanguage(startTag)
+              : this.getDeclaredLanguage();
+        final OpenElement element =
+            new OpenElement(name, rendering, declaredLanguage);
+        if (hasContent) {
+          // open before entering, so that list bullets get its language
+          this.openElements.push(element);
+          this.enterElement(element);
+        } else {
+          this.enterElement(element);
+          this.exitElement(element);
+        }
+      }
+    }
+
+    private void processEndTag(final EndTag endTag) {
+      final String name = endTag.getName();
+      boolean isOpen = false;
+      for (final OpenElement element : this.openElements) {
+        if (element.name.equals(name)) {
+          isOpen = true;
+          break;
+        }
+      }
+      if (!isOpen) { return; }
+
+      OpenElement element;
+      do {
+        element = this.openElements.pop();
+        this.exitElement(element);
+      } while (!element.name.equals(name));
+    }
+
+    /**
+     * Closes the open elements with optional end tag that are terminated by a
+     * start tag of given name.
+     */
+    private void closeTerminatedElements(final String startTagName) {
+      int depth = 0;
+      int terminatedDepth = -1;
+      final Iterator<OpenElement> elements = this.openElements.iterator();
+      while (elements.hasNext()) {
+        final OpenElement element = elements.next();
+        final Set<String> terminatingNames =
+            HTMLElements.getTerminatingStartTagNames(element.name);
+        if (terminatingNames != null
+            && terminatingNames.contains(startTagName)
+            && this.isNotShielded(element.name, depth)) {
+          terminatedDepth = depth;
+          break;
+        }
+        ++depth;
+      }
+      for (int d = 0; d <= terminatedDepth; ++d) {
+        this.exitElement(this.openElements.pop());
+      }
+    }
+
+    /**
+     * Checks that none of the <tt>depth</tt> innermost open elements prevents
+     * the termination of an element of given name.
+     */
+    private boolean isNotShielded(final String elementName, final int depth) {
+      final Set<String> nonterminatingNames =
+          HTMLElements.getNonterminatingElementNames(elementName);
+      if (nonterminatingNames == null || nonterminatingNames.isEmpty()) {
+        return true;
+      }
+      final Iterator<OpenElement> elements = this.openElements.iterator();
+      for (int d = 0; d < depth; ++d) {
+        if (nonterminatingNames.contains(elements.next().name)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets the language declared for the innermost open element.
+     */
+    private Locale getDeclaredLanguage() {
+      final OpenElement element = this.openElements.peek();
+      return element == null ? null : element.declaredLanguage;
+    }
+
+    private boolean hasEndTagAfter(final String name, final int position) {
+      final Integer lastEndTagPosition = this.lastEndTagPositions.get(name);
+      return lastEndTagPosition != null && lastEndTagPosition >= position;
+    }
+
+    private void startSkipping(final String name) {
+      this.skippedElementName = name;
+      this.skippedElementDepth = 1;
+    }
+
+    /**
+     * Checks whether the skipped element continues after given tag, and stops
+     * skipping if not.
+     */
+    private boolean continueSkipping(final Tag tag) {
+      final String name = this.skippedElementName;
+      if (tag instanceof StartTag) {
+        final StartTag startTag = (StartTag) tag;
+        if (startTag.getStartTagType() != StartTagType.NORMAL) { return true; }
+        final Set<String> terminatingNames =
+            HTMLElements.getTerminatingStartTagNames(name);
+        if (terminatingNames != null
+            && terminatingNames.contains(startTag.getName())) {
+          this.skippedElementName = null;
+          return false;
+        }
+        if (startTag.getName().equals(name)
+            && !startTag.isEmptyElementTag()) {
+          ++this.skippedElementDepth;
+        }
+      } else {
+        final EndTag endTag = (EndTag) tag;
+        if (endTag.getEndTagType() != EndTagType.NORMAL) { return true; }
+        if (endTag.getName().equals(name)) {
+          --this.skippedElementDepth;
+        } else {
+          final Set<String> terminatingNames =
+              HTMLElements.getTerminatingEndTagNames(name);
+          if (terminatingNames != null
+              && terminatingNames.contains(endTag.getName())) {
+            this.skippedElementName = null;
+            this.processEndTag(endTag);
+            return false;
+          }
+        }
+        if (this.skippedElementDepth == 0) {
+          this.skippedElementName = null;
+          // the end tag itself is removed
+          return false;
+        }
+      }
+      return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Element handlers of net.htmlparser.jericho.Renderer
+
+    private void enterElement(final OpenElement element) {
+      final ElementRendering rendering = element.rendering;
+      switch (rendering.handling) {
+      case BLOCK:
+      case LIST:
+      case LIST_ITEM:
+      case PREFORMATTED:
+        this.blockBoundary(rendering.topMargin);
+        this.indentSize += rendering.leftMargin;
+        break;
+      case TABLE_CELL:
+        if (!this.isBlockBoundary()) { this.append(TABLE_CELL_SEPARATOR); }
+        this.lastCharWhiteSpace = false;
+        return;
+      default:
+        return;
+      }
+
+      switch (rendering.handling) {
+      case LIST:
+        element.savedListBulletNumber = this.listBulletNumber;
+        this.listBulletNumber = rendering.initialListBulletNumber;
+        ++this.listIndentLevel;
+        break;
+      case LIST_ITEM:
+        if (this.listBulletNumber != UNORDERED_LIST) {
+          ++this.listBulletNumber;
+        }
+        this.bullet = true;
+        this.appendBlockVerticalMargin();
+        this.appendIndent();
+        this.skipInitialNewLines = true;
+        this.blockBoundary(0);
+        break;
+      case PREFORMATTED:
+        element.savedPreformatted = this.preformatted;
+        this.preformatted = true;
+        break;
+      default:
+        break;
+      }
+    }
+
+    private void exitElement(final OpenElement element) {
+      final ElementRendering rendering = element.rendering;
+      switch (rendering.handling) {
+      case LIST:
+        --this.listIndentLevel;
+        this.listBulletNumber = element.savedListBulletNumber;
+        break;
+      case LIST_ITEM:
+        this.bullet = false;
+        break;
+      case PREFORMATTED:
+        this.preformatted = element.savedPreformatted;
+        break;
+      case BLOCK:
+        break;
+      default:
+        return;
+      }
+      this.indentSize -= rendering.leftMargin;
+      this.blockBoundary(rendering.bottomMargin);
+    }
+
+    private void appendLineBreak() {
+      if (this.isBlockBoundary() && !this.atStartOfLine
+          && !this.skipInitialNewLines) {
+        this.newLine();
+      }
+      this.newLine();
+      this.blockBoundary(0);
+    }
+
+    private void appendHorizontalRule() {
+      this.appendBlockVerticalMargin();
+      this.append('-');
+      for (int i = this.col; i < HORIZONTAL_RULE_LENGTH; ++i) {
+        this.write('-');
+      }
+      this.col = HORIZONTAL_RULE_LENGTH;
+    }
+
+    private void appendAlternateText(final StartTag startTag) {
+      if (!this.includeAlternateTexts) { return; }
+      final String alt = startTag.getAttributeValue("alt");
+      if (alt == null || alt.isEmpty()) { return; }
+      this.appendText('[' + alt + ']');
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Text output of net.htmlparser.jericho.Renderer.Processor
+
+    private void appendSegment(final int begin, final int end) {
+      if (begin >= end) { return; }
+      if (this.preformatted) {
+        this.appendPreformattedSegment(begin, end);
+      } else {
+        this.appendNonPreformattedSegment(begin, end);
+      }
+    }
+
+    private void appendPreformattedSegment(final int begin, final int end) {
+      if (this.isBlockBoundary()) { this.appendBlockVerticalMargin(); }
+      final String text = CharacterReference.decode(
+          this.html.subSequence(begin, end), false);
+      for (int i = 0; i < text.length(); ++i) {
+        final char c = text.charAt(i);
+        if (c == '\n') {
+          this.newLine();
+        } else if (c == '\r') {
+          this.newLine();
+          if (i + 1 < text.length() && text.charAt(i + 1) == '\n') { ++i; }
+        } else {
+          this.append(c);
+        }
+      }
+    }
+
+    private void appendNonPreformattedSegment(final int begin, final int end) {
+      final String text = CharacterReference.decodeCollapseWhiteSpace(
+          this.html.subSequence(begin, end));
+      if (text.isEmpty()) {
+        this.lastCharWhiteSpace = true;
+        return;
+      }
+      this.appendNonPreformattedText(text,
+          Segment.isWhiteSpace(this.html.charAt(begin)),
+          Segment.isWhiteSpace(this.html.charAt(end - 1)));
+    }
+
+    private void appendText(final String text) {
+      this.appendNonPreformattedText(text,
+          Segment.isWhiteSpace(text.charAt(0)),
+          Segment.isWhiteSpace(text.charAt(text.length() - 1)));
+    }
+
+    private void appendNonPreformattedText(final String text,
+        final boolean isWhiteSpaceAtStart, final boolean isWhiteSpaceAtEnd) {
+      if (this.isBlockBoundary()) {
+        this.appendBlockVerticalMargin();
+      } else if (this.lastCharWhiteSpace || isWhiteSpaceAtStart) {
+        this.append(' ');
+      }
+      // without maximum line length, the text is appended as is
+      this.append(text);
+      this.lastCharWhiteSpace = isWhiteSpaceAtEnd;
+    }
+
+    private boolean isBlockBoundary() {
+      return this.blockVerticalMargin != NO_MARGIN;
+    }
+
+    private void appendBlockVerticalMargin() {
+      if (this.skipInitialNewLines) {
+        // at first text after <li> element or start of document
+        this.skipInitialNewLines = false;
+        final int indentCol =
+            this.indentSize + this.listIndentLevel * LIST_INDENT_SIZE;
+        if (this.col == indentCol) {
+          this.atStartOfLine = false;
+        } else if (this.bullet || this.col > indentCol) {
+          this.startNewLine(0);
+        } else {
+          this.col = indentCol;
+          this.atStartOfLine = false;
+        }
+      } else {
+        this.startNewLine(this.blockVerticalMargin);
+      }
+      this.blockVerticalMargin = NO_MARGIN;
+    }
+
+    private void blockBoundary(final int verticalMargin) {
+      if (this.blockVerticalMargin < verticalMargin) {
+        this.blockVerticalMargin = verticalMargin;
+      }
+    }
+
+    private void startNewLine(final int verticalMargin) {
+      // blank lines are empty paragraphs, which are not passed on
+      if (!this.atStartOfLine || verticalMargin > 0) {
+        this.completeParagraph();
+      }
+      this.atStartOfLine = true;
+      this.col = 0;
+    }
+
+    private void newLine() {
+      this.completeParagraph();
+      this.atStartOfLine = true;
+      this.col = 0;
+    }
+
+    private void appendTextInit() {
+      this.skipInitialNewLines = false;
+      if (this.atStartOfLine) { this.appendIndent(); }
+    }
+
+    private void appendIndent() {
+      if (this.bullet) {
+        if (this.listBulletNumber == UNORDERED_LIST) {
+          this.write(LIST_BULLETS[
+              (this.listIndentLevel - 1) % LIST_BULLETS.length]);
+        } else {
+          this.write(Integer.toString(this.listBulletNumber));
+          this.write('.');
+        }
+        this.write(' ');
+        this.bullet = false;
+      }
+      this.col = this.indentSize + this.listIndentLevel * LIST_INDENT_SIZE;
+      this.atStartOfLine = false;
+    }
+
+    private void append(final char c) {
+      this.appendTextInit();
+      this.write(c);
+      ++this.col;
+    }
+
+    private void append(final String text) {
+      this.appendTextInit();
+      this.write(text);
+      this.col += text.length();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    // Paragraph output
+
+    /**
+     * Adds the text to the paragraph, normalizing whitespace like
+     * {@link JerichoHtmlSentenceExtractor#normalizeWhitespace(String)}.
+     */
+    private void write(final CharSequence text) {
+      final int length = text.length();
+      for (int i = 0; i < length; ++i) {
+        this.write(text.charAt(i));
+      }
+    }
+
+    private void write(final char c) {
+      switch (c) {
+      case '\n':
+        // from a character reference: a line break in the rendered text
+        this.completeParagraph();
+        break;
+      case ' ':
+      case '\t':
+      case '\u000B':
+      case '\f':
+      case '\r':
+        if (this.paragraph.length() > 0) { this.pendingSpace = true; }
+        break;
+      default:
+        if (this.pendingSpace) {
+          this.paragraph.append(' ');
+          this.pendingSpace = false;
+        } else if (this.paragraph.length() == 0) {
+          this.paragraphLanguage = this.getDeclaredLanguage();
+        }
+        this.paragraph.append(c);
+      }
+    }
+
+    private void completeParagraph() {
+      if (this.paragraph.length() > 0) {
+        final String text = this.paragraph.toString().trim();
+        this.paragraph.setLength(0);
+        if (!text.isEmpty()) {
+          this.paragraphConsumer.accept(text, this.paragraphLanguage);
+        }
+      }
+      this.pendingSpace = false;
+    }
+
+  }
+
+}
@@ -1,18 +1,19 @@
 package de.aitools.aq.web.extractor;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
 import java.util.Locale;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.http.Header;
@@ -42,9 +43,14 @@ import org.apache.http.io.SessionInputBuffer;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HTTP;
-import org.apache.http.util.EntityUtils;
 
+import edu.cmu.lemurproject.MappedWarcRecordParser;
+import edu.cmu.lemurproject.WarcDecompressor;
+import edu.cmu.lemurproject.WarcHTMLResponseRecord;
 import edu.cmu.lemurproject.WarcRecord;
+import edu.cmu.lemurproject.WarcRecordFilter;
+import edu.cmu.lemurproject.WarcRecordParser;
+import edu.cmu.lemurproject.WarcRecordSource;
 
 /**
  * Utility class for handling WARC files.
@@ -59,11 +65,17 @@ public class Warcs {
   private static final Logger LOGGER =
       Logger.getLogger(Warcs.class.getName());
   
-  private static final Pattern HTML_CONTENT_TYPE_PATTERN = Pattern.compile(
-      "text/html.*");
-
   private static final String HEADER_CONTENT_TYPE = "Content-Type";
 
+  private static final String RESPONSE_TYPE = "response";
+
+  private static final String HEADER_TARGET_URI = "WARC-Target-URI";
+
+  private static final String HEADER_TREC_ID = "WARC-TREC-ID";
+
+  private static final CharsetResolver DEFAULT_CHARSET_RESOLVER =
+      new CharsetResolver();
+
   private final static InputStreamFactory GZIP = new InputStreamFactory() {
     @Override
     public InputStream create(final InputStream instream) throws IOException {
@@ -77,45 +89,117 @@ public class Warcs {
       return new DeflateInputStream(instream);
     }
   };
+
+  private final static Lookup<InputStreamFactory> DECODER_REGISTRY =
+      RegistryBuilder.<InputStreamFactory>create()
+        .register("gzip", GZIP)
+        .register("x-gzip", GZIP)
+        .register("deflate", DEFLATE)
+        .build();
   
   private Warcs() { }
 
   /**
    * Reads the WARC records from given input. If the file name ends in .gz, the
-   * WARC will be decompressed. 
+   * WARC will be decompressed using {@link WarcDecompressor#JDK}. Otherwise,
+   * the file is mapped into memory and the content of the records are slices
+   * of the mapping (see {@link MappedWarcRecordParser}).
+   * <p>
+   * The records are read lazily, so the returned stream should be closed
+   * after use (e.g., using a try-with-resources statement) to close the file.
+   * </p>
    */  
   public static Stream<WarcRecord> getRecords(final File input)
   throws IOException {
-    final InputStream inputStream = new FileInputStream(input);
+    return Warcs.getRecords(input, WarcDecompressor.JDK);
+  }
+
+  /**
+   * Reads the WARC records from given input. If the file name ends in .gz, the
+   * WARC will be decompressed using given decompressor. Otherwise, the file is
+   * mapped into memory and the content of the records are slices of the
+   * mapping (see {@link MappedWarcRecordParser}).
+   * <p>
+   * The records are read lazily, so the returned stream should be closed
+   * after use (e.g., using a try-with-resources statement) to close the file.
+   * </p>
+   */  
+  public static Stream<WarcRecord> getRecords(
+      final File input, final WarcDecompressor decompressor)
+  throws IOException {
+    return Warcs.getRecords(input, decompressor, null);
+  }
+
+  /**
+   * Reads the WARC records from given input that are accepted by given filter.
+   * If the file name ends in .gz, the WARC will be decompressed using given
+   * decompressor. Otherwise, the file is mapped into memory and the content of
+   * the records are slices of the mapping (see
+   * {@link MappedWarcRecordParser}).
+   * <p>
+   * The content of rejected records is skipped without being copied. The
+   * records are read lazily, so the returned stream should be closed after use
+   * (e.g., using a try-with-resources statement) to close the file.
+   * </p>
+   * @param filter The filter, or <tt>null</tt> to read all records
+   * @see #createHtmlRecordFilter()
+   */  
+  public static Stream<WarcRecord> getRecords(
+      final File input, final WarcDecompressor decompressor,
+      final WarcRecordFilter filter)
+  throws IOException {
+    if (decompressor == null) { throw new NullPointerException(); }
     if (input.getName().endsWith(".gz")) {
-      return Warcs.getRecords(new GZIPInputStream(inputStream));
+      final InputStream inputStream = new FileInputStream(input);
+      try {
+        final WarcRecordParser parser =
+            new WarcRecordParser(decompressor.open(inputStream));
+        parser.setFilter(filter);
+        return Warcs.getRecords(parser);
+      } catch (final IOException | RuntimeException e) {
+        inputStream.close();
+        throw e;
+      }
     } else {
-      return Warcs.getRecords(inputStream);
+      final MappedWarcRecordParser parser = new MappedWarcRecordParser(input);
+      parser.setFilter(filter);
+      return Warcs.getRecords(parser);
     }
   }
 
   /**
    * Reads the WARC records from given input.
+   * <p>
+   * The records are read lazily, one at a time, when the stream is consumed.
+   * Closing the returned stream closes the input. The input is also closed
+   * once its last record has been read.
+   * </p>
    */  
   public static Stream<WarcRecord> getRecords(final InputStream input)
   throws IOException {
-    return Warcs.getRecords(new DataInputStream(input));
+    return Warcs.getRecords(new WarcRecordParser(input));
   }
 
   /**
    * Reads the WARC records from given input.
+   * @see #getRecords(InputStream)
    */
   public static Stream<WarcRecord> getRecords(final DataInputStream input)
   throws IOException {
-    // TODO: do real streaming for large WARCs
-    final List<WarcRecord> records = new ArrayList<>();
-    WarcRecord record = WarcRecord.readNextWarcRecord(input);
-    while (record != null) {
-      records.add(record);
-      record = WarcRecord.readNextWarcRecord(input);
-    }
-    input.close();
-    return records.stream();
+    return Warcs.getRecords((InputStream) input);
+  }
+
+  /**
+   * Reads the WARC records from given source.
+   * <p>
+   * The records are read lazily, one at a time, when the stream is consumed.
+   * Closing the returned stream closes the source. The source is also closed
+   * once its last record has been read.
+   * </p>
+   */
+  public static Stream<WarcRecord> getRecords(final WarcRecordSource input) {
+    final WarcRecordSpliterator records = new WarcRecordSpliterator(input);
+    return StreamSupport.stream(records, false).onClose(records::close);
   }
 
   /**
@@ -125,12 +209,7 @@ public class Warcs {
    */
   public static Stream<String> getHtmlFromRecords(final File input)
   throws IOException {
-    final InputStream inputStream = new FileInputStream(input);
-    if (input.getName().endsWith(".gz")) {
-      return Warcs.getHtmlFromRecords(new GZIPInputStream(inputStream));
-    } else {
-      return Warcs.getHtmlFromRecords(inputStream);
-    }
+    return Warcs.getHtmlFromRecords(Warcs.getRecords(input));
   }
 
   /**
@@ -148,7 +227,12 @@ public class Warcs {
    */
   public static Stream<String> getHtmlFromRecords(final DataInputStream input)
   throws IOException {
-    return Warcs.getRecords(input)
+    return Warcs.getHtmlFromRecords(Warcs.getRecords(input));
+  }
+
+  private static Stream<String> getHtmlFromRecords(
+      final Stream<WarcRecord> records) {
+    return records
         .map(record -> {
             try {
               return Warcs.getHtml(record);
@@ -163,14 +247,56 @@ public class Warcs {
         .filter(record -> record != null);
   }
   
+  /**
+   * Gets the WARC-Target-URI of a response record, or <tt>null</tt> if it has
+   * none or is no response record. This is the same as
+   * {@link WarcHTMLResponseRecord#getTargetURI()}, but without copying the
+   * record.
+   */
+  public static String getTargetUri(final WarcRecord record) {
+    return Warcs.getResponseHeader(record, HEADER_TARGET_URI);
+  }
+
+  /**
+   * Gets the WARC-TREC-ID of a response record, or <tt>null</tt> if it has
+   * none or is no response record. This is the same as
+   * {@link WarcHTMLResponseRecord#getTargetTrecID()}, but without copying the
+   * record.
+   */
+  public static String getTargetTrecId(final WarcRecord record) {
+    return Warcs.getResponseHeader(record, HEADER_TREC_ID);
+  }
+
+  private static String getResponseHeader(
+      final WarcRecord record, final String key) {
+    if (!RESPONSE_TYPE.equalsIgnoreCase(record.getHeaderRecordType())) {
+      return null;
+    }
+    return record.getHeaderMetadataItem(key);
+  }
+
+  /**
+   * Creates a filter that rejects all records for which
+   * {@link #getHtml(WarcRecord)} would return <tt>null</tt> because they are
+   * no response records or have a content type other than HTML.
+   */
+  public static WarcRecordFilter createHtmlRecordFilter() {
+    final WarcRecordFilter filter = new WarcRecordFilter();
+    filter.setRecordTypes(RESPONSE_TYPE);
+    filter.setContentTypePattern(HttpPayload.HTML_CONTENT_TYPE_PATTERN);
+    return filter;
+  }
+  
   /**
    * Checks if this is a HTML response record.
+   * <p>
+   * Only the HTTP header is parsed for this (see {@link HttpPayload}).
+   * </p>
    */
   public static boolean isHtml(final WarcRecord record)
   throws HttpException, IOException {
-    if (record == null) { return false; }
-    final HttpResponse response = Warcs.toResponse(record);
-    return Warcs.isHtml(response);
+    final HttpPayload payload = HttpPayload.of(record);
+    return payload != null && payload.isHtml();
   }
   
   /**
@@ -179,11 +305,14 @@ public class Warcs {
   public static boolean isHtml(final HttpResponse response) {
     if (response == null) { return false; }
 
-    final String contentType =
-        response.getLastHeader(HEADER_CONTENT_TYPE).getValue();
+    final Header contentTypeHeader =
+        response.getLastHeader(HEADER_CONTENT_TYPE);
+    if (contentTypeHeader == null) { return false; } // no content type
+    final String contentType = contentTypeHeader.getValue();
     if (contentType == null) { return false; } // no content type
 
-    if (!HTML_CONTENT_TYPE_PATTERN.matcher(contentType).matches()) {
+    if (!HttpPayload.HTML_CONTENT_TYPE_PATTERN.matcher(contentType)
+        .matches()) {
       return false; // not HTML content type
     }
     
@@ -193,15 +322,75 @@ public class Warcs {
   /**
    * Gets the HTML part of a record or <tt>null</tt> if there is none or an
    * invalid one.
+   * <p>
+   * The charset is resolved by a default {@link CharsetResolver}, which does
+   * not use charset detection.
+   * </p>
+   * @see #getHtmlDocument(WarcRecord, CharsetResolver)
    */
   public static String getHtml(final WarcRecord record)
   throws ParseException, IOException, HttpException {
-    final HttpResponse response = Warcs.toResponse(record);
-    if (!Warcs.isHtml(response)) { return null; } // no HTML record
+    final HtmlDocument document =
+        Warcs.getHtmlDocument(record, DEFAULT_CHARSET_RESOLVER);
+    if (document == null) { return null; }
+    return document.getHtml();
+  }
 
-    final HttpEntity entity = response.getEntity();
-    final String defaultCharset = null;
-    return EntityUtils.toString(entity, defaultCharset);
+  /**
+   * Gets the decoded HTML part of a record or <tt>null</tt> if there is none or
+   * an invalid one.
+   * <p>
+   * The body is decoded once, using the charset determined by the resolver
+   * from the body and the charset of the Content-Type header.
+   * </p>
+   */
+  public static HtmlDocument getHtmlDocument(
+      final WarcRecord record, final CharsetResolver charsetResolver)
+  throws ParseException, IOException, HttpException {
+    return Warcs.getHtmlDocument(record, null, charsetResolver);
+  }
+
+  /**
+   * Gets the decoded HTML part of a record or <tt>null</tt> if there is none,
+   * an invalid one, or one rejected by the sniffer.
+   * <p>
+   * The sniffer checks the body before it is decoded, and may also accept
+   * responses without Content-Type header as HTML (see
+   * {@link ContentSniffer#setSniffMissingContentType(boolean)}). The body is
+   * then decoded once, using the charset determined by the resolver from the
+   * body and the charset of the Content-Type header. The language of the
+   * Content-Language header, if it names exactly one, is set as the
+   * {@link HtmlDocument#getContentLanguage()}.
+   * </p>
+   * @param record The record
+   * @param contentSniffer The sniffer, or <tt>null</tt> to not sniff
+   * @param charsetResolver The resolver
+   */
+  public static HtmlDocument getHtmlDocument(
+      final WarcRecord record, final ContentSniffer contentSniffer,
+      final CharsetResolver charsetResolver)
+  throws ParseException, IOException, HttpException {
+    if (charsetResolver == null) { throw new NullPointerException(); }
+    final HttpPayload payload = HttpPayload.of(record);
+    if (payload == null) { return null; } // no response
+    if (!payload.isHtml()) {
+      final boolean sniffable = payload.getContentType() == null
+          && contentSniffer != null
+          && contentSniffer.sniffsMissingContentType();
+      if (!sniffable) { return null; } // no HTML
+    }
+
+    final ByteBuffer body = payload.getBody();
+    if (contentSniffer != null) {
+      // responses without Content-Type need markup to be treated as HTML
+      final boolean requireMarkup =
+          contentSniffer.requiresMarkup() || !payload.isHtml();
+      if (!contentSniffer.test(body, requireMarkup)) {
+        return null; // does not look like HTML
+      }
+    }
+    return charsetResolver.decode(body, payload.getContentTypeCharset())
+        .withContentLanguage(payload.getContentLanguageLocale());
   }
 
   /**
@@ -212,12 +401,12 @@ public class Warcs {
   public static HttpResponse toResponse(final WarcRecord record)
   throws IOException, HttpException {
     // based on http://stackoverflow.com/a/26586178
-    if (!record.getHeaderRecordType().equals("response")) { return null; }
+    if (!record.getHeaderRecordType().equals(RESPONSE_TYPE)) { return null; }
     
     final SessionInputBufferImpl sessionInputBuffer =
         new SessionInputBufferImpl(new HttpTransportMetricsImpl(), 2048);
     final InputStream inputStream =
-        new ByteArrayInputStream(record.getByteContent());
+        new ByteBufferInputStream(record.getContentBuffer());
     sessionInputBuffer.bind(inputStream);
     final HttpParams params = new BasicHttpParams();
     final DefaultHttpResponseParser parser =
@@ -242,16 +431,10 @@ public class Warcs {
       final Header ceheader = entity.getContentEncoding();
       if (ceheader != null) {
         final HeaderElement[] codecs = ceheader.getElements();
-        final Lookup<InputStreamFactory> decoderRegistry =
-            RegistryBuilder.<InputStreamFactory>create()
-              .register("gzip", GZIP)
-              .register("x-gzip", GZIP)
-              .register("deflate", DEFLATE)
-              .build();
         for (final HeaderElement codec : codecs) {
           final String codecname = codec.getName().toLowerCase(Locale.ROOT);
           final InputStreamFactory decoderFactory =
-              decoderRegistry.lookup(codecname);
+              DECODER_REGISTRY.lookup(codecname);
           if (decoderFactory != null) {
             response.setEntity(new DecompressingEntity(
                 response.getEntity(), decoderFactory));
@@ -319,4 +502,56 @@ public class Warcs {
     return entity;
   }
 
+  /**
+   * Spliterator that reads one WARC record at a time from a stream.
+   */
+  private static class WarcRecordSpliterator
+  extends Spliterators.AbstractSpliterator<WarcRecord> {
+    
+    private final WarcRecordSource input;
+    
+    private boolean closed;
+    
+    public WarcRecordSpliterator(final WarcRecordSource input) {
+      super(Long.MAX_VALUE,
+          Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+      if (input == null) { throw new NullPointerException(); }
+      this.input = input;
+      this.closed = false;
+    }
+
+    @Override
+    public boolean tryAdvance(final Consumer<? super WarcRecord> action) {
+      if (this.closed) { return false; }
+      final WarcRecord record;
+      try {
+        record = this.input.readNextWarcRecord();
+      } catch (final IOException e) {
+        this.close();
+        throw new UncheckedIOException(e);
+      }
+      if (record == null) {
+        this.close();
+        return false;
+      }
+      action.accept(record);
+      return true;
+    }
+    
+    /**
+     * Closes the underlying input stream. Does nothing if it is already closed.
+     */
+    public void close() {
+      if (!this.closed) {
+        this.closed = true;
+        try {
+          this.input.close();
+        } catch (final IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    }
+    
+  }
+
 }
@@ -0,0 +1,307 @@
+package edu.cmu.lemurproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Reads {@link WarcRecord}s from an uncompressed WARC file by mapping the file
+ * into memory.
+ *
+ * <p>
+ * The content of each record is set as a read-only slice of the mapping (see
+ * {@link WarcRecord#getContentBuffer()}), so that it is not copied onto the
+ * heap unless {@link WarcRecord#getContent()} is called. The header lines are
+ * parsed like in {@link WarcRecordParser}.
+ * </p><p>
+ * Files larger than the mapping size are mapped in several regions, where
+ * each record lies completely in one region. If a {@link WarcRecordFilter} is
+ * set, the content of rejected records is not mapped at all (except for the
+ * prefix needed to test it). Instances are not thread-safe.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class MappedWarcRecordParser implements WarcRecordSource {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The default maximum number of bytes that are mapped at once.
+   */
+  public static final int DEFAULT_MAPPING_SIZE = Integer.MAX_VALUE;
+
+  private static final byte[] WARC_VERSION =
+      WarcRecord.WARC_VERSION.getBytes(StandardCharsets.US_ASCII);
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final RandomAccessFile file;
+
+  private final FileChannel channel;
+
+  private final long fileSize;
+
+  private final int mappingSize;
+
+  private MappedByteBuffer mapping;
+
+  private long mappingOffset;
+
+  private long position;
+
+  private byte[] line;
+
+  private WarcRecordFilter filter;
+
+  private ObjLongConsumer<WarcRecordFilter.Reason> skipListener;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new parser for given file that maps at most
+   * {@link #DEFAULT_MAPPING_SIZE} bytes at once.
+   */
+  public MappedWarcRecordParser(final File file) throws IOException {
+    this(file, DEFAULT_MAPPING_SIZE);
+  }
+
+  /**
+   * Creates a new parser for given file that maps at most given number of bytes
+   * at once (or more if a single record is larger).
+   */
+  public MappedWarcRecordParser(final File file, final int mappingSize)
+  throws IOException {
+    if (mappingSize <= 0) {
+      throw new IllegalArgumentException("Non-positive size: " + mappingSize);
+    }
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+    this.fileSize = this.channel.size();
+    this.mappingSize = mappingSize;
+    this.mapping = null;
+    this.mappingOffset = 0;
+    this.position = 0;
+    this.line = new byte[1024];
+    this.filter = null;
+    this.skipListener = null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the filter for the records to return.
+   * @param filter The filter, or <tt>null</tt> to return all records
+   */
+  public void setFilter(final WarcRecordFilter filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Sets the listener that is informed of each record rejected by the filter,
+   * together with the number of content bytes that were skipped.
+   * @param skipListener The listener, or <tt>null</tt> for none
+   */
+  public void setSkipListener(
+      final ObjLongConsumer<WarcRecordFilter.Reason> skipListener) {
+    this.skipListener = skipListener;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public WarcRecord readNextWarcRecord() throws IOException {
+    return this.readNextWarcRecord(new WarcRecord());
+  }
+
+  @Override
+  public WarcRecord readNextWarcRecord(final WarcRecord record)
+  throws IOException {
+    while (true) {
+      record.clear();
+      final int contentLength = this.readHeader(record);
+      if (contentLength == WarcRecordParser.NO_CONTENT_LENGTH) { return null; }
+      if (!this.skipLeadingLineBreaks(contentLength)) { return null; }
+      if (this.position + contentLength > this.fileSize) { return null; }
+
+      final WarcRecordFilter.Reason reason = this.test(record, contentLength);
+      if (reason != null) {
+        this.position += contentLength;
+        if (this.skipListener != null) {
+          this.skipListener.accept(reason, contentLength);
+        }
+      } else {
+        record.setContent(this.readContent(contentLength));
+        return record;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.mapping = null;
+    this.file.close();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Reads the WARC header into given record.
+   * @return The content length of the record or
+   * {@link WarcRecordParser#NO_CONTENT_LENGTH} if the file ended
+   */
+  private int readHeader(final WarcRecord record) throws IOException {
+    // find the WARC version line
+    boolean foundMark = false;
+    while (!foundMark) {
+      final int lineLength = this.readLine();
+      if (lineLength < 0) { return WarcRecordParser.NO_CONTENT_LENGTH; }
+      foundMark = WarcRecordParser.startsWith(
+          this.line, 0, lineLength, WARC_VERSION);
+    }
+
+    // read until we see the content length and then an empty line
+    int contentLength = WarcRecordParser.NO_CONTENT_LENGTH;
+    while (true) {
+      final int lineLength = this.readLine();
+      if (lineLength < 0) { return WarcRecordParser.NO_CONTENT_LENGTH; }
+      final int begin = WarcRecordParser.trimBegin(this.line, 0, lineLength);
+      final int end = WarcRecordParser.trimEnd(this.line, begin, lineLength);
+      if (begin < end) {
+        contentLength = WarcRecordParser.parseHeaderLine(
+            this.line, begin, end, record, contentLength);
+      } else if (contentLength >= 0) {
+        return contentLength;
+      }
+    }
+  }
+
+  /**
+   * Skips leading CR LF before the content, as
+   * {@link WarcRecord#readNextWarcRecord(java.io.DataInputStream)} does.
+   * @return Whether the file did not end
+   */
+  private boolean skipLeadingLineBreaks(final int contentLength)
+  throws IOException {
+    while (contentLength >= 2) {
+      if (this.position + 2 > this.fileSize) { return false; }
+      final int first = this.read();
+      final int second = this.read();
+      if (first != '\r' && second != '\n') {
+        this.position -= 2;
+        return true;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Tests the record whose content starts at the current position.
+   * @return The reason for rejecting the record, or <tt>null</tt> if it is
+   * accepted or there is no filter
+   */
+  private WarcRecordFilter.Reason test(
+      final WarcRecord record, final int contentLength)
+  throws IOException {
+    if (this.filter == null) { return null; }
+    final WarcRecordFilter.Reason reason = this.filter.testHeader(record);
+    if (reason != null || !this.filter.needsContent(record)) { return reason; }
+
+    final int length =
+        Math.min(contentLength, WarcRecordFilter.CONTENT_PREFIX_LENGTH);
+    if (this.line.length < length) { this.line = new byte[length]; }
+    this.map(this.position, length);
+    final ByteBuffer prefix = this.mapping.duplicate();
+    prefix.position((int) (this.position - this.mappingOffset));
+    prefix.get(this.line, 0, length);
+    return this.filter.testContent(this.line, 0, length);
+  }
+
+  private ByteBuffer readContent(final int contentLength) throws IOException {
+    this.map(this.position, contentLength);
+    final int begin = (int) (this.position - this.mappingOffset);
+    final ByteBuffer content = this.mapping.duplicate();
+    content.position(begin);
+    content.limit(begin + contentLength);
+    this.position += contentLength;
+    return content.slice();
+  }
+
+  /**
+   * Reads the next line into {@link #line} and returns its length (without the
+   * line feed), or -1 at the end of the file.
+   */
+  private int readLine() throws IOException {
+    if (this.position >= this.fileSize) { return -1; }
+    int length = 0;
+    while (this.position < this.fileSize) {
+      this.map(this.position, 1);
+      final int begin = (int) (this.position - this.mappingOffset);
+      final int end = this.mapping.limit();
+      int index = begin;
+      while (index < end && this.mapping.get(index) != '\n') { ++index; }
+
+      final int numBytes = index - begin;
+      if (length + numBytes > this.line.length) {
+        final byte[] grown =
+            new byte[Math.max(this.line.length * 2, length + numBytes)];
+        System.arraycopy(this.line, 0, grown, 0, length);
+        this.line = grown;
+      }
+      final ByteBuffer part = this.mapping.duplicate();
+      part.position(begin);
+      part.get(this.line, length, numBytes);
+      length += numBytes;
+      this.position += numBytes;
+
+      if (index < end) {
+        ++this.position; // line feed
+        break;
+      }
+    }
+    return length;
+  }
+
+  private int read() throws IOException {
+    this.map(this.position, 1);
+    final int value =
+        this.mapping.get((int) (this.position - this.mappingOffset)) & 0xFF;
+    ++this.position;
+    return value;
+  }
+
+  /**
+   * Ensures that the current mapping contains the given region, mapping a new
+   * region of the file starting at <tt>offset</tt> if needed.
+   */
+  private void map(final long offset, final int length) throws IOException {
+    if (this.mapping != null && offset >= this.mappingOffset
+        && offset + length <= this.mappingOffset + this.mapping.limit()) {
+      return;
+    }
+    final long size = Math.min(this.fileSize - offset,
+        Math.max((long) this.mappingSize, (long) length));
+    this.mapping =
+        this.channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    this.mappingOffset = offset;
+  }
+
+}
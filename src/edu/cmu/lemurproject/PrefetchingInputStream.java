@@ -0,0 +1,243 @@
+package edu.cmu.lemurproject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Input stream that reads another stream in a background thread.
+ *
+ * <p>
+ * The background thread reads the input in chunks and puts them into a bounded
+ * queue, from which this stream then serves the reads. This is meant for
+ * inputs for which reading is expensive (like decompressing), so that reading
+ * the next bytes happens while the current ones are processed. At most
+ * {@value #DEFAULT_CHUNK_SIZE} times {@value #DEFAULT_NUM_CHUNKS} bytes are
+ * read ahead by default. The buffers of chunks that have been read are
+ * handed back to the background thread for the next chunks, so that reading a
+ * large input allocates only a few buffers.
+ * </p><p>
+ * An exception thrown by the input is thrown by this stream once the chunks
+ * before it have been read. Closing this stream stops the background thread
+ * and closes the input. Instances are not thread-safe.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class PrefetchingInputStream extends InputStream {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The default number of bytes of a chunk.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+  /**
+   * The default number of chunks that are read ahead.
+   */
+  public static final int DEFAULT_NUM_CHUNKS = 4;
+
+  private static final Chunk END = new Chunk(new byte[0], 0, null);
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final InputStream input;
+
+  private final BlockingQueue<Chunk> chunks;
+
+  // Buffers of read chunks: one per queued chunk, plus the one being filled
+  // and the one being read
+  private final BlockingQueue<byte[]> freeBuffers;
+
+  private final Thread prefetcher;
+
+  private Chunk chunk;
+
+  private int position;
+
+  private boolean closed;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new stream that reads ahead up to {@link #DEFAULT_NUM_CHUNKS}
+   * chunks of {@link #DEFAULT_CHUNK_SIZE} bytes from given input.
+   */
+  public PrefetchingInputStream(final InputStream input) {
+    this(input, DEFAULT_CHUNK_SIZE, DEFAULT_NUM_CHUNKS);
+  }
+
+  /**
+   * Creates a new stream that reads ahead up to given number of chunks of given
+   * size from given input.
+   */
+  public PrefetchingInputStream(
+      final InputStream input, final int chunkSize, final int numChunks) {
+    if (input == null) { throw new NullPointerException(); }
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Non-positive size: " + chunkSize);
+    }
+    if (numChunks <= 0) {
+      throw new IllegalArgumentException("Non-positive number: " + numChunks);
+    }
+    this.input = input;
+    this.chunks = new ArrayBlockingQueue<>(numChunks);
+    this.freeBuffers = new ArrayBlockingQueue<>(numChunks + 2);
+    this.chunk = null;
+    this.position = 0;
+    this.closed = false;
+
+    this.prefetcher = new Thread(() -> this.prefetch(chunkSize),
+        PrefetchingInputStream.class.getSimpleName());
+    this.prefetcher.setDaemon(true);
+    this.prefetcher.start();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public int read() throws IOException {
+    if (!this.nextChunk()) { return -1; }
+    return this.chunk.bytes[this.position++] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] target, final int offset, final int length)
+  throws IOException {
+    if (length == 0) { return 0; }
+    if (!this.nextChunk()) { return -1; }
+    final int numRead = Math.min(length, this.chunk.length - this.position);
+    System.arraycopy(this.chunk.bytes, this.position, target, offset, numRead);
+    this.position += numRead;
+    return numRead;
+  }
+
+  @Override
+  public int available() {
+    if (this.chunk == null) { return 0; }
+    return this.chunk.length - this.position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (this.closed) { return; }
+    this.closed = true;
+    this.prefetcher.interrupt();
+    try {
+      this.prefetcher.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      this.chunks.clear();
+      this.input.close();
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Makes sure that {@link #chunk} has bytes left to read.
+   * @return Whether there are bytes left, or false at the end of the input
+   */
+  private boolean nextChunk() throws IOException {
+    if (this.closed) { throw new IOException("Stream closed"); }
+    while (this.chunk == null || this.position == this.chunk.length) {
+      if (this.chunk != null && this.chunk.length == 0) {
+        // END or an error
+        if (this.chunk.error != null) {
+          throw new IOException(this.chunk.error);
+        }
+        return false;
+      }
+      if (this.chunk != null) {
+        this.freeBuffers.offer(this.chunk.bytes);
+      }
+      try {
+        this.chunk = this.chunks.take();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      this.position = 0;
+    }
+    return true;
+  }
+
+  /**
+   * Reads the input into the queue until the input ends, an error occurs, or
+   * the thread is interrupted.
+   */
+  private void prefetch(final int chunkSize) {
+    try {
+      Chunk last = END;
+      try {
+        byte[] bytes = this.takeFreeBuffer(chunkSize);
+        int length = 0;
+        while (true) {
+          final int numRead =
+              this.input.read(bytes, length, bytes.length - length);
+          if (numRead < 0) { break; }
+          length += numRead;
+          if (length == bytes.length) {
+            this.chunks.put(new Chunk(bytes, length, null));
+            bytes = this.takeFreeBuffer(chunkSize);
+            length = 0;
+          }
+        }
+        if (length > 0) {
+          this.chunks.put(new Chunk(bytes, length, null));
+        }
+      } catch (final IOException | RuntimeException e) {
+        last = new Chunk(new byte[0], 0, e);
+      }
+      this.chunks.put(last);
+    } catch (final InterruptedException e) {
+      // closed
+    }
+  }
+
+  /**
+   * Gets the buffer of a chunk that has been read, or a new buffer if there is
+   * none.
+   */
+  private byte[] takeFreeBuffer(final int chunkSize) {
+    final byte[] bytes = this.freeBuffers.poll();
+    if (bytes == null) { return new byte[chunkSize]; }
+    return bytes;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                INNER CLASSES                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final class Chunk {
+
+    private final byte[] bytes;
+
+    private final int length;
+
+    private final Exception error;
+
+    private Chunk(final byte[] bytes, final int length, final Exception error) {
+      this.bytes = bytes;
+      this.length = length;
+      this.error = error;
+    }
+
+  }
+
+}
@@ -0,0 +1,381 @@
+package edu.cmu.lemurproject;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+
+/**
+ * Decompresses the WARC records of a gzipped WARC file whose first gzip
+ * member starts within a given byte range of the file.
+ *
+ * <p>
+ * This is meant for WARC files that are a concatenation of one gzip member per
+ * record (as is the case for CommonCrawl). If the range does not start at the
+ * beginning of the file, the stream seeks forward to the first gzip member
+ * whose decompressed content starts with {@value WarcRecord#WARC_VERSION}.
+ * It then decompresses member by member and ends before the first member that
+ * starts at or after the end of the range and starts a new record. Thus,
+ * consecutive ranges of a file yield every record exactly once.
+ * </p><p>
+ * Files that consist of a single gzip member can be read as well, but then
+ * only the range that contains the start of the file yields records.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class SplitGzipInputStream extends InputStream {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final byte[] WARC_MARK =
+      WarcRecord.WARC_VERSION.getBytes(StandardCharsets.US_ASCII);
+
+  private static final int MAGIC_1 = 0x1f;
+
+  private static final int MAGIC_2 = 0x8b;
+
+  private static final int METHOD_DEFLATE = 8;
+
+  private static final int FLAG_HEADER_CRC = 2;
+
+  private static final int FLAG_EXTRA = 4;
+
+  private static final int FLAG_NAME = 8;
+
+  private static final int FLAG_COMMENT = 16;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final FSDataInputStream input;
+
+  private final long end;
+
+  private final Inflater inflater;
+
+  private final CRC32 crc;
+
+  private final byte[] buffer;
+
+  private long bufferOffset;
+
+  private int position;
+
+  private int limit;
+
+  private boolean endOfInput;
+
+  private boolean inMember;
+
+  private boolean exhausted;
+
+  private final byte[] pending;
+
+  private int pendingPosition;
+
+  private int pendingLimit;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new stream that decompresses the records of given input whose
+   * gzip member starts in the range from <tt>start</tt> (inclusive) to
+   * <tt>end</tt> (exclusive).
+   * @throws IOException If seeking to the first member failed
+   */
+  public SplitGzipInputStream(
+      final FSDataInputStream input, final long start, final long end)
+  throws IOException {
+    if (input == null) { throw new NullPointerException(); }
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+    }
+    this.input = input;
+    this.end = end;
+    this.inflater = new Inflater(true);
+    this.crc = new CRC32();
+    this.buffer = new byte[BUFFER_SIZE];
+    this.pending = new byte[WARC_MARK.length];
+    this.seek(start);
+    if (start > 0) {
+      this.synchronize();
+    }
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the position in the compressed file up to which the input has been
+   * consumed.
+   */
+  public long getPosition() {
+    return this.bufferOffset + this.position;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public int read() throws IOException {
+    final byte[] single = new byte[1];
+    if (this.read(single, 0, 1) < 0) { return -1; }
+    return single[0] & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] target, final int offset, final int length)
+  throws IOException {
+    if (length == 0) { return 0; }
+    while (true) {
+      if (this.pendingPosition < this.pendingLimit) {
+        final int numRead =
+            Math.min(length, this.pendingLimit - this.pendingPosition);
+        System.arraycopy(
+            this.pending, this.pendingPosition, target, offset, numRead);
+        this.pendingPosition += numRead;
+        return numRead;
+      }
+      if (this.exhausted) { return -1; }
+
+      if (!this.inMember) {
+        if (!this.nextMember()) { this.exhausted = true; }
+      } else {
+        final int numRead = this.inflate(target, offset, length);
+        if (numRead > 0) { return numRead; }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.inflater.end();
+    this.input.close();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Seeks forward to the first member that starts a record.
+   */
+  private void synchronize() throws IOException {
+    while (true) {
+      final long candidate = this.findMagic();
+      if (candidate < 0) {
+        this.exhausted = true;
+        return;
+      }
+      try {
+        if (this.startsRecord()) { return; }
+      } catch (final IOException e) {
+        // no valid member at the candidate position
+      }
+      this.seek(candidate + 1);
+    }
+  }
+
+  /**
+   * Starts to decompress the next member.
+   * @return Whether the member belongs to the range of this stream
+   */
+  private boolean nextMember() throws IOException {
+    if (this.position == this.limit && !this.fill()) { return false; }
+    if (this.getPosition() < this.end) {
+      this.readHeader();
+      return true;
+    } else {
+      // continue only if the member continues the last record
+      if (this.startsRecord()) {
+        this.pendingLimit = 0;
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Starts to decompress the member at the current position and checks
+   * whether it starts a record. The checked bytes will be the next ones read.
+   */
+  private boolean startsRecord() throws IOException {
+    this.readHeader();
+    this.pendingPosition = 0;
+    this.pendingLimit = 0;
+    while (this.inMember && this.pendingLimit < this.pending.length) {
+      this.pendingLimit += Math.max(0, this.inflate(this.pending,
+          this.pendingLimit, this.pending.length - this.pendingLimit));
+    }
+    return Arrays.equals(this.pending, WARC_MARK)
+        && this.pendingLimit == this.pending.length;
+  }
+
+  /**
+   * Inflates bytes of the current member.
+   * @return The number of bytes inflated or -1 if the member ended
+   */
+  private int inflate(final byte[] target, final int offset, final int length)
+  throws IOException {
+    while (true) {
+      if (this.inflater.finished()) {
+        this.position = this.limit - this.inflater.getRemaining();
+        this.readTrailer();
+        this.inMember = false;
+        return -1;
+      }
+      if (this.inflater.needsInput()) {
+        if (this.position == this.limit && !this.fill()) {
+          throw new EOFException("Unexpected end of gzip member");
+        }
+        this.inflater.setInput(
+            this.buffer, this.position, this.limit - this.position);
+        this.position = this.limit;
+      }
+
+      final int numInflated;
+      try {
+        numInflated = this.inflater.inflate(target, offset, length);
+      } catch (final DataFormatException e) {
+        throw new ZipException(e.getMessage());
+      }
+      if (numInflated > 0) {
+        this.crc.update(target, offset, numInflated);
+        return numInflated;
+      }
+      if (this.inflater.needsDictionary()) {
+        throw new ZipException("Preset dictionaries are not supported");
+      }
+    }
+  }
+
+  private void readHeader() throws IOException {
+    if (this.readRawByte() != MAGIC_1 || this.readRawByte() != MAGIC_2
+        || this.readRawByte() != METHOD_DEFLATE) {
+      throw new ZipException("Not in GZIP format");
+    }
+    final int flags = this.readRawByte();
+    this.skipRawBytes(6); // modification time, extra flags, operating system
+    if ((flags & FLAG_EXTRA) != 0) {
+      this.skipRawBytes(this.readRawByte() | (this.readRawByte() << 8));
+    }
+    if ((flags & FLAG_NAME) != 0) {
+      while (this.readRawByte() != 0) { }
+    }
+    if ((flags & FLAG_COMMENT) != 0) {
+      while (this.readRawByte() != 0) { }
+    }
+    if ((flags & FLAG_HEADER_CRC) != 0) {
+      this.skipRawBytes(2);
+    }
+    this.inflater.reset();
+    this.crc.reset();
+    this.inMember = true;
+  }
+
+  private void readTrailer() throws IOException {
+    final long expectedCrc = this.readRawInt();
+    final long expectedSize = this.readRawInt();
+    if (expectedCrc != this.crc.getValue()
+        || expectedSize != (this.inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+      throw new ZipException("Corrupt GZIP trailer");
+    }
+  }
+
+  /**
+   * Finds the next position before the end of the range where a gzip member
+   * may start, or returns -1 if there is none.
+   */
+  private long findMagic() throws IOException {
+    while (this.getPosition() < this.end) {
+      while (this.limit - this.position < 3) {
+        if (!this.fill()) { return -1; }
+      }
+      if ((this.buffer[this.position] & 0xFF) == MAGIC_1
+          && (this.buffer[this.position + 1] & 0xFF) == MAGIC_2
+          && this.buffer[this.position + 2] == METHOD_DEFLATE) {
+        return this.getPosition();
+      }
+      ++this.position;
+    }
+    return -1;
+  }
+
+  private long readRawInt() throws IOException {
+    long value = 0;
+    for (int b = 0; b < 4; ++b) {
+      value |= ((long) this.readRawByte()) << (8 * b);
+    }
+    return value;
+  }
+
+  private int readRawByte() throws IOException {
+    if (this.position == this.limit && !this.fill()) {
+      throw new EOFException("Unexpected end of gzip member");
+    }
+    return this.buffer[this.position++] & 0xFF;
+  }
+
+  private void skipRawBytes(final int numBytes) throws IOException {
+    for (int b = 0; b < numBytes; ++b) {
+      this.readRawByte();
+    }
+  }
+
+  private void seek(final long offset) throws IOException {
+    this.input.seek(offset);
+    this.bufferOffset = offset;
+    this.position = 0;
+    this.limit = 0;
+    this.endOfInput = false;
+    this.inMember = false;
+    this.pendingPosition = 0;
+    this.pendingLimit = 0;
+  }
+
+  /**
+   * Reads more input into the buffer, moving the unread bytes to its front.
+   * @return Whether more bytes were read
+   */
+  private boolean fill() throws IOException {
+    if (this.endOfInput) { return false; }
+    if (this.position > 0) {
+      System.arraycopy(this.buffer, this.position,
+          this.buffer, 0, this.limit - this.position);
+      this.bufferOffset += this.position;
+      this.limit -= this.position;
+      this.position = 0;
+    }
+
+    int numRead = 0;
+    while (numRead == 0) {
+      numRead = this.input.read(
+          this.buffer, this.limit, this.buffer.length - this.limit);
+    }
+    if (numRead < 0) {
+      this.endOfInput = true;
+      return false;
+    }
+    this.limit += numRead;
+    return true;
+  }
+
+}
@@ -0,0 +1,52 @@
+package edu.cmu.lemurproject;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Hadoop FileInputFormat for reading WARC files that splits gzipped WARC files
+ * at gzip member boundaries.
+ *
+ * <p>
+ * This is meant for WARC files that are a concatenation of one gzip member per
+ * record, like the ones of CommonCrawl, so that a single large file is read by
+ * many mappers. Gzipped WARCs that consist of a single gzip member are still
+ * read correctly, but then by a single mapper. Uncompressed WARC files are not
+ * split and read by a {@link WarcFileRecordReader}.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class SplittableWarcFileInputFormat extends WarcFileInputFormat {
+
+  @Override
+  protected boolean isSplitable(final JobContext context, final Path filename) {
+    return SplittableWarcFileInputFormat.isGzipped(filename);
+  }
+
+  @Override
+  public RecordReader<LongWritable, WritableWarcRecord> createRecordReader(
+      final InputSplit split, final TaskAttemptContext context)
+  throws IOException, InterruptedException {
+    if (split instanceof FileSplit
+        && SplittableWarcFileInputFormat.isGzipped(
+            ((FileSplit) split).getPath())) {
+      return new SplittableWarcFileRecordReader();
+    } else {
+      return super.createRecordReader(split, context);
+    }
+  }
+
+  private static boolean isGzipped(final Path filename) {
+    return filename.getName().endsWith("gz");
+  }
+
+}
@@ -0,0 +1,159 @@
+package edu.cmu.lemurproject;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * A Hadoop record reader for a byte range of a gzipped WARC file that consists
+ * of one gzip member per record.
+ *
+ * <p>
+ * The reader reads all records whose gzip member starts within the range of
+ * the {@link FileSplit}, as described for {@link SplitGzipInputStream}. The
+ * keys are the numbers of the records within the split, starting at 1.
+ * </p><p>
+ * The gzip members are always decompressed by a {@link SplitGzipInputStream}.
+ * If the configured decompressor (see
+ * {@link WarcFileRecordReader#PARAM_DECOMPRESSOR}) is
+ * {@link WarcDecompressor#PREFETCHING}, this stream is read in a background
+ * thread by a {@link PrefetchingInputStream}. Records are filtered and reused
+ * like in {@link WarcFileRecordReader}.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class SplittableWarcFileRecordReader
+extends RecordReader<LongWritable, WritableWarcRecord> {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final LongWritable key;
+
+  private final WritableWarcRecord value;
+
+  private String path;
+
+  private long start;
+
+  private long end;
+
+  private long recordNumber;
+
+  private SplitGzipInputStream input;
+
+  private WarcRecordParser parser;
+
+  private boolean reuseRecords;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new reader that needs to be initialized before use.
+   */
+  public SplittableWarcFileRecordReader() {
+    this.key = new LongWritable();
+    this.value = new WritableWarcRecord();
+    this.path = null;
+    this.start = 0;
+    this.end = 0;
+    this.recordNumber = 0;
+    this.input = null;
+    this.parser = null;
+    this.reuseRecords = false;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public void initialize(
+      final InputSplit split, final TaskAttemptContext context)
+  throws IOException, InterruptedException {
+    if (!(split instanceof FileSplit)) {
+      throw new IOException("InputSplit is not a file split - aborting");
+    }
+    final FileSplit fileSplit = (FileSplit) split;
+    final Configuration configuration = context.getConfiguration();
+    final Path filePath = fileSplit.getPath();
+    final FileSystem fileSystem = filePath.getFileSystem(configuration);
+
+    this.path = filePath.toString();
+    this.start = fileSplit.getStart();
+    this.end = this.start + fileSplit.getLength();
+    this.input = new SplitGzipInputStream(
+        fileSystem.open(filePath), this.start, this.end);
+    if (WarcFileRecordReader.getDecompressor(configuration)
+        == WarcDecompressor.PREFETCHING) {
+      this.parser =
+          new WarcRecordParser(new PrefetchingInputStream(this.input));
+    } else {
+      this.parser = new WarcRecordParser(this.input);
+    }
+    this.parser.setFilter(WarcRecordFilter.fromConfiguration(configuration));
+    this.parser.setSkipListener(
+        WarcFileRecordReader.createSkipListener(context));
+    this.reuseRecords = configuration.getBoolean(
+        WarcFileRecordReader.PARAM_REUSE_RECORDS, false);
+  }
+
+  @Override
+  public boolean nextKeyValue() throws IOException, InterruptedException {
+    if (this.parser == null) { return false; }
+    if (this.reuseRecords) {
+      final WarcRecord record =
+          this.parser.readNextWarcRecord(this.value.getRecord());
+      if (record == null) { return false; }
+      record.setWarcFilePath(this.path);
+    } else {
+      final WarcRecord record = this.parser.readNextWarcRecord();
+      if (record == null) { return false; }
+      record.setWarcFilePath(this.path);
+      this.value.setRecord(record);
+    }
+    ++this.recordNumber;
+    this.key.set(this.recordNumber);
+    return true;
+  }
+
+  @Override
+  public LongWritable getCurrentKey() throws IOException, InterruptedException {
+    return this.key;
+  }
+
+  @Override
+  public WritableWarcRecord getCurrentValue()
+  throws IOException, InterruptedException {
+    return this.value;
+  }
+
+  @Override
+  public float getProgress() throws IOException, InterruptedException {
+    if (this.input == null || this.end == this.start) { return 0.0f; }
+    final float progress = (float) (this.input.getPosition() - this.start)
+        / (float) (this.end - this.start);
+    return Math.min(1.0f, Math.max(0.0f, progress));
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (this.parser != null) {
+      this.parser.close();
+      this.parser = null;
+    }
+  }
+
+}
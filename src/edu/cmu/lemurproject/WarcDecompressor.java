@@ -0,0 +1,149 @@
+package edu.cmu.lemurproject;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.io.compress.DecompressorStream;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.io.compress.zlib.ZlibFactory;
+
+/**
+ * The different ways of decompressing gzipped WARC files.
+ *
+ * <p>
+ * All decompressors read files that consist of several concatenated gzip
+ * members (like CommonCrawl WARCs) as well as files that consist of a single
+ * member.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public enum WarcDecompressor {
+
+  /**
+   * Uses the {@link GZIPInputStream} of the JDK with its default buffer size.
+   */
+  JDK {
+    @Override
+    public InputStream open(
+        final InputStream compressed, final Configuration configuration)
+    throws IOException {
+      return new GZIPInputStream(compressed);
+    }
+  },
+
+  /**
+   * Uses the {@link GZIPInputStream} of the JDK, but reads the compressed input
+   * in blocks of {@value WarcDecompressor#LARGE_BUFFER_SIZE} bytes. This reduces
+   * the number of calls to the input and to the native inflater.
+   */
+  LARGE_BUFFER {
+    @Override
+    public InputStream open(
+        final InputStream compressed, final Configuration configuration)
+    throws IOException {
+      return new GZIPInputStream(compressed, LARGE_BUFFER_SIZE);
+    }
+  },
+
+  /**
+   * Uses the {@link GzipCodec} of Hadoop with a pooled decompressor if the
+   * native zlib of Hadoop is loaded, and {@link #LARGE_BUFFER} otherwise.
+   */
+  HADOOP_NATIVE {
+    @Override
+    public InputStream open(
+        final InputStream compressed, final Configuration configuration)
+    throws IOException {
+      final Configuration conf =
+          configuration == null ? new Configuration() : configuration;
+      if (!ZlibFactory.isNativeZlibLoaded(conf)) {
+        return LARGE_BUFFER.open(compressed, conf);
+      }
+
+      final GzipCodec codec = new GzipCodec();
+      codec.setConf(conf);
+      final Decompressor decompressor = CodecPool.getDecompressor(codec);
+      return new FilterInputStream(new DecompressorStream(
+          compressed, decompressor, LARGE_BUFFER_SIZE)) {
+        private boolean closed = false;
+        @Override
+        public void close() throws IOException {
+          if (!this.closed) {
+            this.closed = true;
+            try {
+              super.close();
+            } finally {
+              CodecPool.returnDecompressor(decompressor);
+            }
+          }
+        }
+      };
+    }
+  },
+
+  /**
+   * Decompresses like {@link #LARGE_BUFFER}, but in a background thread that
+   * works ahead of the reading thread (see {@link PrefetchingInputStream}).
+   * Thus, the next records are decompressed while the current one is
+   * processed.
+   */
+  PREFETCHING {
+    @Override
+    public InputStream open(
+        final InputStream compressed, final Configuration configuration)
+    throws IOException {
+      return new PrefetchingInputStream(
+          LARGE_BUFFER.open(compressed, configuration));
+    }
+  };
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The size of the buffer for the compressed input of {@link #LARGE_BUFFER}
+   * and {@link #HADOOP_NATIVE}.
+   */
+  public static final int LARGE_BUFFER_SIZE = 1024 * 1024;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a stream that decompresses given gzipped input.
+   * <p>
+   * Closing the returned stream closes the input.
+   * </p>
+   * @param compressed The gzipped input
+   * @param configuration The Hadoop configuration to use, or <tt>null</tt> to
+   * use a default one if needed
+   * @return The decompressed stream
+   * @throws IOException If the input could not be read
+   */
+  public abstract InputStream open(
+      final InputStream compressed, final Configuration configuration)
+  throws IOException;
+
+  /**
+   * Creates a stream that decompresses given gzipped input.
+   * <p>
+   * Closing the returned stream closes the input.
+   * </p>
+   * @param compressed The gzipped input
+   * @return The decompressed stream
+   * @throws IOException If the input could not be read
+   */
+  public InputStream open(final InputStream compressed) throws IOException {
+    return this.open(compressed, null);
+  }
+
+}
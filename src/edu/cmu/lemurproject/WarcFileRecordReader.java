@@ -35,8 +35,9 @@
 package edu.cmu.lemurproject;
 
 import edu.cmu.lemurproject.WarcRecord;
-import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.ObjLongConsumer;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -44,28 +45,55 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
-import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
-import org.apache.hadoop.util.ReflectionUtils;
 
 public class WarcFileRecordReader extends RecordReader<LongWritable, WritableWarcRecord> {
   public static final Log LOG = LogFactory.getLog(WarcFileRecordReader.class);
 
+  /**
+   * Configuration key for the name of the {@link WarcDecompressor} used for
+   * gzipped files (default: HADOOP_NATIVE).
+   */
+  public static final String PARAM_DECOMPRESSOR = "warc.input.decompressor";
+
+  /**
+   * Name of the counter for the content bytes of the records that were skipped
+   * by the {@link WarcRecordFilter} (see
+   * {@link WarcRecordFilter#fromConfiguration(Configuration)}). The number of
+   * skipped records are counted per {@link WarcRecordFilter.Reason}.
+   */
+  public static final String COUNTER_SKIPPED_BYTES = "SKIPPED_BYTES";
+
+  /**
+   * Configuration key for whether the reader fills the same record for each
+   * call of {@link #nextKeyValue()} instead of creating a new one (default:
+   * false). The record then has to be copied if it is needed after the next
+   * call.
+   */
+  public static final String PARAM_REUSE_RECORDS = "warc.input.reuse-records";
+
   private long recordNumber=1;
 
   private Path[] filePathList=null;
   private int currentFilePath=-1;
 
   private FSDataInputStream currentFile=null;
-  private CompressionCodec compressionCodec=null;
-  private DataInputStream compressionInput=null;
+  private Configuration conf=null;
+  private WarcDecompressor decompressor=null;
+  private WarcRecordFilter filter=null;
+  private ObjLongConsumer<WarcRecordFilter.Reason> skipListener=null;
+  private boolean reuseRecords=false;
+  private String currentFilePathName=null;
+  private InputStream compressionInput=null;
+  private WarcRecordParser parser=null;
   private FileSystem fs=null;
   private long totalFileSize=0;
   private long totalNumBytesRead=0;
+  private long finishedFilesNumBytesRead=0;
 
   final LongWritable key = new LongWritable();
   final WritableWarcRecord value = new WritableWarcRecord();
@@ -83,7 +111,7 @@ public class WarcFileRecordReader extends RecordReader<LongWritable, WritableWar
     } else {
       throw new IOException("InputSplit is not a file split or a multi-file split - aborting");
     }
-    final Configuration conf = context.getConfiguration();
+    conf = context.getConfiguration();
     fs = this.filePathList[0].getFileSystem(conf);
     
     // get the total file sizes
@@ -91,15 +119,10 @@ public class WarcFileRecordReader extends RecordReader<LongWritable, WritableWar
       totalFileSize += fs.getFileStatus(filePathList[i]).getLen();
     }
 
-    Class<? extends CompressionCodec> codecClass=null;
-
-    try {
-      codecClass=conf.getClassByName("org.apache.hadoop.io.compress.GzipCodec").asSubclass(CompressionCodec.class);
-      compressionCodec=(CompressionCodec)ReflectionUtils.newInstance(codecClass, conf);
-    } catch (ClassNotFoundException cnfEx) {
-      compressionCodec=null;
-      LOG.info("!!! ClassNotFoun Exception thrown setting Gzip codec");
-    }
+    decompressor=getDecompressor(conf);
+    filter=WarcRecordFilter.fromConfiguration(conf);
+    skipListener=createSkipListener(context);
+    reuseRecords=conf.getBoolean(PARAM_REUSE_RECORDS, false);
 
     openNextFile();
   }
@@ -111,19 +134,29 @@ public class WarcFileRecordReader extends RecordReader<LongWritable, WritableWar
       } else if (currentFile!=null) {
         currentFile.close();
       }
+      if (parser!=null) {
+        finishedFilesNumBytesRead += parser.getPosition();
+      }
       currentFile=null;
       compressionInput=null;
+      parser=null;
 
       currentFilePath++;
       if (currentFilePath >= filePathList.length) { return false; }
 
       currentFile=this.fs.open(filePathList[currentFilePath]);
+      currentFilePathName=filePathList[currentFilePath].toString();
 
       // is the file gzipped?
-      if ((compressionCodec!=null) && (filePathList[currentFilePath].getName().endsWith("gz"))) {
-        compressionInput=new DataInputStream(compressionCodec.createInputStream(currentFile));
+      if (filePathList[currentFilePath].getName().endsWith("gz")) {
+        compressionInput=decompressor.open(currentFile, conf);
         LOG.info("Compression enabled");
+        parser=new WarcRecordParser(compressionInput);
+      } else {
+        parser=new WarcRecordParser(currentFile);
       }
+      parser.setFilter(filter);
+      parser.setSkipListener(skipListener);
 
     } catch (IOException ex) {
       LOG.info("IOError opening " + filePathList[currentFilePath].toString() + " - message: " + ex.getMessage());
@@ -132,37 +165,55 @@ public class WarcFileRecordReader extends RecordReader<LongWritable, WritableWar
     return true;
   }
 
-  public boolean next(LongWritable key, WritableWarcRecord value) throws IOException {
-    DataInputStream whichStream=null;
-    if (compressionInput!=null) {
-      whichStream=compressionInput;
-    } else if (currentFile!=null) {
-      whichStream=currentFile;
-    }
+  /**
+   * Gets the decompressor configured by {@link #PARAM_DECOMPRESSOR}.
+   */
+  public static WarcDecompressor getDecompressor(Configuration conf) {
+    return WarcDecompressor.valueOf(conf.get(PARAM_DECOMPRESSOR, WarcDecompressor.HADOOP_NATIVE.name()));
+  }
 
-    if (whichStream==null) { return false; }
+  /**
+   * Creates a listener for records skipped by a {@link WarcRecordFilter} that
+   * increments the counters of given context.
+   */
+  public static ObjLongConsumer<WarcRecordFilter.Reason> createSkipListener(TaskAttemptContext context) {
+    return (reason, numBytes) -> {
+      context.getCounter(reason).increment(1);
+      context.getCounter(WarcRecordFilter.Reason.class.getName(), COUNTER_SKIPPED_BYTES).increment(numBytes);
+    };
+  }
 
-    WarcRecord newRecord=WarcRecord.readNextWarcRecord(whichStream);
-    if (newRecord==null) {
-      // try advancing the file
-      if (openNextFile()) {
-        newRecord=WarcRecord.readNextWarcRecord(whichStream);
-      }
+  public boolean next(LongWritable key, WritableWarcRecord value) throws IOException {
+    if (parser==null) { return false; }
 
-      if (newRecord==null) { return false; }
+    WarcRecord newRecord=readNextWarcRecord(value);
+    while (newRecord==null) {
+      // try advancing the file
+      if (!openNextFile()) { return false; }
+      newRecord=readNextWarcRecord(value);
     }
 
-    totalNumBytesRead += (long)newRecord.getTotalRecordLength();
-    newRecord.setWarcFilePath(filePathList[currentFilePath].toString());
+    totalNumBytesRead=finishedFilesNumBytesRead + parser.getPosition();
+    newRecord.setWarcFilePath(currentFilePathName);
 
     // now, set our output variables
-    value.setRecord(newRecord);
+    if (!reuseRecords) {
+      value.setRecord(newRecord);
+    }
     key.set(recordNumber);
 
     recordNumber++;
     return true;
   }
 
+  private WarcRecord readNextWarcRecord(WritableWarcRecord value) throws IOException {
+    if (reuseRecords) {
+      return parser.readNextWarcRecord(value.getRecord());
+    } else {
+      return parser.readNextWarcRecord();
+    }
+  }
+
   public LongWritable createKey() {
     return new LongWritable();
   }
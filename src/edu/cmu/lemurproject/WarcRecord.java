@@ -51,6 +51,8 @@ import java.io.DataOutput;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
@@ -387,6 +389,9 @@ public class WarcRecord {
 
   private WarcHeader warcHeader=new WarcHeader();
   private byte[] warcContent=null;
+  private ByteBuffer warcContentBuffer=null;
+  private byte[] pooledContent=null;
+  private byte[] trimmedContent=null;
   private String warcFilePath="";
   
   public WarcRecord() {
@@ -395,17 +400,49 @@ public class WarcRecord {
   
   public WarcRecord(WarcRecord o) {
     this.warcHeader=new WarcHeader(o.warcHeader);
-    this.warcContent=o.warcContent;
+    this.warcContent=getSharableContent(o);
+    this.warcContentBuffer=o.warcContentBuffer;
+  }
+  
+  /**
+   * Gets the content array of given record to use in a copy of it. The array
+   * obtained by {@link #allocateContent(int)} is overwritten by the next
+   * record in reuse mode, so it is copied rather than shared.
+   */
+  private static byte[] getSharableContent(WarcRecord o) {
+    if ((o.warcContent!=null) && (o.warcContent==o.pooledContent)) {
+      return Arrays.copyOf(o.warcContent, o.warcHeader.contentLength);
+    }
+    return o.warcContent;
   }
   
   public int getTotalRecordLength() {
     int headerLength=warcHeader.toString().length();
-    return (headerLength + warcContent.length);
+    return (headerLength + warcHeader.contentLength);
   }
   
   public void set(WarcRecord o) {
     this.warcHeader=new WarcHeader(o.warcHeader);
-    this.warcContent=o.warcContent;
+    this.warcContent=getSharableContent(o);
+    this.warcContentBuffer=o.warcContentBuffer;
+    this.trimmedContent=null;
+  }
+  
+  /**
+   * Clears the header and content of this record so that it can be filled
+   * with the next record. The header metadata map and the content array
+   * obtained by {@link #allocateContent(int)} are kept for reuse.
+   */
+  public void clear() {
+    warcHeader.contentType="";
+    warcHeader.UUID="";
+    warcHeader.dateString="";
+    warcHeader.recordType="";
+    warcHeader.metadata.clear();
+    warcHeader.contentLength=0;
+    warcContent=null;
+    warcContentBuffer=null;
+    trimmedContent=null;
   }
   
   public String getWarcFilePath() {
@@ -466,29 +503,99 @@ public class WarcRecord {
   
   public void setContent(byte[] content) {
     warcContent=content;
+    warcContentBuffer=null;
+    trimmedContent=null;
     warcHeader.contentLength=content.length;
   }
+
+  /**
+   * Sets the content to the remaining bytes of given buffer without copying
+   * them. The buffer must not be modified afterwards.
+   */
+  public void setContent(ByteBuffer content) {
+    warcContent=null;
+    warcContentBuffer=content.slice();
+    trimmedContent=null;
+    warcHeader.contentLength=warcContentBuffer.remaining();
+  }
+  
+  /**
+   * Sets the content length and returns an array of at least that length
+   * into which the content has to be written. The array is owned by this
+   * record and reused by later calls, and only replaced by a larger one if it
+   * is too small. Hence the content is overwritten by the next record that is
+   * read into this record. Copies of this record (see
+   * {@link #WarcRecord(WarcRecord)} and {@link #set(WarcRecord)}) get their
+   * own copy of the content, so they can be kept.
+   */
+  public byte[] allocateContent(int length) {
+    if ((pooledContent==null) || (pooledContent.length < length)) {
+      pooledContent=new byte[length];
+    }
+    warcContent=pooledContent;
+    warcContentBuffer=null;
+    trimmedContent=null;
+    warcHeader.contentLength=length;
+    return pooledContent;
+  }
   
   public void setContent(String content) {
     setContent(content.getBytes());
   }
     public void setContentLength(int len) {
         warcHeader.contentLength=len;
+        trimmedContent=null;
   }
   
+  /**
+   * Gets the content as byte array. If the content was set as buffer, it is
+   * copied into a new array on the first call. If the content was written into
+   * the array of {@link #allocateContent(int)}, which the next record
+   * overwrites, or into a larger array, it is copied into a new array of the
+   * exact length on the first call after the content changed.
+   * <p>
+   * Use {@link #getContentBuffer()} to access the content without copying it.
+   * </p>
+   */
   public byte[] getContent() {
+    if ((warcContent==null) && (warcContentBuffer!=null)) {
+      warcContent=new byte[warcContentBuffer.remaining()];
+      warcContentBuffer.duplicate().get(warcContent);
+    }
+    if ((warcContent!=null) && ((warcContent==pooledContent)
+        || (warcContent.length!=warcHeader.contentLength))) {
+      if (trimmedContent==null) {
+        trimmedContent=Arrays.copyOf(warcContent, warcHeader.contentLength);
+      }
+      return trimmedContent;
+    }
     return warcContent;
   }
+  /**
+   * Same as {@link #getContent()}.
+   */
   public byte[] getByteContent() {
-    return warcContent;
+    return getContent();
+  }
+
+  /**
+   * Gets a read-only view of the content without copying it, or
+   * <tt>null</tt> if there is no content.
+   */
+  public ByteBuffer getContentBuffer() {
+    if (warcContentBuffer!=null) {
+      return warcContentBuffer.asReadOnlyBuffer();
+    }
+    if (warcContent==null) { return null; }
+    return ByteBuffer.wrap(warcContent, 0, warcHeader.contentLength).asReadOnlyBuffer();
   }
  
   public String getContentUTF8() {
     String retString=null;
     try {
-      retString = new String(warcContent, "UTF-8");
+      retString = new String(getContent(), "UTF-8");
     } catch (UnsupportedEncodingException ex) {
-      retString=new String(warcContent);
+      retString=new String(getContent());
     }
     return retString;
   }
@@ -502,7 +609,7 @@ public class WarcRecord {
     StringBuffer retBuffer=new StringBuffer();
     retBuffer.append(warcHeader.toString());
     retBuffer.append(LINE_ENDING);
-    retBuffer.append(new String(warcContent));
+    retBuffer.append(new String(getContent()));
     return retBuffer.toString();
   }
 
@@ -512,14 +619,17 @@ public class WarcRecord {
 
   public void write(DataOutput out) throws IOException {
     warcHeader.write(out);
-    out.write(warcContent);
+    if (warcContent!=null) {
+      out.write(warcContent, 0, warcHeader.contentLength);
+    } else {
+      out.write(getContent());
+    }
   }
   
   public void readFields(DataInput in) throws IOException {
     warcHeader.readFields(in);
     int contentLengthBytes=warcHeader.contentLength;
-    warcContent=new byte[contentLengthBytes];
-    in.readFully(warcContent);
+    in.readFully(allocateContent(contentLengthBytes), 0, contentLengthBytes);
   }
   
 }
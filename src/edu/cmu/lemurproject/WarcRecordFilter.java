@@ -0,0 +1,379 @@
+package edu.cmu.lemurproject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Filter for the records that a {@link WarcRecordSource} returns.
+ *
+ * <p>
+ * A parser that uses a filter tests each record right after parsing its WARC
+ * header. If the record is rejected, the parser skips over its content without
+ * allocating it. Records can be filtered by their WARC-Type, their
+ * WARC-Target-URI, and (for response records) by the Content-Type of the HTTP
+ * response. The latter is sniffed from the first
+ * {@value #CONTENT_PREFIX_LENGTH} bytes of the content, and the record is
+ * accepted if the HTTP header is longer than that.
+ * </p><p>
+ * A new filter accepts all records. The filter can also be stored in and read
+ * from a Hadoop {@link Configuration} (see {@link #configure(Configuration)}
+ * and {@link #fromConfiguration(Configuration)}).
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class WarcRecordFilter {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Configuration key for the accepted WARC-Types (comma-separated).
+   */
+  public static final String PARAM_RECORD_TYPES = "warc.input.filter.types";
+
+  /**
+   * Configuration key for the pattern the WARC-Target-URI has to match.
+   */
+  public static final String PARAM_TARGET_URI_PATTERN =
+      "warc.input.filter.target-uri";
+
+  /**
+   * Configuration key for the pattern the HTTP Content-Type has to match.
+   */
+  public static final String PARAM_CONTENT_TYPE_PATTERN =
+      "warc.input.filter.content-type";
+
+  /**
+   * Configuration key for whether to accept responses without Content-Type.
+   */
+  public static final String PARAM_ACCEPT_MISSING_CONTENT_TYPE =
+      "warc.input.filter.content-type.accept-missing";
+
+  /**
+   * The number of bytes of the content that are examined for the HTTP
+   * Content-Type.
+   */
+  public static final int CONTENT_PREFIX_LENGTH = 16 * 1024;
+
+  private static final String RESPONSE_TYPE = "response";
+
+  private static final String HEADER_TARGET_URI = "WARC-Target-URI";
+
+  private static final byte[] HEADER_CONTENT_TYPE =
+      "content-type".getBytes(StandardCharsets.US_ASCII);
+
+  /**
+   * The reasons for rejecting a record.
+   */
+  public static enum Reason {
+    /** The WARC-Type of the record is not accepted. */
+    RECORD_TYPE,
+    /** The WARC-Target-URI of the record is missing or not accepted. */
+    TARGET_URI,
+    /** The HTTP Content-Type of the response is missing or not accepted. */
+    CONTENT_TYPE
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Set<String> recordTypes;
+
+  private Pattern targetUriPattern;
+
+  private Pattern contentTypePattern;
+
+  private boolean acceptMissingContentType;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new filter that accepts all records.
+   */
+  public WarcRecordFilter() {
+    this.recordTypes = null;
+    this.targetUriPattern = null;
+    this.contentTypePattern = null;
+    this.acceptMissingContentType = true;
+  }
+
+  /**
+   * Creates the filter that is stored in given configuration.
+   * @return The filter or <tt>null</tt> if no filter is configured
+   * @see #configure(Configuration)
+   */
+  public static WarcRecordFilter fromConfiguration(
+      final Configuration configuration) {
+    final String[] recordTypes =
+        configuration.getTrimmedStrings(PARAM_RECORD_TYPES);
+    final String targetUriPattern = configuration.get(PARAM_TARGET_URI_PATTERN);
+    final String contentTypePattern =
+        configuration.get(PARAM_CONTENT_TYPE_PATTERN);
+    if (recordTypes.length == 0 && targetUriPattern == null
+        && contentTypePattern == null) {
+      return null;
+    }
+
+    final WarcRecordFilter filter = new WarcRecordFilter();
+    if (recordTypes.length > 0) {
+      filter.setRecordTypes(recordTypes);
+    }
+    if (targetUriPattern != null) {
+      filter.setTargetUriPattern(Pattern.compile(targetUriPattern));
+    }
+    if (contentTypePattern != null) {
+      filter.setContentTypePattern(Pattern.compile(contentTypePattern));
+    }
+    filter.setAcceptMissingContentType(configuration.getBoolean(
+        PARAM_ACCEPT_MISSING_CONTENT_TYPE, true));
+    return filter;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the accepted WARC-Types, or <tt>null</tt> if all are accepted.
+   */
+  public Set<String> getRecordTypes() {
+    return this.recordTypes;
+  }
+
+  /**
+   * Gets the pattern the WARC-Target-URI has to match, or <tt>null</tt> if
+   * all records are accepted regardless of their target URI.
+   */
+  public Pattern getTargetUriPattern() {
+    return this.targetUriPattern;
+  }
+
+  /**
+   * Gets the pattern the HTTP Content-Type of response records has to match,
+   * or <tt>null</tt> if all records are accepted regardless of their content
+   * type.
+   */
+  public Pattern getContentTypePattern() {
+    return this.contentTypePattern;
+  }
+
+  /**
+   * Checks whether response records without a HTTP Content-Type are accepted
+   * when a content type pattern is set.
+   */
+  public boolean acceptsMissingContentType() {
+    return this.acceptMissingContentType;
+  }
+
+  /**
+   * Checks whether this filter needs to look at the content of a record that
+   * passed {@link #testHeader(WarcRecord)}.
+   */
+  public boolean needsContent(final WarcRecord record) {
+    return this.contentTypePattern != null
+        && RESPONSE_TYPE.equals(record.getHeaderRecordType());
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Stores this filter in given configuration.
+   * @see #fromConfiguration(Configuration)
+   */
+  public void configure(final Configuration configuration) {
+    if (this.recordTypes == null) {
+      configuration.unset(PARAM_RECORD_TYPES);
+    } else {
+      configuration.setStrings(PARAM_RECORD_TYPES,
+          this.recordTypes.toArray(new String[this.recordTypes.size()]));
+    }
+    if (this.targetUriPattern == null) {
+      configuration.unset(PARAM_TARGET_URI_PATTERN);
+    } else {
+      configuration.set(PARAM_TARGET_URI_PATTERN,
+          this.targetUriPattern.pattern());
+    }
+    if (this.contentTypePattern == null) {
+      configuration.unset(PARAM_CONTENT_TYPE_PATTERN);
+    } else {
+      configuration.set(PARAM_CONTENT_TYPE_PATTERN,
+          this.contentTypePattern.pattern());
+    }
+    configuration.setBoolean(
+        PARAM_ACCEPT_MISSING_CONTENT_TYPE, this.acceptMissingContentType);
+  }
+
+  /**
+   * Sets the accepted WARC-Types (e.g., <tt>response</tt>).
+   * @param recordTypes The types, or <tt>null</tt> to accept all types
+   */
+  public void setRecordTypes(final String... recordTypes) {
+    if (recordTypes == null) {
+      this.recordTypes = null;
+    } else {
+      this.recordTypes = Collections.unmodifiableSet(
+          new HashSet<>(Arrays.asList(recordTypes)));
+    }
+  }
+
+  /**
+   * Sets the pattern the WARC-Target-URI of a record has to match completely.
+   * Records without target URI are rejected if a pattern is set.
+   * @param targetUriPattern The pattern, or <tt>null</tt> to accept all
+   * records regardless of their target URI
+   */
+  public void setTargetUriPattern(final Pattern targetUriPattern) {
+    this.targetUriPattern = targetUriPattern;
+  }
+
+  /**
+   * Sets the pattern the HTTP Content-Type of response records has to match
+   * completely. If the response has several Content-Type headers, the last
+   * one is used. Records of other WARC-Types are not affected.
+   * @param contentTypePattern The pattern, or <tt>null</tt> to accept all
+   * records regardless of their content type
+   */
+  public void setContentTypePattern(final Pattern contentTypePattern) {
+    this.contentTypePattern = contentTypePattern;
+  }
+
+  /**
+   * Sets whether response records without HTTP Content-Type are accepted when
+   * a content type pattern is set (default: true).
+   */
+  public void setAcceptMissingContentType(
+      final boolean acceptMissingContentType) {
+    this.acceptMissingContentType = acceptMissingContentType;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Tests a record for which only the WARC header has been parsed.
+   * @return The reason for rejecting the record, or <tt>null</tt> if it is
+   * accepted (which might still be rejected based on its content if
+   * {@link #needsContent(WarcRecord)})
+   */
+  public Reason testHeader(final WarcRecord record) {
+    if (this.recordTypes != null
+        && !this.recordTypes.contains(record.getHeaderRecordType())) {
+      return Reason.RECORD_TYPE;
+    }
+    if (this.targetUriPattern != null) {
+      final String targetUri = record.getHeaderMetadataItem(HEADER_TARGET_URI);
+      if (targetUri == null
+          || !this.targetUriPattern.matcher(targetUri).matches()) {
+        return Reason.TARGET_URI;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Tests a record that passed {@link #testHeader(WarcRecord)} and
+   * {@link #needsContent(WarcRecord)} based on the start of its content.
+   * @param content The array containing the start of the content
+   * @param offset The index of the first byte of the content
+   * @param length The number of available bytes of the content, which should
+   * be at least {@link #CONTENT_PREFIX_LENGTH} unless the content is shorter
+   * @return The reason for rejecting the record, or <tt>null</tt> if it is
+   * accepted
+   */
+  public Reason testContent(
+      final byte[] content, final int offset, final int length) {
+    if (this.contentTypePattern == null) { return null; }
+    final int end = offset + length;
+
+    // skip the status line
+    int lineBegin = WarcRecordFilter.nextLine(content, offset, end);
+    String contentType = null;
+    boolean inContentType = false;
+    while (true) {
+      final int lineEnd = WarcRecordFilter.findLineEnd(content, lineBegin, end);
+      if (lineEnd == end) { return null; } // header not complete: accept
+      final int contentEnd = WarcRecordParser.trimEnd(
+          content, lineBegin, lineEnd);
+      if (contentEnd == lineBegin) { break; } // end of header
+
+      final byte first = content[lineBegin];
+      if (first == ' ' || first == '\t') {
+        // continuation of the previous header line
+        if (inContentType) {
+          contentType += " " + WarcRecordFilter.toString(content,
+              WarcRecordParser.trimBegin(content, lineBegin, contentEnd),
+              contentEnd);
+        }
+      } else {
+        inContentType = false;
+        int colon = lineBegin;
+        while (colon < contentEnd && content[colon] != ':') { ++colon; }
+        if (colon < contentEnd && WarcRecordFilter.equalsIgnoreCase(content,
+            lineBegin, WarcRecordParser.trimEnd(content, lineBegin, colon),
+            HEADER_CONTENT_TYPE)) {
+          inContentType = true;
+          contentType = WarcRecordFilter.toString(content,
+              WarcRecordParser.trimBegin(content, colon + 1, contentEnd),
+              contentEnd);
+        }
+      }
+      lineBegin = lineEnd + 1;
+    }
+
+    if (contentType == null) {
+      return this.acceptMissingContentType ? null : Reason.CONTENT_TYPE;
+    }
+    if (!this.contentTypePattern.matcher(contentType).matches()) {
+      return Reason.CONTENT_TYPE;
+    }
+    return null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static int findLineEnd(
+      final byte[] bytes, final int begin, final int end) {
+    int index = begin;
+    while (index < end && bytes[index] != '\n') { ++index; }
+    return index;
+  }
+
+  private static int nextLine(
+      final byte[] bytes, final int begin, final int end) {
+    return Math.min(end, WarcRecordFilter.findLineEnd(bytes, begin, end) + 1);
+  }
+
+  private static boolean equalsIgnoreCase(final byte[] bytes,
+      final int begin, final int end, final byte[] lowerCase) {
+    if (end - begin != lowerCase.length) { return false; }
+    for (int i = 0; i < lowerCase.length; ++i) {
+      final int b = bytes[begin + i];
+      final int lower = (b >= 'A' && b <= 'Z') ? b + ('a' - 'A') : b;
+      if (lower != lowerCase[i]) { return false; }
+    }
+    return true;
+  }
+
+  private static String toString(
+      final byte[] bytes, final int begin, final int end) {
+    return new String(bytes, begin, end - begin, StandardCharsets.ISO_8859_1);
+  }
+
+}
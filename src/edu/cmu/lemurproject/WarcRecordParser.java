@@ -0,0 +1,473 @@
+package edu.cmu.lemurproject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Reads {@link WarcRecord}s from a stream.
+ *
+ * <p>
+ * In contrast to {@link WarcRecord#readNextWarcRecord(java.io.DataInputStream)},
+ * which reads the WARC header byte by byte, this parser reads the input in
+ * blocks into a reusable buffer and parses the header lines directly from the
+ * bytes in that buffer. Strings are only created for the header values that
+ * are stored in the record, and the Content-Length is parsed directly from the
+ * bytes.
+ * </p><p>
+ * If a {@link WarcRecordFilter} is set, rejected records are skipped without
+ * allocating their content.
+ * </p><p>
+ * As the parser reads ahead, the input must not be read from anywhere else
+ * while the parser is in use. Instances are not thread-safe.
+ * </p>
+ *
+ * @version $Date$
+ *
+ */
+public class WarcRecordParser implements WarcRecordSource {
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  CONSTANTS                               //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * The initial size of the buffer in bytes. The buffer grows if a header line
+   * does not fit into it.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+  protected static final int NO_CONTENT_LENGTH = -1;
+
+  private static final byte[] WARC_VERSION =
+      WarcRecord.WARC_VERSION.getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] KEY_TYPE = ascii("WARC-Type");
+
+  private static final byte[] KEY_DATE = ascii("WARC-Date");
+
+  private static final byte[] KEY_RECORD_ID = ascii("WARC-Record-ID");
+
+  private static final byte[] KEY_CONTENT_TYPE = ascii("Content-Type");
+
+  private static final byte[] KEY_CONTENT_LENGTH = ascii("Content-Length");
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   MEMBERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  private final InputStream input;
+
+  private byte[] buffer;
+
+  private int position;
+
+  private int limit;
+
+  private boolean endOfInput;
+
+  private long inputPosition;
+
+  private WarcRecordFilter filter;
+
+  private ObjLongConsumer<WarcRecordFilter.Reason> skipListener;
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONSTRUCTORS                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Creates a new parser for given input with a buffer of
+   * {@link #DEFAULT_BUFFER_SIZE}.
+   */
+  public WarcRecordParser(final InputStream input) {
+    this(input, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates a new parser for given input with a buffer of given initial size.
+   */
+  public WarcRecordParser(final InputStream input, final int bufferSize) {
+    if (input == null) { throw new NullPointerException(); }
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Non-positive size: " + bufferSize);
+    }
+    this.input = input;
+    this.buffer = new byte[bufferSize];
+    this.position = 0;
+    this.limit = 0;
+    this.endOfInput = false;
+    this.inputPosition = 0;
+    this.filter = null;
+    this.skipListener = null;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                   GETTERS                                //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Gets the number of bytes of the input that have been parsed so far.
+   */
+  public long getPosition() {
+    return this.inputPosition - (this.limit - this.position);
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                CONFIGURATION                             //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Sets the filter for the records to return.
+   * @param filter The filter, or <tt>null</tt> to return all records
+   */
+  public void setFilter(final WarcRecordFilter filter) {
+    this.filter = filter;
+  }
+
+  /**
+   * Sets the listener that is informed of each record rejected by the filter,
+   * together with the number of content bytes that were skipped.
+   * @param skipListener The listener, or <tt>null</tt> for none
+   */
+  public void setSkipListener(
+      final ObjLongConsumer<WarcRecordFilter.Reason> skipListener) {
+    this.skipListener = skipListener;
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                               FUNCTIONALITY                              //
+  //////////////////////////////////////////////////////////////////////////////
+
+  @Override
+  public WarcRecord readNextWarcRecord() throws IOException {
+    return this.readNextWarcRecord(new WarcRecord());
+  }
+
+  @Override
+  public WarcRecord readNextWarcRecord(final WarcRecord record)
+  throws IOException {
+    while (true) {
+      record.clear();
+      final int contentLength = this.readHeader(record);
+      if (contentLength == NO_CONTENT_LENGTH) { return null; }
+      if (!this.skipLeadingLineBreaks(contentLength)) { return null; }
+
+      final WarcRecordFilter.Reason reason = this.test(record, contentLength);
+      if (reason != null) {
+        if (this.skip(contentLength) < contentLength) { return null; }
+        if (this.skipListener != null) {
+          this.skipListener.accept(reason, contentLength);
+        }
+      } else {
+        final byte[] content = record.allocateContent(contentLength);
+        if (this.read(content, 0, contentLength) < contentLength) {
+          return null;
+        }
+        return record;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.input.close();
+  }
+
+  //////////////////////////////////////////////////////////////////////////////
+  //                                  HELPERS                                 //
+  //////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Parses one trimmed, non-empty header line and adds its information to the
+   * record.
+   * @param bytes The array containing the line
+   * @param begin The index of the first byte of the line
+   * @param end The index after the last byte of the line
+   * @param record The record to add the information to
+   * @param contentLength The content length parsed so far
+   * @return The content length of the line if it is a Content-Length line,
+   * or the given content length otherwise
+   */
+  protected static int parseHeaderLine(
+      final byte[] bytes, final int begin, final int end,
+      final WarcRecord record, final int contentLength) {
+    int colon = begin;
+    while (colon < end && bytes[colon] != ':') { ++colon; }
+    if (colon == end) {
+      record.addHeaderMetadata(WarcRecordParser.toString(bytes, begin, end), "");
+      return contentLength;
+    }
+
+    final int keyEnd = WarcRecordParser.trimEnd(bytes, begin, colon);
+    final int valueBegin = WarcRecordParser.trimBegin(bytes, colon + 1, end);
+    if (WarcRecordParser.equals(bytes, begin, keyEnd, KEY_CONTENT_LENGTH)) {
+      return WarcRecordParser.parseInt(bytes, valueBegin, end);
+    }
+
+    final String value = WarcRecordParser.toString(bytes, valueBegin, end);
+    if (WarcRecordParser.equals(bytes, begin, keyEnd, KEY_TYPE)) {
+      record.setWarcRecordType(value);
+    } else if (WarcRecordParser.equals(bytes, begin, keyEnd, KEY_DATE)) {
+      record.setWarcDate(value);
+    } else if (WarcRecordParser.equals(bytes, begin, keyEnd, KEY_RECORD_ID)) {
+      record.setWarcUUID(value);
+    } else if (WarcRecordParser.equals(
+        bytes, begin, keyEnd, KEY_CONTENT_TYPE)) {
+      record.setWarcContentType(value);
+    } else {
+      record.addHeaderMetadata(
+          WarcRecordParser.toString(bytes, begin, keyEnd), value);
+    }
+    return contentLength;
+  }
+
+  /**
+   * Reads the WARC header into given record.
+   * @return The content length of the record or {@link #NO_CONTENT_LENGTH} if
+   * the input ended
+   */
+  private int readHeader(final WarcRecord record) throws IOException {
+    // find the WARC version line
+    boolean foundMark = false;
+    while (!foundMark) {
+      final int lineEnd = this.findLineEnd();
+      if (lineEnd < 0) { return NO_CONTENT_LENGTH; }
+      foundMark = WarcRecordParser.startsWith(
+          this.buffer, this.position, lineEnd, WARC_VERSION);
+      this.skipLine(lineEnd);
+    }
+
+    // read until we see the content length and then an empty line (to handle
+    // malformed ClueWeb09 headers that have blank lines)
+    int contentLength = NO_CONTENT_LENGTH;
+    while (true) {
+      final int lineEnd = this.findLineEnd();
+      if (lineEnd < 0) { return NO_CONTENT_LENGTH; }
+      final int begin = WarcRecordParser.trimBegin(
+          this.buffer, this.position, lineEnd);
+      final int end = WarcRecordParser.trimEnd(this.buffer, begin, lineEnd);
+      if (begin < end) {
+        contentLength = WarcRecordParser.parseHeaderLine(
+            this.buffer, begin, end, record, contentLength);
+      }
+      this.skipLine(lineEnd);
+      if (begin == end && contentLength >= 0) { return contentLength; }
+    }
+  }
+
+  /**
+   * Skips leading CR LF before the content, as
+   * {@link WarcRecord#readNextWarcRecord(java.io.DataInputStream)} does.
+   * @return Whether the input did not end
+   */
+  private boolean skipLeadingLineBreaks(final int contentLength)
+  throws IOException {
+    while (contentLength >= 2) {
+      if (!this.ensureBuffered(2)) { return false; }
+      if (this.buffer[this.position] != '\r'
+          && this.buffer[this.position + 1] != '\n') {
+        return true;
+      }
+      this.position += 2;
+    }
+    return true;
+  }
+
+  /**
+   * Tests the record whose content starts at the current position.
+   * @return The reason for rejecting the record, or <tt>null</tt> if it is
+   * accepted or there is no filter
+   */
+  private WarcRecordFilter.Reason test(
+      final WarcRecord record, final int contentLength)
+  throws IOException {
+    if (this.filter == null) { return null; }
+    final WarcRecordFilter.Reason reason = this.filter.testHeader(record);
+    if (reason != null || !this.filter.needsContent(record)) { return reason; }
+
+    this.ensureBuffered(
+        Math.min(contentLength, WarcRecordFilter.CONTENT_PREFIX_LENGTH));
+    final int available = Math.min(contentLength, this.limit - this.position);
+    return this.filter.testContent(this.buffer, this.position, available);
+  }
+
+  /**
+   * Reads more input until at least given number of bytes are buffered.
+   * @return Whether the bytes are buffered, or false if the input ended before
+   */
+  private boolean ensureBuffered(final int numBytes) throws IOException {
+    while (this.limit - this.position < numBytes) {
+      if (!this.fill()) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Skips up to <tt>length</tt> bytes, using the buffered bytes first and then
+   * skipping directly in the input.
+   * @return The number of bytes skipped, which is only less than
+   * <tt>length</tt> if the input ended
+   */
+  private long skip(final long length) throws IOException {
+    long totalSkipped = 0;
+    while (totalSkipped < length) {
+      if (this.position == this.limit) {
+        final long numSkipped = this.endOfInput
+            ? 0 : this.input.skip(length - totalSkipped);
+        if (numSkipped > 0) {
+          this.inputPosition += numSkipped;
+          totalSkipped += numSkipped;
+          continue;
+        }
+        // skip may return 0 without the input having ended
+        if (!this.fill()) { break; }
+      }
+      final int buffered = (int)
+          Math.min(length - totalSkipped, this.limit - this.position);
+      this.position += buffered;
+      totalSkipped += buffered;
+    }
+    return totalSkipped;
+  }
+
+  /**
+   * Gets the index of the next line feed in the buffer, or the end of the
+   * buffered data if the input ends without line feed, or -1 if there is no
+   * more data. Reads more input into the buffer as needed.
+   */
+  private int findLineEnd() throws IOException {
+    int index = this.position;
+    while (true) {
+      while (index < this.limit) {
+        if (this.buffer[index] == '\n') { return index; }
+        ++index;
+      }
+      final int scanned = index - this.position;
+      if (!this.fill()) {
+        return this.position < this.limit ? this.limit : -1;
+      }
+      index = this.position + scanned;
+    }
+  }
+
+  private void skipLine(final int lineEnd) {
+    this.position = Math.min(lineEnd + 1, this.limit);
+  }
+
+  /**
+   * Reads up to <tt>length</tt> bytes, using the buffered bytes first and then
+   * reading directly from the input.
+   * @return The number of bytes read, which is only less than
+   * <tt>length</tt> if the input ended
+   */
+  private int read(final byte[] target, final int offset, final int length)
+  throws IOException {
+    final int buffered = Math.min(length, this.limit - this.position);
+    System.arraycopy(this.buffer, this.position, target, offset, buffered);
+    this.position += buffered;
+
+    int totalRead = buffered;
+    while (totalRead < length && !this.endOfInput) {
+      final int numRead =
+          this.input.read(target, offset + totalRead, length - totalRead);
+      if (numRead < 0) {
+        this.endOfInput = true;
+      } else {
+        this.inputPosition += numRead;
+        totalRead += numRead;
+      }
+    }
+    return totalRead;
+  }
+
+  /**
+   * Reads more input into the buffer, moving the unread bytes to its front and
+   * growing it if it is full.
+   * @return Whether more bytes were read
+   */
+  private boolean fill() throws IOException {
+    if (this.endOfInput) { return false; }
+    if (this.position > 0) {
+      System.arraycopy(this.buffer, this.position,
+          this.buffer, 0, this.limit - this.position);
+      this.limit -= this.position;
+      this.position = 0;
+    }
+    if (this.limit == this.buffer.length) {
+      final byte[] grown = new byte[this.buffer.length * 2];
+      System.arraycopy(this.buffer, 0, grown, 0, this.limit);
+      this.buffer = grown;
+    }
+
+    int numRead = 0;
+    while (numRead == 0) {
+      numRead = this.input.read(
+          this.buffer, this.limit, this.buffer.length - this.limit);
+    }
+    if (numRead < 0) {
+      this.endOfInput = true;
+      return false;
+    }
+    this.inputPosition += numRead;
+    this.limit += numRead;
+    return true;
+  }
+
+  protected static int trimBegin(
+      final byte[] bytes, final int begin, final int end) {
+    int index = begin;
+    while (index < end && (bytes[index] & 0xFF) <= ' ') { ++index; }
+    return index;
+  }
+
+  protected static int trimEnd(
+      final byte[] bytes, final int begin, final int end) {
+    int index = end;
+    while (index > begin && (bytes[index - 1] & 0xFF) <= ' ') { --index; }
+    return index;
+  }
+
+  protected static boolean startsWith(
+      final byte[] bytes, final int begin, final int end, final byte[] prefix) {
+    if (end - begin < prefix.length) { return false; }
+    for (int i = 0; i < prefix.length; ++i) {
+      if (bytes[begin + i] != prefix[i]) { return false; }
+    }
+    return true;
+  }
+
+  private static boolean equals(
+      final byte[] bytes, final int begin, final int end, final byte[] other) {
+    return end - begin == other.length
+        && WarcRecordParser.startsWith(bytes, begin, end, other);
+  }
+
+  /**
+   * Parses a non-negative decimal number, returning
+   * {@link #NO_CONTENT_LENGTH} if it is not one.
+   */
+  private static int parseInt(
+      final byte[] bytes, final int begin, final int end) {
+    if (begin == end) { return NO_CONTENT_LENGTH; }
+    long value = 0;
+    for (int i = begin; i < end; ++i) {
+      final int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) { return NO_CONTENT_LENGTH; }
+      value = value * 10 + digit;
+      if (value > Integer.MAX_VALUE) { return NO_CONTENT_LENGTH; }
+    }
+    return (int) value;
+  }
+
+  private static String toString(
+      final byte[] bytes, final int begin, final int end) {
+    return new String(bytes, begin, end - begin, StandardCharsets.UTF_8);
+  }
+
+  private static byte[] ascii(final String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+}
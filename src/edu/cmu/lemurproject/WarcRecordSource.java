@@ -0,0 +1,37 @@
+package edu.cmu.lemurproject;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source that reads {@link WarcRecord}s one at a time.
+ *
+ * @version $Date$
+ *
+ */
+public interface WarcRecordSource extends Closeable {
+
+  /**
+   * Reads the next record.
+   * @return The record or <tt>null</tt> if there are no more records
+   * @throws IOException If reading the record failed
+   */
+  public WarcRecord readNextWarcRecord() throws IOException;
+
+  /**
+   * Reads the next record into given record, which is cleared first (see
+   * {@link WarcRecord#clear()}).
+   * <p>
+   * This avoids to allocate a new record, header map, and (depending on the
+   * source) content array for every record. The content of the record is
+   * overwritten by the next call, so it has to be copied if it is needed
+   * longer.
+   * </p>
+   * @param record The record to fill
+   * @return The given record or <tt>null</tt> if there are no more records
+   * @throws IOException If reading the record failed
+   */
+  public WarcRecord readNextWarcRecord(final WarcRecord record)
+  throws IOException;
+
+}
@@ -0,0 +1,100 @@
+package de.aitools.aq.text;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Checks that a {@link StopWordSet} contains the same words as a
+ * {@link HashSet} of the words, lower-cased using
+ * {@link String#toLowerCase(Locale)} if case is ignored.
+ *
+ * @version $Date$
+ *
+ */
+public class StopWordSetTest {
+
+  private static final Locale[] LANGUAGES = {
+    Locale.ENGLISH, Locale.GERMAN, new Locale("el"), new Locale("lt"),
+    new Locale("tr")
+  };
+
+  /**
+   * ASCII letters and their neighbors, u umlaut.
+   */
+  private static final String ASCII_CHARACTERS =
+      "aAbBiIzZ@[`{\u007f\u0080\u00fc\u00dc -";
+
+  /**
+   * I with dot, dotless i, sigmas, sharp s, a supplementary letter in upper and
+   * lower case, combining dot above, I with grave, and a title case letter.
+   */
+  private static final String CASE_CHARACTERS =
+      "aAiI\u0130\u0131\u03a3\u03c3\u03c2\u00df\ud801\udc00\ud801\udc28"
+      + "\u0307\u00cc\u01c5 -";
+
+  private static final int NUM_SET_WORDS = 300;
+
+  private static final int NUM_WORDS = 20000;
+
+  @Test
+  public void testAsciiCharacters() {
+    StopWordSetTest.testRandomWords(ASCII_CHARACTERS);
+  }
+
+  @Test
+  public void testCaseCharacters() {
+    StopWordSetTest.testRandomWords(CASE_CHARACTERS);
+  }
+
+  private static void testRandomWords(final String characters) {
+    final Random random = new Random(0);
+    final int[] codePoints = characters.codePoints().toArray();
+    for (final Locale language : LANGUAGES) {
+      for (final boolean ignoreCase : new boolean[] { true, false }) {
+        final List<String> words = new ArrayList<>();
+        final Set<String> expected = new HashSet<>();
+        for (int w = 0; w < NUM_SET_WORDS; ++w) {
+          final String word =
+              StopWordSetTest.getRandomWord(random, codePoints, 4);
+          words.add(word);
+          expected.add(ignoreCase ? word.toLowerCase(language) : word);
+        }
+        final StopWordSet set = new StopWordSet(words, language, ignoreCase);
+        assertEquals(expected.size(), set.size());
+
+        for (int w = 0; w < NUM_WORDS; ++w) {
+          final String prefix =
+              StopWordSetTest.getRandomWord(random, codePoints, 2);
+          final String word =
+              StopWordSetTest.getRandomWord(random, codePoints, 6);
+          final String text = prefix + word
+              + StopWordSetTest.getRandomWord(random, codePoints, 2);
+          assertEquals(language + " " + ignoreCase + " '" + word + "'",
+              expected.contains(
+                  ignoreCase ? word.toLowerCase(language) : word),
+              set.contains(text, prefix.length(),
+                  prefix.length() + word.length()));
+        }
+      }
+    }
+  }
+
+  private static String getRandomWord(final Random random,
+      final int[] codePoints, final int maxLength) {
+    final StringBuilder word = new StringBuilder();
+    final int length = random.nextInt(maxLength + 1);
+    for (int c = 0; c < length; ++c) {
+      word.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+    }
+    return word.toString();
+  }
+
+}
@@ -0,0 +1,144 @@
+package de.aitools.aq.web.extractor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.htmlparser.jericho.Config;
+import net.htmlparser.jericho.LoggerProvider;
+import net.htmlparser.jericho.Renderer;
+import net.htmlparser.jericho.Segment;
+import net.htmlparser.jericho.Source;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link StreamingParagraphRenderer} produces the same
+ * paragraphs as the Jericho {@link Renderer} it replaces.
+ *
+ * @version $Date$
+ *
+ */
+public class StreamingParagraphRendererTest {
+
+  private static final String[] PAGES = {
+    // paragraphs and lists
+    "<p>a<p>b",
+    "<h1>H</h1><p>P</p>",
+    "<P>Upper<BR>Case</P>",
+    "<p>  </p>",
+    "  leading",
+    "foo<b>bar</b> baz <i> qux </i>",
+    "<div>a<br>b<br/><br>c</div>",
+    "<div/>x<div/>y",
+    "<foo>a</foo><bar/>b",
+    "<center>c</center>",
+    "<hr>x<blockquote><hr></blockquote>",
+    "<ul><li>one<li>two</ul>",
+    "<ol><li>x<li>y<ol><li>z</ol></ol>",
+    "<ol><li>1<li>2<li><br>3</ol>",
+    "<ul><li><ul><li>n</ul></ul>",
+    "<ul><li><p>para</p><li><div>div</div></ul>",
+    "<ul><li>a<p>b</p>c</ul>",
+    "<ul><li>a</li>  <li>b</li></ul>",
+    "<li></li><li>b",
+    "<li><li>x",
+    "<p>x<ul><li>y</ul>z",
+    "<dl><dt>t<dd>d<dt>t2</dl>",
+    "<table><tr><td>a<td>b<tr><td>c</table>",
+    "<td>cell at start",
+    // preformatted text
+    "<pre>l1\nl2\r\nl3</pre>after",
+    "<pre>unclosed\nx",
+    // document structure
+    "<head><title>T</title></head><body>B</body>",
+    "<html><head><title>T</title><body>B",
+    "<head><title>T</title><p>x",
+    // character references and whitespace
+    "a&amp;b&nbsp;c &#10; d&#x20;e",
+    "text\u200bmore\u000Bvt",
+    "<!-- c -->a<!--x-->b<!DOCTYPE html>",
+    // alternate texts
+    "<img alt='pic'>text<img alt=''><input alt=\"in\">",
+    "<applet alt='ap'>inner</applet>x",
+    // removed elements
+    "<script>if (a<b) document.write('<p>x</p>')</script>visible",
+    "<style>p{}</style>s",
+    "<select><option>o</select>s",
+    "<noscript>n</noscript>m",
+    "<textarea>t</textarea>a",
+    "<button>no\n</button>yes",
+    "<button>unclosed<p>x",
+    "a<script>b<script>c</script>d",
+    // removed elements without end tag
+    "x<script>var a=\"<p>q</p>\";<div>y</div>",
+    "<p>a<script>s</script>b<script>u<p>c",
+    "<div>x<script>y</div>z",
+    "x<SCRIPT>a<p>b",
+    "<p>x<script>var a</p>b",
+    "a<script>b<p>c<script>d<p>e",
+    "</script>a<script>b<p>c",
+    "<ul><li>a<script>b<li>c</ul>",
+    "<select>o<script>s<p>p</select>v",
+    "<pre>a<script>b\nc<p>d",
+    "<script/>a<p>b",
+    "x<style>p{}<p>q</p>",
+    "x<select><option>o<p>q",
+    "x<textarea>t<p>q</p>",
+    "x<noscript>n<p>q",
+    "x<button>b<p>q"
+  };
+
+  @BeforeClass
+  public static void disableJerichoLogging() {
+    Config.LoggerProvider = LoggerProvider.DISABLED;
+  }
+
+  @Test
+  public void testSameParagraphsAsRenderer() {
+    final StreamingParagraphRenderer renderer =
+        new StreamingParagraphRenderer();
+    for (final String page : PAGES) {
+      final List<String> paragraphs = new ArrayList<>();
+      renderer.render(page, paragraphs::add);
+      assertEquals(page, StreamingParagraphRendererTest.render(page, true),
+          paragraphs);
+    }
+  }
+
+  @Test
+  public void testSameParagraphsAsRendererWithoutAlternateTexts() {
+    final StreamingParagraphRenderer renderer =
+        new StreamingParagraphRenderer();
+    renderer.setIncludeAlternateTexts(false);
+    for (final String page : PAGES) {
+      final List<String> paragraphs = new ArrayList<>();
+      renderer.render(page, paragraphs::add);
+      assertEquals(page, StreamingParagraphRendererTest.render(page, false),
+          paragraphs);
+    }
+  }
+
+  /**
+   * Renders the paragraphs of given page like the extractors did before the
+   * {@link StreamingParagraphRenderer}.
+   */
+  private static List<String> render(
+      final String page, final boolean includeAlternateTexts) {
+    final Source source = new Source(page);
+    final Renderer renderer =
+        new Renderer(new Segment(source, 0, page.length()));
+    renderer.setMaxLineLength(0);
+    renderer.setIncludeHyperlinkURLs(false);
+    renderer.setIncludeAlternateText(includeAlternateTexts);
+    final List<String> paragraphs = new ArrayList<>();
+    for (final String line : renderer.toString().split("\n")) {
+      final String paragraph = line.replaceAll("\\s+", " ").trim();
+      if (!paragraph.isEmpty()) { paragraphs.add(paragraph); }
+    }
+    return paragraphs;
+  }
+
+}